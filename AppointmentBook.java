@@ -0,0 +1,261 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// ----------------------------
+// Appointment Book
+// ----------------------------
+// Booked cars skip the waiting queue. When a booked car is generated it
+// reserves the earliest free slot on any bay, at least the lead time ahead,
+// and arrives when the slot starts. Each bay keeps its slots in a TreeMap by
+// start time. The slots never overlap, so finding room is a floor lookup and
+// a short walk over the following slots. A pump serves a due slot before any
+// walk-in. It only takes a walk-in from the queue when the wash would end
+// before the bay's next slot, so walk-ins fill the gaps between bookings.
+// Only open bays take bookings. When a bay closes (a scenario's bay
+// schedule), its slots move to the earliest fit on the open bays, so no
+// booked car waits for a bay that may never reopen.
+//
+//   -Dcarwash.appointments=4          every 4th car books ahead (0 = off)
+//   -Dcarwash.appointments.lead=15000 how far ahead, in simulation millis
+class AppointmentBook {
+
+    static final class Slot {
+        final int carId, bay;
+        final long start, end;
+
+        Slot(int carId, int bay, long start, long end) {
+            this.carId = carId;
+            this.bay = bay;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final int every;
+    private final long leadMillis;
+    private final int serviceMillis;
+    private final TimeScale timeScale;
+    private final SimulationClock clock;
+    private final SimulationMetrics metrics;
+    private final SimulationView gui;
+    private final SimulationLogger log;
+
+    // everything below is guarded by this
+    private final List<TreeMap<Long, Slot>> slots = new ArrayList<>(); // per bay, by start
+    private final long[] busyUntil;       // per bay, end of the walk-in or booking in progress
+    private final boolean[] booked;       // by carId - 1
+    private final boolean[] closed;       // per bay
+    private int bookings, served, late, moved;
+    private long totalLateMillis, maxLateMillis;
+    private final int[] bookingsPerBay, walkInsPerBay;
+    private final long[] reservedMillis;  // per bay, slot time served
+    private final long[] heldMillis;      // per bay, idle for a coming slot while walk-ins waited
+
+    AppointmentBook(int every, long leadMillis, int bays, int totalCars, int serviceMillis, TimeScale timeScale,
+                    SimulationClock clock, SimulationMetrics metrics, SimulationView gui, SimulationLogger log) {
+        this.every = every;
+        this.leadMillis = Math.max(1, leadMillis);
+        this.serviceMillis = serviceMillis;
+        this.timeScale = timeScale;
+        this.clock = clock;
+        this.metrics = metrics;
+        this.gui = gui;
+        this.log = log;
+        for (int i = 0; i < bays; i++) {
+            slots.add(new TreeMap<>());
+        }
+        this.busyUntil = new long[bays];
+        this.closed = new boolean[bays];
+        this.booked = new boolean[totalCars];
+        this.bookingsPerBay = new int[bays];
+        this.walkInsPerBay = new int[bays];
+        this.reservedMillis = new long[bays];
+        this.heldMillis = new long[bays];
+    }
+
+    // null when appointments are off
+    static AppointmentBook configured(int bays, int totalCars, int serviceMillis, TimeScale timeScale,
+                                      SimulationClock clock, SimulationMetrics metrics,
+                                      SimulationView gui, SimulationLogger log) {
+        int every = Integer.getInteger("carwash.appointments", 0);
+        if (every <= 0) return null;
+        return new AppointmentBook(every, Long.getLong("carwash.appointments.lead", 15000L), bays, totalCars,
+            serviceMillis, timeScale, clock, metrics, gui, log);
+    }
+
+    String describe() {
+        return "every " + (every == 1 ? "" : every + "th ") + "car books " + leadMillis / 1000.0 + " s ahead";
+    }
+
+    // Whether this car books instead of walking in
+    boolean booksAhead(int carId) {
+        return carId % every == 0;
+    }
+
+    // Reserves the earliest slot at least the lead time ahead, on whichever bay has it first
+    synchronized Slot reserve(int carId) {
+        long length = timeScale.scale(serviceMillis);
+        long from = clock.now() + leadMillis;
+        Slot slot = place(carId, from, length);
+        booked[carId - 1] = true;
+        bookings++;
+        gui.updateCarStatus(carId, CarState.NOT_ARRIVED);
+        return slot;
+    }
+
+    // Books the earliest fit from the given time on whichever open bay has it first; called holding this
+    private Slot place(int carId, long from, long length) {
+        int bestBay = -1;
+        long bestStart = Long.MAX_VALUE;
+        for (int bay = 0; bay < slots.size(); bay++) {
+            if (closed[bay]) continue;
+            long start = earliestFit(slots.get(bay), Math.max(from, busyUntil[bay]), length);
+            if (start < bestStart) {
+                bestStart = start;
+                bestBay = bay;
+            }
+        }
+        if (bestBay < 0) { // every bay closed: keep the booking on the first, it reopens with the first bay
+            bestBay = 0;
+            bestStart = earliestFit(slots.get(0), Math.max(from, busyUntil[0]), length);
+        }
+        Slot slot = new Slot(carId, bestBay + 1, bestStart, bestStart + length);
+        slots.get(bestBay).put(bestStart, slot);
+        bookingsPerBay[bestBay]++;
+        notifyAll(); // pumps waiting for a later slot recompute their gap
+        log.event(LogEvent.APPOINTMENT_BOOKED, carId, slot.bay, (int) (bestStart / 1000));
+        return slot;
+    }
+
+    // Called by a pump when its bay opens or closes. A closing bay hands its slots to
+    // the open bays, each no earlier than it was booked for.
+    synchronized void setOpen(int bayId, boolean open) {
+        int bay = bayId - 1;
+        if (closed[bay] == !open) return;
+        closed[bay] = !open;
+        if (open) {
+            notifyAll();
+            return;
+        }
+        TreeMap<Long, Slot> leaving = slots.get(bay);
+        if (leaving.isEmpty()) return;
+        List<Slot> toMove = new ArrayList<>(leaving.values());
+        leaving.clear();
+        for (Slot slot : toMove) {
+            bookingsPerBay[bay]--;
+            Slot placed = place(slot.carId, slot.start, slot.end - slot.start);
+            if (placed.bay != bayId) {
+                moved++;
+            }
+        }
+    }
+
+    private static long earliestFit(TreeMap<Long, Slot> bay, long from, long length) {
+        long start = from;
+        Map.Entry<Long, Slot> before = bay.floorEntry(start);
+        if (before != null && before.getValue().end > start) {
+            start = before.getValue().end;
+        }
+        for (Slot next : bay.tailMap(start, true).values()) {
+            if (next.start >= start + length) break;
+            start = next.end;
+        }
+        return start;
+    }
+
+    // Called by a pump instead of full.waitSem(). Returns a booked car whose slot on
+    // this bay is due, or 0 once a walk-in permit was taken from full and its wash
+    // fits before the bay's next slot.
+    int nextCar(int bayId, Semaphore full) throws InterruptedException {
+        int bay = bayId - 1;
+        while (true) {
+            long walkIn = timeScale.scale(serviceMillis);
+            long timeout;
+            synchronized (this) {
+                long now = clock.now();
+                Map.Entry<Long, Slot> first = slots.get(bay).firstEntry();
+                if (first != null && first.getKey() <= now) {
+                    return checkIn(slots.get(bay).pollFirstEntry().getValue(), now);
+                }
+                long gap = first == null ? Long.MAX_VALUE : first.getKey() - now;
+                if (gap < walkIn) {
+                    // a walk-in would run into the slot: keep the bay for it
+                    long start = System.nanoTime();
+                    wait(Math.max(1, gap));
+                    if (full.permits() > 0) {
+                        heldMillis[bay] += (System.nanoTime() - start) / 1_000_000L;
+                    }
+                    continue;
+                }
+                // a booking made meanwhile starts at least the lead time ahead
+                timeout = Math.min(leadMillis, gap - walkIn + 1);
+            }
+            if (!full.waitSem(timeout)) continue;
+            synchronized (this) {
+                long now = clock.now();
+                Map.Entry<Long, Slot> first = slots.get(bay).firstEntry();
+                if (first == null || first.getKey() - now >= walkIn) {
+                    busyUntil[bay] = now + walkIn;
+                    walkInsPerBay[bay]++;
+                    return 0;
+                }
+            }
+            full.signalSem(); // booked meanwhile: leave the walk-in to another bay
+        }
+    }
+
+    // The booked car arrives and goes straight to its bay; called holding this
+    private int checkIn(Slot slot, long now) {
+        long lateness = now - slot.start;
+        busyUntil[slot.bay - 1] = now + (slot.end - slot.start);
+        if (lateness > 1000) {
+            late++;
+        }
+        totalLateMillis += lateness;
+        maxLateMillis = Math.max(maxLateMillis, lateness);
+        served++;
+        reservedMillis[slot.bay - 1] += slot.end - slot.start;
+
+        int carId = slot.carId;
+        metrics.carArrived(carId);
+        metrics.carQueued(carId);
+        metrics.carPickedUp(carId, slot.bay);
+        log.event(LogEvent.APPOINTMENT_ADMITTED, carId, slot.bay, (int) (lateness / 1000));
+        gui.updateCarStatus(carId, CarState.AT_PUMP);
+        return carId;
+    }
+
+    synchronized int pending() {
+        return bookings - served;
+    }
+
+    synchronized boolean isBooked(int carId) {
+        return booked[carId - 1];
+    }
+
+    synchronized List<String> report() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("Appointments: %d booked, %d served, %d pending, %d started over 1 s late " +
+                "(mean %.1f s, max %.1f s), %d moved off closing bays", bookings, served, bookings - served, late,
+            served == 0 ? 0.0 : totalLateMillis / 1000.0 / served, maxLateMillis / 1000.0, moved));
+        for (int bay = 0; bay < slots.size(); bay++) {
+            lines.add(String.format("  Bay %d: %d appointments (%.1f s reserved), %d walk-ins, " +
+                    "held %.1f s for coming slots while walk-ins waited", bay + 1, bookingsPerBay[bay],
+                reservedMillis[bay] / 1000.0, walkInsPerBay[bay], heldMillis[bay] / 1000.0));
+        }
+        long walkInWait = 0;
+        int walkIns = 0;
+        for (int carId = 1; carId <= booked.length; carId++) {
+            long wait = metrics.getWaitMillis(carId);
+            if (!booked[carId - 1] && wait >= 0) {
+                walkInWait += wait;
+                walkIns++;
+            }
+        }
+        lines.add(String.format("Walk-in wait: mean %.2f s over %d cars", walkIns == 0 ? 0.0 :
+            walkInWait / 1000.0 / walkIns, walkIns));
+        return lines;
+    }
+}
@@ -0,0 +1,28 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// ----------------------------
+// Arrival Source
+// ----------------------------
+// Tells the car generator how long to wait before releasing the next car.
+interface ArrivalSource extends AutoCloseable {
+    // Wall-clock millis until the next arrival at the given speed, -1 when no cars are left
+    long nextDelayMillis(int speedFactor) throws IOException;
+
+    // The car announced by the last nextDelayMillis call has been released
+    default void arrived() {
+    }
+
+    // ----- checkpoint support -----
+
+    default void writeState(DataOutputStream out) throws IOException {
+    }
+
+    default void readState(DataInputStream in) throws IOException {
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+}
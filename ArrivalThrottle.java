@@ -0,0 +1,111 @@
+import java.util.concurrent.locks.LockSupport;
+
+// ----------------------------
+// Arrival Throttle
+// ----------------------------
+// Sits between the car generator and the cars it starts. A token bucket caps
+// the arrival rate: tokens refill at the target rate, and up to `burst` of
+// them can be saved up, so a generator that overslept catches up without
+// going over the average rate. A counting Semaphore caps the cars in flight,
+// meaning cars started but not yet in the waiting queue. When the queue is
+// full and that many cars are blocked on `empty`, the generator waits too,
+// instead of starting more producers that would only block.
+//
+//   -Dcarwash.arrivals.rate=0          cars per second, 0 = as the arrival source says
+//   -Dcarwash.arrivals.burst=32        tokens that can be saved up
+//   -Dcarwash.arrivals.maxInFlight=256 cars started but not yet queued
+class ArrivalThrottle {
+    private final double ratePerSecond;
+    private final double burst;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+
+    // token bucket, only touched by the generator thread
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+    private long rateWaits;
+    private long rateWaitNanos;
+
+    ArrivalThrottle(double ratePerSecond, int burst, int maxInFlight) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = Math.max(1, burst);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlight = new Semaphore(this.maxInFlight).profiled("inFlight");
+        this.tokens = this.burst;
+    }
+
+    static ArrivalThrottle configured() {
+        double rate;
+        try {
+            rate = Double.parseDouble(System.getProperty("carwash.arrivals.rate", "0"));
+        } catch (NumberFormatException e) {
+            rate = 0;
+        }
+        return new ArrivalThrottle(rate, Integer.getInteger("carwash.arrivals.burst", 32),
+            Integer.getInteger("carwash.arrivals.maxInFlight", 256));
+    }
+
+    boolean isRateLimited() {
+        return ratePerSecond > 0;
+    }
+
+    String describe() {
+        return (isRateLimited() ? String.format("at most %.0f cars/s, bursts of %.0f, ", ratePerSecond, burst) : "") +
+            "at most " + maxInFlight + " cars in flight";
+    }
+
+    // Blocks until the rate allows another arrival and a car may be started; pair with release()
+    void acquire() throws InterruptedException {
+        if (isRateLimited()) {
+            takeToken();
+        }
+        inFlight.waitSem();
+    }
+
+    // The car reached the queue (or gave up)
+    void release() {
+        inFlight.signalSem();
+    }
+
+    // Runs the car and releases its in-flight permit when it is done arriving
+    Runnable track(Runnable car) {
+        return () -> {
+            try {
+                car.run();
+            } finally {
+                release();
+            }
+        };
+    }
+
+    private void takeToken() throws InterruptedException {
+        refill();
+        if (tokens < 1) {
+            long start = System.nanoTime();
+            rateWaits++;
+            do {
+                LockSupport.parkNanos((long) ((1 - tokens) / ratePerSecond * 1e9));
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("arrival generator stopped");
+                }
+                refill();
+            } while (tokens < 1);
+            rateWaitNanos += System.nanoTime() - start;
+        }
+        tokens -= 1;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) / 1e9 * ratePerSecond);
+        refilledAt = now;
+    }
+
+    // How often the generator was held back, and by what
+    String report() {
+        SemaphoreProfile profile = inFlight.profileSnapshot();
+        return String.format("Arrival throttle: %d rate waits (%.1f s), %d backpressure waits (%.1f s, max %.1f ms)",
+            rateWaits, rateWaitNanos / 1e9, profile.blockedAcquires, profile.totalWaitNanos / 1e9,
+            profile.maxWaitNanos / 1e6);
+    }
+}
@@ -0,0 +1,215 @@
+// ----------------------------
+// Bay Autoscaler
+// ----------------------------
+// Opens and closes service bays at runtime from queue depth and recent wait
+// times, and keeps the books on staffing: how long each bay was open versus
+// how long cars waited. With scaling disabled it only does the bookkeeping,
+// which gives the fixed-staffing baseline to compare thresholds against.
+class BayScaler implements Runnable {
+
+    // Thresholds, all overridable with -Dcarwash.scaling.* properties
+    static class Policy {
+        final boolean enabled;
+        final int minBays;
+        final int queueHigh;          // open a bay when this many cars are waiting
+        final long waitTargetMillis;  // ... or when recent waits exceed this
+        final long cooldownMillis;    // minimum time between two changes
+        final double bayCostPerHour;
+
+        Policy(boolean enabled, int minBays, int queueHigh, long waitTargetMillis, long cooldownMillis, double bayCostPerHour) {
+            this.enabled = enabled;
+            this.minBays = minBays;
+            this.queueHigh = queueHigh;
+            this.waitTargetMillis = waitTargetMillis;
+            this.cooldownMillis = cooldownMillis;
+            this.bayCostPerHour = bayCostPerHour;
+        }
+
+        static Policy fromSystemProperties(boolean enabled, int maxBays) {
+            int minBays = Math.max(1, Math.min(maxBays, Integer.getInteger("carwash.scaling.minBays", 1)));
+            double cost;
+            try {
+                cost = Double.parseDouble(System.getProperty("carwash.scaling.bayCostPerHour", "25"));
+            } catch (NumberFormatException e) {
+                cost = 25;
+            }
+            return new Policy(enabled, minBays,
+                Math.max(1, Integer.getInteger("carwash.scaling.queueHigh", 2)),
+                Long.getLong("carwash.scaling.waitTarget", 5000L),
+                Long.getLong("carwash.scaling.cooldown", 3000L),
+                cost);
+        }
+    }
+
+    private static final long TICK_MILLIS = 500;
+
+    private final Pump[] pumps;
+    private final SimulationMetrics metrics;
+    private final SimulationClock clock;
+    private final SimulationLogger log;
+    private final SimulationView gui;
+    private final Policy policy;
+    private volatile boolean running = true;
+    private Thread thread;
+
+    // bookkeeping, only touched by the scaler thread (and report() once it stopped)
+    private long lastTick;
+    private long lastChange = Long.MIN_VALUE / 2;
+    private long openBayMillis;
+    private int peakOpenBays;
+    private int lastPickups;
+    private long lastWaitTotal;
+    private double recentWaitMillis;
+
+    public BayScaler(Pump[] pumps, SimulationMetrics metrics, SimulationClock clock,
+                     SimulationLogger log, SimulationView gui, Policy policy) {
+        this.pumps = pumps;
+        this.metrics = metrics;
+        this.clock = clock;
+        this.log = log;
+        this.gui = gui;
+        this.policy = policy;
+    }
+
+    // Closes the bays above the configured minimum before the run starts
+    public void applyInitialBays() {
+        if (!policy.enabled) return;
+        for (int i = policy.minBays; i < pumps.length; i++) {
+            pumps[i].closeBay();
+            gui.updatePumpOpen(i + 1, false, false);
+        }
+    }
+
+    public void start() {
+        lastTick = clock.now();
+        lastPickups = metrics.getCarsPickedUp();
+        lastWaitTotal = metrics.getTotalWaitMillis();
+        peakOpenBays = openBays();
+        thread = new Thread(this, "BayScaler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                Thread.sleep(TICK_MILLIS);
+                tick();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.message("ERROR in bay scaler: " + e.getMessage());
+        }
+    }
+
+    private int openBays() {
+        int open = 0;
+        for (Pump pump : pumps) {
+            if (pump.isOpen()) open++;
+        }
+        return open;
+    }
+
+    private void tick() {
+        long now = clock.now();
+        int open = openBays();
+        openBayMillis += open * (now - lastTick);
+        lastTick = now;
+
+        int pickups = metrics.getCarsPickedUp();
+        long waitTotal = metrics.getTotalWaitMillis();
+        if (pickups > lastPickups) {
+            double sample = (waitTotal - lastWaitTotal) / (double) (pickups - lastPickups);
+            recentWaitMillis = recentWaitMillis == 0 ? sample : 0.5 * recentWaitMillis + 0.5 * sample;
+        }
+        lastPickups = pickups;
+        lastWaitTotal = waitTotal;
+
+        if (policy.enabled && now - lastChange >= policy.cooldownMillis) {
+            int queueLength = metrics.getQueueLength();
+            if ((queueLength >= policy.queueHigh || recentWaitMillis > policy.waitTargetMillis) && open < pumps.length) {
+                openOneBay(queueLength);
+                lastChange = now;
+                open++;
+            } else if (queueLength == 0 && recentWaitMillis <= policy.waitTargetMillis / 2.0 && open > policy.minBays) {
+                if (closeOneBay(queueLength)) {
+                    lastChange = now;
+                    open--;
+                }
+            }
+        }
+        peakOpenBays = Math.max(peakOpenBays, open);
+        gui.updateOpenBays(open, pumps.length, String.format("(%.2f bay-h)", openBayMillis / 3_600_000.0));
+    }
+
+    private void openOneBay(int queueLength) {
+        for (int i = 0; i < pumps.length; i++) {
+            if (!pumps[i].isOpen()) {
+                pumps[i].openBay();
+                gui.updatePumpOpen(i + 1, true, pumps[i].getCurrentCarId() > 0);
+                log.event(LogEvent.BAY_OPENED, 0, i + 1, queueLength);
+                return;
+            }
+        }
+    }
+
+    private boolean closeOneBay(int queueLength) { // only idle bays, highest number first
+        for (int i = pumps.length - 1; i >= 0; i--) {
+            if (pumps[i].isOpen() && pumps[i].getCurrentCarId() == 0) {
+                pumps[i].closeBay();
+                gui.updatePumpOpen(i + 1, false, false);
+                log.event(LogEvent.BAY_CLOSED, 0, i + 1, queueLength);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Staffing set by a scenario schedule: opens the lowest closed bays or closes the
+    // highest open ones; a busy bay closes once its car is done
+    public synchronized void setOpenBays(int target) {
+        int open = openBays();
+        for (int i = 0; i < pumps.length && open < target; i++) {
+            if (!pumps[i].isOpen()) {
+                pumps[i].openBay();
+                gui.updatePumpOpen(i + 1, true, pumps[i].getCurrentCarId() > 0);
+                log.event(LogEvent.BAY_OPENED, 0, i + 1, metrics.getQueueLength());
+                open++;
+            }
+        }
+        for (int i = pumps.length - 1; i >= 0 && open > target; i--) {
+            if (pumps[i].isOpen()) {
+                pumps[i].closeBay();
+                gui.updatePumpOpen(i + 1, false, pumps[i].getCurrentCarId() > 0);
+                log.event(LogEvent.BAY_CLOSED, 0, i + 1, metrics.getQueueLength());
+                open--;
+            }
+        }
+    }
+
+    // Staffing cost versus customer wait for the run so far
+    public String report() {
+        double bayHours = openBayMillis / 3_600_000.0;
+        int pickedUp = metrics.getCarsPickedUp();
+        double avgWaitSeconds = pickedUp == 0 ? 0 : metrics.getTotalWaitMillis() / 1000.0 / pickedUp;
+        return String.format("Staffing report (%s): %.3f bay-hours open, cost %.2f, peak %d/%d bays | " +
+                "wait avg %.1fs, max %.1fs over %d cars",
+            policy.enabled ? "autoscaled, min " + policy.minBays + " bays" : "fixed bays",
+            bayHours, bayHours * policy.bayCostPerHour, peakOpenBays, pumps.length,
+            avgWaitSeconds, metrics.getMaxWaitMillis() / 1000.0, pickedUp);
+    }
+}
@@ -0,0 +1,78 @@
+import java.util.Queue;
+
+// ----------------------------
+// Car Class (Producer)
+// ----------------------------
+class Car implements Runnable {
+    private int id;
+    private Queue<Integer> queue;
+    private Semaphore empty, full, mutex;
+    private SimulationView gui;
+    private SimulationLogger log;
+    private SimulationMetrics metrics;
+    private PauseGate pauseGate;              // null when nothing pauses the run
+    private boolean balking = false;          // drives on instead of waiting for a free slot
+
+    public Car(int id, Queue<Integer> queue, Semaphore empty, Semaphore full, Semaphore mutex, SimulationView gui, SimulationLogger log, SimulationMetrics metrics) {
+        this.id = id;
+        this.queue = queue;
+        this.empty = empty;
+        this.full = full;
+        this.mutex = mutex;
+        this.gui = gui;
+        this.log = log;
+        this.metrics = metrics;
+    }
+
+    // Call before the car starts
+    public void setBalking(boolean balking) {
+        this.balking = balking;
+    }
+
+    // Call before the car starts
+    public void setPauseGate(PauseGate pauseGate) {
+        this.pauseGate = pauseGate;
+    }
+
+    private void checkPaused() throws InterruptedException {
+        if (pauseGate != null) {
+            pauseGate.await();
+        }
+    }
+
+    @Override
+    public void run() { //this method simulates the car arrival and updates the GUI
+        try {
+            checkPaused();
+            metrics.carArrived(id);
+            gui.updateCarStatus(id, CarState.ARRIVED);
+            log.event(LogEvent.CAR_ARRIVED, id, 0, 0);
+
+            if (!balking) {
+                empty.waitSem();
+            } else if (!empty.tryWaitSem()) {
+                metrics.carLost(id);
+                gui.updateCarStatus(id, CarState.LOST);
+                log.event(LogEvent.CAR_LOST, id, 0, 0);
+                return;
+            }
+            checkPaused();
+            
+            mutex.waitSem();
+            checkPaused();
+
+            queue.add(id);
+            metrics.carQueued(id);
+            log.event(LogEvent.CAR_ENTERED_QUEUE, id, 0, queue.size());
+            gui.updateQueueDisplay(queue);
+            gui.updateCarStatus(id, CarState.IN_QUEUE);
+
+            mutex.signalSem();
+            full.signalSem();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.message("ERROR in Car " + id + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+// ----------------------------
+// Car Lifecycle States
+// ----------------------------
+enum CarState {
+    NOT_ARRIVED,
+    ARRIVED,
+    IN_QUEUE,
+    AT_PUMP,
+    WASHING,
+    FINISHED,
+    LOST;       // found the waiting area full and drove on
+
+    private static final CarState[] VALUES = values();
+
+    static CarState of(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
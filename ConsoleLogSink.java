@@ -0,0 +1,22 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+// ----------------------------
+// Console Log Sink
+// ----------------------------
+class ConsoleLogSink implements LogSink {
+    private final Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 8192);
+
+    @Override
+    public void write(CharSequence line) throws IOException {
+        out.append(line).append('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+}
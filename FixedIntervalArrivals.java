@@ -0,0 +1,17 @@
+// ----------------------------
+// Fixed Interval Arrivals
+// ----------------------------
+// The original synthetic generator: one car right away, then one every
+// 3 seconds divided by the speed factor (never faster than one per second).
+class FixedIntervalArrivals implements ArrivalSource {
+    private boolean first = true;
+
+    @Override
+    public long nextDelayMillis(int speedFactor) {
+        if (first) {
+            first = false;
+            return 0;
+        }
+        return Math.max(1000, 3000 / Math.max(1, speedFactor));
+    }
+}
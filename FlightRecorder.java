@@ -0,0 +1,186 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// ----------------------------
+// Flight Recorder
+// ----------------------------
+// A timeline of the run that is cheap enough to leave on. Every lifecycle
+// event that Car, Pump and the later stages log (see SimulationLogger) is
+// also stored here, together with each time a thread blocks on a traced
+// semaphore and wakes up again. A record is five primitives packed into
+// three longs of a fixed ring; the newest records overwrite the oldest, and
+// nothing is formatted, allocated or waited for while the run goes on. The
+// ring is written to a file at the end of the run, and TraceViewer turns it
+// into per-bay Gantt rows, the queue depth and the blocked threads over time.
+//
+// Enabled with -Dcarwash.trace.file=carwash-trace.cwt; -Dcarwash.trace.events
+// sets the ring size (131072 records, about 4 MB, by default).
+//
+//   file: MAGIC, VERSION, kind names, semaphore names, recorded, count,
+//         then per record: nanos, kind, carId, bay, value
+//
+// Kinds are the LogEvent ordinals plus BLOCKED, WOKE and REFUSED; the file
+// names them so a reader does not depend on the enum order. For semaphore
+// records the bay is the semaphore's index and carId the thread's id; WOKE
+// carries the wait in microseconds, also when a timed wait gave up. REFUSED
+// is a tryWaitSem that found no permit.
+class FlightRecorder {
+    private static final int MAGIC = 0x43575452; // "CWTR"
+    private static final int VERSION = 1;
+    static final int BLOCKED = LogEvent.values().length, WOKE = BLOCKED + 1, REFUSED = WOKE + 1;
+
+    final File file;
+    private final int mask;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLongArray records;     // per slot: nanos, kind and carId, bay and value
+    private final AtomicLongArray sequences;   // sequence of the record in a slot, -1 while it is written
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final List<String> semaphoreNames = new ArrayList<>();
+
+    FlightRecorder(File file, int capacity) {
+        int size = Integer.highestOneBit(Math.max(64, capacity - 1) << 1);
+        this.file = file;
+        this.mask = size - 1;
+        this.records = new AtomicLongArray(size * 3);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, -1);
+        }
+    }
+
+    // The recorder asked for with -Dcarwash.trace.file, or null when tracing is off
+    static FlightRecorder configured() {
+        String path = System.getProperty("carwash.trace.file");
+        if (path == null || path.isEmpty()) return null;
+        return new FlightRecorder(new File(path), Integer.getInteger("carwash.trace.events", 1 << 17));
+    }
+
+    // Index under which a semaphore's records are stored
+    synchronized int semaphore(String name) {
+        semaphoreNames.add(name);
+        return semaphoreNames.size() - 1;
+    }
+
+    void record(int kind, int carId, int bay, int value) {
+        long sequence = nextSequence.getAndIncrement();
+        int slot = (int) (sequence & mask);
+        sequences.set(slot, -1);
+        records.lazySet(slot * 3, System.nanoTime() - startNanos);
+        records.lazySet(slot * 3 + 1, pack(kind, carId));
+        records.lazySet(slot * 3 + 2, pack(bay, value));
+        sequences.lazySet(slot, sequence);
+    }
+
+    private static long pack(int high, int low) {
+        return (long) high << 32 | (low & 0xFFFFFFFFL);
+    }
+
+    // Writes the records still in the ring, oldest first. Threads may keep
+    // recording; a record overwritten while it is copied is left out. The
+    // fields are read as volatiles, so the second look at the sequence cannot
+    // move ahead of them and pass a torn record.
+    synchronized void write() throws IOException {
+        long end = nextSequence.get();
+        long start = Math.max(0, end - (mask + 1));
+        int count = 0;
+        long[] copyNanos = new long[(int) (end - start)];
+        int[] copy = new int[copyNanos.length * 4];
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & mask);
+            if (sequences.get(slot) != sequence) continue;
+            long kindAndCar = records.get(slot * 3 + 1), bayAndValue = records.get(slot * 3 + 2);
+            copyNanos[count] = records.get(slot * 3);
+            copy[count * 4] = (int) (kindAndCar >>> 32);
+            copy[count * 4 + 1] = (int) kindAndCar;
+            copy[count * 4 + 2] = (int) (bayAndValue >>> 32);
+            copy[count * 4 + 3] = (int) bayAndValue;
+            if (sequences.get(slot) == sequence) count++;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeShort(REFUSED + 1);
+            for (LogEvent event : LogEvent.values()) {
+                out.writeUTF(event.name());
+            }
+            out.writeUTF("SEMAPHORE_BLOCKED");
+            out.writeUTF("SEMAPHORE_WOKE");
+            out.writeUTF("SEMAPHORE_REFUSED");
+            out.writeShort(semaphoreNames.size());
+            for (String name : semaphoreNames) {
+                out.writeUTF(name);
+            }
+            out.writeLong(end);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeLong(copyNanos[i]);
+                for (int f = 0; f < 4; f++) {
+                    out.writeInt(copy[i * 4 + f]);
+                }
+            }
+        }
+    }
+
+    // ---- reading ----
+
+    static final class Recording {
+        String[] kindNames, semaphoreNames;
+        long recorded;                        // records made during the run, including overwritten ones
+        long[] nanos;
+        int[] kinds, carIds, bays, values;
+
+        int size() {
+            return nanos.length;
+        }
+
+        String kind(int i) {
+            return kinds[i] >= 0 && kinds[i] < kindNames.length ? kindNames[kinds[i]] : "UNKNOWN";
+        }
+    }
+
+    static Recording read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a flight recording");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(file + ": unsupported recording version " + version);
+            }
+            Recording recording = new Recording();
+            recording.kindNames = new String[in.readUnsignedShort()];
+            for (int i = 0; i < recording.kindNames.length; i++) {
+                recording.kindNames[i] = in.readUTF();
+            }
+            recording.semaphoreNames = new String[in.readUnsignedShort()];
+            for (int i = 0; i < recording.semaphoreNames.length; i++) {
+                recording.semaphoreNames[i] = in.readUTF();
+            }
+            recording.recorded = in.readLong();
+            int count = in.readInt();
+            recording.nanos = new long[count];
+            recording.kinds = new int[count];
+            recording.carIds = new int[count];
+            recording.bays = new int[count];
+            recording.values = new int[count];
+            for (int i = 0; i < count; i++) {
+                recording.nanos[i] = in.readLong();
+                recording.kinds[i] = in.readInt();
+                recording.carIds[i] = in.readInt();
+                recording.bays[i] = in.readInt();
+                recording.values[i] = in.readInt();
+            }
+            return recording;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+import java.util.Queue;
+
+// ----------------------------
+// Headless View
+// ----------------------------
+class HeadlessView implements SimulationView {
+    @Override
+    public void updateQueueDisplay(Queue<Integer> queue) {
+    }
+
+    @Override
+    public void updatePumpStatus(int pumpId, int carId, boolean occupied) {
+    }
+
+    @Override
+    public void updatePumpOpen(int pumpId, boolean open, boolean busy) {
+    }
+
+    @Override
+    public void updateOpenBays(int openBays, int totalBays, String staffing) {
+    }
+
+    @Override
+    public void updateCarStatus(int carId, CarState state) {
+    }
+}
@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// ----------------------------
+// Hourly Report
+// ----------------------------
+// Per demand hour: cars that arrived, were served and were lost, the queue
+// depth and the wait. Everything comes from the per-car times in
+// SimulationMetrics and the hour boundaries on the simulation clock (see
+// PlanRun.hourStarts), so the run itself records nothing extra. The queue
+// depth is the time-weighted mean over the hour, from a sweep over the
+// sorted enqueue and pickup times. Cars served after the last hour, while
+// the queue drains, count in the last hour.
+class HourlyReport {
+    final int hours;
+    final int[] arrived, served, lost;
+    final double[] meanQueue;     // cars, time-weighted
+    final int[] maxQueue;
+    final double[] meanWait;      // millis, of the cars a bay took during the hour
+
+    private HourlyReport(int hours) {
+        this.hours = hours;
+        this.arrived = new int[hours];
+        this.served = new int[hours];
+        this.lost = new int[hours];
+        this.meanQueue = new double[hours];
+        this.maxQueue = new int[hours];
+        this.meanWait = new double[hours];
+    }
+
+    static HourlyReport of(SimulationMetrics metrics, long[] hourStarts) {
+        int hours = hourStarts.length - 1;
+        HourlyReport report = new HourlyReport(hours);
+        int cars = metrics.getTotalCars();
+        long[] enqueued = new long[cars], pickedUp = new long[cars];
+        int queuedCount = 0, pickedCount = 0;
+        long[] waitSum = new long[hours];
+        for (int carId = 1; carId <= cars; carId++) {
+            long arrival = metrics.getArrivalTime(carId);
+            if (arrival < 0) continue;
+            int hour = hourOf(hourStarts, arrival);
+            report.arrived[hour]++;
+            if (metrics.getState(carId) == CarState.LOST) {
+                report.lost[hour]++;
+                continue;
+            }
+            long finish = metrics.getFinishTime(carId);
+            if (finish >= 0) {
+                report.served[hourOf(hourStarts, finish)]++;
+            }
+            long queued = metrics.getQueueTime(carId);
+            if (queued >= 0) {
+                enqueued[queuedCount++] = queued;
+            }
+            long pickup = metrics.getPickupTime(carId);
+            if (pickup >= 0) {
+                pickedUp[pickedCount++] = pickup;
+                waitSum[hourOf(hourStarts, pickup)] += metrics.getWaitMillis(carId);
+            }
+        }
+        int[] pickups = new int[hours];
+        for (int i = 0; i < pickedCount; i++) {
+            pickups[hourOf(hourStarts, pickedUp[i])]++;
+        }
+        for (int hour = 0; hour < hours; hour++) {
+            report.meanWait[hour] = pickups[hour] == 0 ? 0 : (double) waitSum[hour] / pickups[hour];
+        }
+        Arrays.sort(enqueued, 0, queuedCount);
+        Arrays.sort(pickedUp, 0, pickedCount);
+        report.sweepQueue(hourStarts, enqueued, queuedCount, pickedUp, pickedCount);
+        return report;
+    }
+
+    // Queue depth over time: +1 at each enqueue, -1 at each pickup, integrated per hour
+    private void sweepQueue(long[] hourStarts, long[] enqueued, int queuedCount, long[] pickedUp, int pickedCount) {
+        int in = 0, out = 0, depth = 0, hour = 0;
+        long last = hourStarts[0];
+        double area = 0;
+        while (hour < hours) {
+            long hourEnd = hourStarts[hour + 1];
+            long next = Math.min(in < queuedCount ? enqueued[in] : Long.MAX_VALUE,
+                out < pickedCount ? pickedUp[out] : Long.MAX_VALUE);
+            if (next >= hourEnd && hour < hours - 1) {
+                area += (double) depth * (hourEnd - last);
+                meanQueue[hour] = hourEnd > hourStarts[hour] ? area / (hourEnd - hourStarts[hour]) : depth;
+                area = 0;
+                last = hourEnd;
+                hour++;
+                maxQueue[hour] = depth;
+                continue;
+            }
+            if (next == Long.MAX_VALUE) { // the last hour ends with the last event
+                long end = Math.max(last, hourEnd);
+                area += (double) depth * (end - last);
+                meanQueue[hour] = end > hourStarts[hour] ? area / (end - hourStarts[hour]) : depth;
+                break;
+            }
+            area += (double) depth * (Math.max(last, next) - last);
+            last = Math.max(last, next);
+            // all events of one instant first: a car picked up as it queues never shows
+            while (in < queuedCount && enqueued[in] == next) {
+                depth++;
+                in++;
+            }
+            while (out < pickedCount && pickedUp[out] == next) {
+                depth--;
+                out++;
+            }
+            maxQueue[hour] = Math.max(maxQueue[hour], depth);
+        }
+    }
+
+    private static int hourOf(long[] hourStarts, long millis) {
+        int index = Arrays.binarySearch(hourStarts, 0, hourStarts.length - 1, millis);
+        if (index < 0) {
+            index = -index - 2;
+        } else {
+            while (index + 1 < hourStarts.length - 1 && hourStarts[index + 1] == millis) {
+                index++;
+            }
+        }
+        return Math.max(0, Math.min(hourStarts.length - 2, index));
+    }
+
+    // One line per hour; hours are labelled by day when the cycle is whole days
+    List<String> lines(int cycleHours) {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%-12s %7s %7s %5s %10s %9s %9s", "Hour", "Arrived", "Served", "Lost",
+            "Queue avg", "Queue max", "Wait (s)"));
+        for (int hour = 0; hour < hours; hour++) {
+            lines.add(String.format("%-12s %7d %7d %5d %10.2f %9d %9.1f", label(hour, cycleHours),
+                arrived[hour], served[hour], lost[hour], meanQueue[hour], maxQueue[hour], meanWait[hour] / 1000));
+        }
+        return lines;
+    }
+
+    static String label(int hour, int cycleHours) {
+        if (cycleHours % 24 == 0) {
+            return String.format("Day %d %02d:00", hour / 24 + 1, hour % 24);
+        }
+        return "Hour " + hour;
+    }
+}
@@ -0,0 +1,223 @@
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+// ----------------------------
+// Icon Cache
+// ----------------------------
+// Icons are loaded and decoded on background threads, scaled once and shared
+// by every panel that asks for the same (url, width, height). Sources are
+// tried in order: bundled resource (icons/<file name> next to the classes),
+// local disk cache, network. Panels paint their fallback until the image is
+// ready and are repainted when it arrives. An icon that could not be loaded
+// is tried again by the first paint RETRY_MILLIS later.
+final class IconCache {
+    private static final int TIMEOUT_MILLIS = 3000;
+    private static final long RETRY_MILLIS = 30_000;
+
+    private static final ConcurrentHashMap<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+    // url -> its decode in progress or done; removed again when it failed
+    private static final ConcurrentHashMap<String, CompletableFuture<BufferedImage>> DECODED = new ConcurrentHashMap<>();
+    private static final ExecutorService LOADER = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "IconLoader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private IconCache() {
+    }
+
+    private static final class Entry {
+        volatile Image image;
+        private volatile long failedNanos;                   // when loading gave up, 0 while it has not
+        private List<Component> waiting = new ArrayList<>(); // null once loading finished
+
+        synchronized boolean addWaiting(Component component) {
+            if (waiting == null) return false;
+            waiting.add(component);
+            return true;
+        }
+
+        synchronized List<Component> finish(Image loaded) {
+            image = loaded;
+            List<Component> toRepaint = waiting;
+            waiting = null;
+            if (loaded == null) {
+                failedNanos = Math.max(1, System.nanoTime());
+            }
+            return toRepaint;
+        }
+
+        boolean retryDue() {
+            long failed = failedNanos;
+            return failed != 0 && System.nanoTime() - failed >= RETRY_MILLIS * 1_000_000L;
+        }
+    }
+
+    // Scaled image if already loaded; otherwise null and the component is repainted once it is
+    static Image get(String url, int width, int height, Component requester) {
+        String key = url + '@' + width + 'x' + height;
+        Entry entry = ENTRIES.get(key);
+        if (entry == null || entry.retryDue()) {
+            Entry created = new Entry();
+            Entry current = entry == null ? ENTRIES.putIfAbsent(key, created)
+                : ENTRIES.replace(key, entry, created) ? null : ENTRIES.get(key);
+            if (current == null) {
+                entry = created;
+                LOADER.execute(() -> load(created, url, width, height));
+            } else {
+                entry = current;
+            }
+        }
+        Image image = entry.image;
+        if (image == null && !entry.addWaiting(requester)) {
+            image = entry.image; // finished in the meantime
+        }
+        return image;
+    }
+
+    private static void load(Entry entry, String url, int width, int height) {
+        Image scaled = null;
+        try {
+            BufferedImage source = decode(url);
+            if (source != null) {
+                scaled = scale(source, width, height);
+            }
+        } catch (Exception e) {
+            System.err.println("Error loading image from URL: " + url);
+        }
+        List<Component> toRepaint = entry.finish(scaled);
+        if (scaled != null && toRepaint != null && !toRepaint.isEmpty()) {
+            SwingUtilities.invokeLater(() -> {
+                for (Component component : toRepaint) {
+                    component.repaint();
+                }
+            });
+        }
+    }
+
+    // One decode per url, shared by all requested sizes: the first loader reads the
+    // image, loaders asking for other sizes meanwhile wait for its result
+    private static BufferedImage decode(String url) throws IOException {
+        CompletableFuture<BufferedImage> decoded = DECODED.get(url);
+        if (decoded == null) {
+            CompletableFuture<BufferedImage> created = new CompletableFuture<>();
+            decoded = DECODED.putIfAbsent(url, created);
+            if (decoded == null) {
+                decoded = created;
+                try {
+                    BufferedImage image = readImage(url);
+                    if (image == null) {
+                        DECODED.remove(url, created); // unreadable now; a later retry reads it again
+                    }
+                    created.complete(image);
+                } catch (IOException | RuntimeException e) {
+                    DECODED.remove(url, created);
+                    created.completeExceptionally(e);
+                }
+            }
+        }
+        try {
+            return decoded.join();
+        } catch (CompletionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static BufferedImage readImage(String url) throws IOException {
+        String fileName = fileName(url);
+
+        URL bundled = IconCache.class.getResource("icons/" + fileName);
+        if (bundled != null) {
+            return ImageIO.read(bundled);
+        }
+
+        File cached = new File(cacheDirectory(), Integer.toHexString(url.hashCode()) + "-" + fileName);
+        if (cached.isFile()) {
+            BufferedImage image = ImageIO.read(cached);
+            if (image != null) return image;
+        }
+
+        download(url, cached);
+        return ImageIO.read(cached);
+    }
+
+    private static void download(String url, File target) throws IOException {
+        File directory = target.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create icon cache " + directory);
+        }
+        URLConnection connection = new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setRequestProperty("User-Agent", "CarWashSimulation");
+        // Each download gets its own part file, so concurrent ones (another process
+        // sharing the cache) never write the same file
+        Path tmp = Files.createTempFile(directory.toPath(), target.getName(), ".part");
+        try {
+            try (InputStream in = connection.getInputStream()) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                if (connection instanceof HttpURLConnection) {
+                    ((HttpURLConnection) connection).disconnect();
+                }
+            }
+            try {
+                Files.move(tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static File cacheDirectory() {
+        String directory = System.getProperty("carwash.icon.cache");
+        if (directory != null && !directory.trim().isEmpty()) {
+            return new File(directory.trim());
+        }
+        return new File(new File(System.getProperty("user.home"), ".carwash"), "icons");
+    }
+
+    private static String fileName(String url) {
+        String name = url.substring(url.lastIndexOf('/') + 1);
+        int query = name.indexOf('?');
+        if (query >= 0) name = name.substring(0, query);
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private static Image scale(BufferedImage source, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+}
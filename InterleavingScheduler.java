@@ -0,0 +1,309 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+// ----------------------------
+// Interleaving Scheduler
+// ----------------------------
+// Runs the simulation threads one at a time. Every Semaphore operation and
+// every wash is a scheduling point where the running actor hands the turn to
+// an actor picked by a seeded Random, or read back from a recorded schedule.
+// A run therefore depends only on its choices and replays step for step.
+// Time is virtual: when nobody can run it jumps to the next wake-up, so a
+// whole run takes milliseconds of real time however long the washes are.
+// The turn is handed over with park/unpark, so only the next actor wakes.
+class InterleavingScheduler {
+    private static final int RUNNABLE = 0, BLOCKED = 1, SLEEPING = 2, DONE = 3;
+
+    private static final class Actor {
+        final String name;
+        Thread thread;
+        int state = RUNNABLE;
+        Object blockedOn;
+        long wakeAt;
+
+        Actor(String name) {
+            this.name = name;
+        }
+    }
+
+    private final Object lock = new Object();
+    private final Random random;
+    private final int[] replay;        // recorded choices, null when exploring
+    private int replayIndex;
+    private int[] choices = new int[256];
+    private int choiceCount;
+    private final long maxSteps;
+    private long steps;
+
+    private final List<Actor> actors = new ArrayList<>();
+    private final List<Actor> candidates = new ArrayList<>();
+    private volatile Actor current;
+    private volatile long virtualMillis;
+    private Runnable invariant;
+    private String failure;
+    private Thread runner;
+    private volatile boolean finished, aborted;
+
+    private final SimulationClock clock = new SimulationClock(0) {
+        @Override
+        public long now() {
+            return virtualMillis;
+        }
+
+        @Override
+        public void pause() {
+        }
+
+        @Override
+        public void resume() {
+        }
+    };
+
+    public InterleavingScheduler(long seed, int[] replay, long maxSteps) {
+        this.random = new Random(seed);
+        this.replay = replay;
+        this.maxSteps = maxSteps;
+    }
+
+    // Virtual time, for SimulationMetrics and anything else that reads a clock
+    public SimulationClock clock() {
+        return clock;
+    }
+
+    // Checked at every scheduling point; throw IllegalStateException to fail the run
+    public void setInvariant(Runnable invariant) {
+        this.invariant = invariant;
+    }
+
+    // Adds an actor; it runs only when the schedule picks it
+    public void spawn(Runnable body, String name) {
+        Actor actor = new Actor(name);
+        Thread thread = new Thread(() -> runActor(actor, body), name);
+        thread.setDaemon(true);
+        actor.thread = thread;
+        synchronized (lock) {
+            actors.add(actor);
+        }
+        thread.start();
+    }
+
+    // Starts the spawned actors and waits until nobody can run any more; returns the failure or null
+    public String run() throws InterruptedException {
+        runner = Thread.currentThread();
+        synchronized (lock) {
+            handOff(pickNext());
+        }
+        while (!finished) {
+            LockSupport.park(this);
+        }
+        List<Actor> all;
+        synchronized (lock) {
+            aborted = true; // blocked actors end with an InterruptedException
+            all = new ArrayList<>(actors);
+        }
+        for (Actor actor : all) {
+            LockSupport.unpark(actor.thread);
+        }
+        for (Actor actor : all) {
+            actor.thread.join(1000);
+        }
+        synchronized (lock) {
+            return failure;
+        }
+    }
+
+    public int[] getChoices() {
+        return Arrays.copyOf(choices, choiceCount);
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    // Lets another actor run before the caller continues
+    public void yieldPoint() throws InterruptedException {
+        Actor me;
+        synchronized (lock) {
+            me = self();
+            checkInvariant();
+            handOff(pickNext());
+        }
+        awaitTurn(me);
+    }
+
+    // yieldPoint for callers that cannot throw; an aborted run leaves the thread interrupted
+    public void yieldPointQuietly() {
+        try {
+            yieldPoint();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Parks the caller until wakeAll(resource) and the schedule picks it again
+    public void block(Object resource) throws InterruptedException {
+        Actor me;
+        synchronized (lock) {
+            me = self();
+            me.state = BLOCKED;
+            me.blockedOn = resource;
+            handOff(pickNext());
+        }
+        awaitTurn(me);
+    }
+
+    public void wakeAll(Object resource) {
+        synchronized (lock) {
+            for (Actor actor : actors) {
+                if (actor.state == BLOCKED && actor.blockedOn == resource) {
+                    actor.state = RUNNABLE;
+                    actor.blockedOn = null;
+                }
+            }
+        }
+    }
+
+    // Parks the caller for the given virtual time
+    public void sleep(long millis) throws InterruptedException {
+        Actor me;
+        synchronized (lock) {
+            me = self();
+            me.state = SLEEPING;
+            me.wakeAt = virtualMillis + Math.max(0, millis);
+            checkInvariant();
+            handOff(pickNext());
+        }
+        awaitTurn(me);
+    }
+
+    private void runActor(Actor me, Runnable body) {
+        try {
+            awaitTurn(me);
+            body.run();
+        } catch (InterruptedException e) {
+            // run ended before this actor was ever scheduled
+        } catch (Throwable t) {
+            synchronized (lock) {
+                fail(me.name + " threw " + t);
+            }
+        } finally {
+            synchronized (lock) {
+                me.state = DONE;
+                if (current == me && !aborted) {
+                    handOff(pickNext());
+                }
+            }
+        }
+    }
+
+    private void awaitTurn(Actor me) throws InterruptedException {
+        while (current != me && !aborted) {
+            LockSupport.park(this);
+        }
+        if (aborted) {
+            throw new InterruptedException("schedule aborted");
+        }
+    }
+
+    // ---- everything below runs under lock ----
+
+    private Actor self() throws InterruptedException {
+        if (aborted) {
+            throw new InterruptedException("schedule aborted");
+        }
+        if (current == null || current.thread != Thread.currentThread()) {
+            fail("scheduling point reached from " + Thread.currentThread().getName() + ", which does not hold the turn");
+            throw new InterruptedException("schedule aborted");
+        }
+        return current;
+    }
+
+    private void checkInvariant() throws InterruptedException {
+        if (++steps > maxSteps) {
+            fail("no progress after " + maxSteps + " steps");
+        } else if (invariant != null) {
+            try {
+                invariant.run();
+            } catch (IllegalStateException e) {
+                fail(e.getMessage());
+            }
+        }
+        if (aborted) {
+            throw new InterruptedException("schedule aborted");
+        }
+    }
+
+    private void handOff(Actor next) {
+        current = next;
+        if (next != null) {
+            LockSupport.unpark(next.thread);
+        } else {
+            finished = true; // everybody is blocked or done: the run is over
+            LockSupport.unpark(runner);
+        }
+    }
+
+    private Actor pickNext() {
+        if (failure != null) {
+            return null;
+        }
+        collectRunnable();
+        if (candidates.isEmpty()) {
+            long next = Long.MAX_VALUE;
+            for (Actor actor : actors) {
+                if (actor.state == SLEEPING) {
+                    next = Math.min(next, actor.wakeAt);
+                }
+            }
+            if (next == Long.MAX_VALUE) {
+                return null;
+            }
+            virtualMillis = next;
+            for (Actor actor : actors) {
+                if (actor.state == SLEEPING && actor.wakeAt == next) {
+                    actor.state = RUNNABLE;
+                }
+            }
+            collectRunnable();
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        int choice;
+        if (replay != null) {
+            if (replayIndex >= replay.length || replay[replayIndex] >= candidates.size()) {
+                fail("replay diverged from the recorded schedule at choice " + replayIndex);
+                return null;
+            }
+            choice = replay[replayIndex++];
+        } else {
+            choice = random.nextInt(candidates.size());
+        }
+        if (choiceCount == choices.length) {
+            choices = Arrays.copyOf(choices, choiceCount * 2);
+        }
+        choices[choiceCount++] = choice;
+        return candidates.get(choice);
+    }
+
+    private void collectRunnable() {
+        candidates.clear();
+        for (Actor actor : actors) {
+            if (actor.state == RUNNABLE) {
+                candidates.add(actor);
+            }
+        }
+    }
+
+    private void fail(String reason) {
+        if (failure == null) {
+            failure = "step " + steps + " at " + virtualMillis + "ms: " + reason;
+        }
+        aborted = true;
+        finished = true;
+        LockSupport.unpark(runner);
+    }
+}
@@ -0,0 +1,138 @@
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// ----------------------------
+// Headless Load Driver
+// ----------------------------
+// Pushes cars through the real Car/Pump threads as fast as an ArrivalThrottle
+// lets it, without the GUI, to see how the semaphore protocol holds up at
+// high arrival rates. Cars run on a pool with one thread per in-flight permit,
+// so however far arrivals outpace the bays, at most maxInFlight producers
+// ever block on `empty`. Short services keep the bays up with the rate:
+//
+//   java -Dcarwash.stages=wash:1 LoadDriver [ratePerSecond] [cars] [capacity] [bays] [burst] [maxInFlight]
+//
+// A rate of 0 means no rate limit: the generator runs as fast as backpressure allows.
+// With -Dcarwash.trace.file, each drive leaves its flight recording there.
+class LoadDriver {
+    private static final int SPEED_FACTOR = 2;
+
+    public static void main(String[] args) throws InterruptedException {
+        double rate = args.length > 0 ? Double.parseDouble(args[0]) : 20_000;
+        int cars = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int bays = args.length > 3 ? Integer.parseInt(args[3]) : 32;
+        int burst = args.length > 4 ? Integer.parseInt(args[4]) : Integer.getInteger("carwash.arrivals.burst", 32);
+        int maxInFlight = args.length > 5 ? Integer.parseInt(args[5]) :
+            Integer.getInteger("carwash.arrivals.maxInFlight", 256);
+
+        ArrivalThrottle throttle = new ArrivalThrottle(rate, burst, maxInFlight);
+        String stageSpec = ServicePipeline.configuredSpec();
+        System.out.println("Driving " + cars + " cars into " + capacity + " waiting slots and " + bays +
+            " bays (stages " + stageSpec + "), " + throttle.describe());
+
+        Run run = drive(throttle, maxInFlight, cars, capacity, bays, stageSpec, 0, null);
+
+        System.out.printf("Arrivals:   %d cars in %.2f s = %.0f cars/s%n", cars, run.generatedNanos / 1e9,
+            cars / (run.generatedNanos / 1e9));
+        System.out.printf("Throughput: %d cars in %.2f s = %.0f cars/s%n", cars, run.elapsedNanos / 1e9,
+            run.carsPerSecond());
+        System.out.printf("Wait:       mean %.2f ms, max %d ms%n",
+            (double) run.metrics.getTotalWaitMillis() / cars, run.metrics.getMaxWaitMillis());
+        System.out.println(throttle.report());
+        for (String line : run.stageReport) {
+            System.out.println(line);
+        }
+    }
+
+    // Outcome of one drive
+    static final class Run {
+        final SimulationMetrics metrics;
+        final long generatedNanos, elapsedNanos;
+        final List<String> stageReport;
+
+        Run(SimulationMetrics metrics, long generatedNanos, long elapsedNanos, List<String> stageReport) {
+            this.metrics = metrics;
+            this.generatedNanos = generatedNanos;
+            this.elapsedNanos = elapsedNanos;
+            this.stageReport = stageReport;
+        }
+
+        double carsPerSecond() {
+            return metrics.getTotalCars() / (elapsedNanos / 1e9);
+        }
+    }
+
+    // Runs the cars through fresh pumps and stages and returns once every car is washed.
+    // With workPerMilli above 0 the services compute instead of waiting (see TimeScale).
+    // finished, if given, runs after the last car and before any thread is stopped.
+    static Run drive(ArrivalThrottle throttle, int maxInFlight, int cars, int capacity, int bays, String stageSpec,
+                     long workPerMilli, Runnable finished) throws InterruptedException {
+        SimulationClock clock = new SimulationClock(0);
+        SimulationMetrics metrics = new SimulationMetrics(cars, clock);
+        SimulationLogger log = new SimulationLogger(1 << 16); // no sinks: records are dropped unformatted
+        SimulationView view = new HeadlessView();
+        Queue<Integer> queue = new LinkedList<>();
+        Semaphore empty = new Semaphore(capacity);
+        Semaphore full = new Semaphore(0);
+        Semaphore mutex = new Semaphore(1);
+        Semaphore pumpSem = new Semaphore(bays);
+        FlightRecorder recorder = FlightRecorder.configured();
+        empty.traced("empty", recorder);
+        full.traced("full", recorder);
+        mutex.traced("mutex", recorder);
+        pumpSem.traced("pumpSem", recorder);
+        log.setRecorder(recorder);
+        TimeScale timeScale = new TimeScale(SPEED_FACTOR, workPerMilli);
+
+        ServicePipeline pipeline = ServicePipeline.create(stageSpec, bays, null, timeScale, null, clock, view, log, metrics);
+        pipeline.start();
+        Pump[] pumps = new Pump[bays];
+        for (int i = 0; i < bays; i++) {
+            pumps[i] = new Pump(i + 1, queue, empty, full, mutex, pumpSem, timeScale, view, log, metrics);
+            pumps[i].setPipeline(pipeline);
+            pumps[i].setDaemon(true);
+            pumps[i].start();
+        }
+        ExecutorService carThreads = Executors.newFixedThreadPool(maxInFlight, r -> {
+            Thread thread = new Thread(r, "Car");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long startNanos = System.nanoTime();
+        for (int carId = 1; carId <= cars; carId++) {
+            throttle.acquire();
+            carThreads.execute(throttle.track(new Car(carId, queue, empty, full, mutex, view, log, metrics)));
+        }
+        long generatedNanos = System.nanoTime() - startNanos;
+        while (metrics.getCarsProcessed() < cars) {
+            Thread.sleep(5);
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        if (finished != null) {
+            finished.run();
+        }
+
+        for (Pump pump : pumps) {
+            pump.stopPump();
+        }
+        pipeline.stop();
+        carThreads.shutdownNow();
+        carThreads.awaitTermination(1, TimeUnit.SECONDS);
+        log.close();
+        if (recorder != null) {
+            try {
+                recorder.write();
+            } catch (IOException e) {
+                System.err.println("Error writing flight recording: " + e.getMessage());
+            }
+        }
+        return new Run(metrics, generatedNanos, elapsedNanos, pipeline.report(clock.now()));
+    }
+}
@@ -0,0 +1,88 @@
+// ----------------------------
+// Log Events
+// ----------------------------
+enum LogEvent {
+    CAR_GENERATED,
+    CAR_ARRIVED,
+    CAR_ENTERED_QUEUE,
+    PUMP_TOOK_CAR,
+    BAY_ACQUIRED,
+    SERVICE_STARTED,
+    SERVICE_FINISHED,
+    BAY_RELEASED,
+    BAY_OPENED,
+    BAY_CLOSED,
+    STAGE_STARTED,
+    STAGE_FINISHED,
+    APPOINTMENT_BOOKED,
+    APPOINTMENT_ADMITTED,
+    CAR_LOST,
+    MESSAGE;
+
+    private static final LogEvent[] VALUES = values();
+
+    static LogEvent of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    // Builds the human readable line only when a sink asks for it
+    void appendTo(StringBuilder sb, int carId, int pumpId, int queueSize, String text) {
+        switch (this) {
+            case CAR_GENERATED:
+                sb.append("Generated Car ").append(carId);
+                break;
+            case CAR_ARRIVED:
+                sb.append("Car ").append(carId).append(" arrived at the station");
+                break;
+            case CAR_ENTERED_QUEUE:
+                sb.append("Car ").append(carId).append(" entered the waiting queue. Queue size: ").append(queueSize);
+                break;
+            case PUMP_TOOK_CAR:
+                sb.append("Pump ").append(pumpId).append(" took Car ").append(carId)
+                  .append(" from queue. Queue size now: ").append(queueSize);
+                break;
+            case BAY_ACQUIRED:
+                sb.append("Pump ").append(pumpId).append(": Bay ").append(pumpId)
+                  .append(" acquired for Car ").append(carId);
+                break;
+            case SERVICE_STARTED:
+                sb.append("Pump ").append(pumpId).append(": Car ").append(carId)
+                  .append(" begins service at Bay ").append(pumpId);
+                break;
+            case SERVICE_FINISHED:
+                sb.append("Pump ").append(pumpId).append(": Car ").append(carId).append(" finishes service");
+                break;
+            case BAY_RELEASED:
+                sb.append("Pump ").append(pumpId).append(": Bay ").append(pumpId).append(" is now free");
+                break;
+            case BAY_OPENED:
+                sb.append("Bay ").append(pumpId).append(" opened. Queue size: ").append(queueSize);
+                break;
+            case BAY_CLOSED:
+                sb.append("Bay ").append(pumpId).append(" closed. Queue size: ").append(queueSize);
+                break;
+            case STAGE_STARTED:
+                sb.append("Stage ").append(text).append(": Car ").append(carId).append(" starts");
+                break;
+            case STAGE_FINISHED:
+                sb.append("Stage ").append(text).append(": Car ").append(carId).append(" done");
+                break;
+            case APPOINTMENT_BOOKED: // queueSize carries the slot start in seconds
+                sb.append("Car ").append(carId).append(" booked Bay ").append(pumpId)
+                  .append(" for t=").append(queueSize).append("s");
+                break;
+            case APPOINTMENT_ADMITTED: // queueSize carries the lateness in seconds
+                sb.append("Pump ").append(pumpId).append(": booked Car ").append(carId).append(" checked in");
+                if (queueSize > 0) {
+                    sb.append(", ").append(queueSize).append("s late");
+                }
+                break;
+            case CAR_LOST:
+                sb.append("Car ").append(carId).append(" found the waiting area full and drove on");
+                break;
+            default:
+                sb.append(text);
+                break;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+import java.io.IOException;
+
+// ----------------------------
+// Log Sink (console, file, GUI)
+// ----------------------------
+interface LogSink {
+    void write(CharSequence line) throws IOException; // one formatted line, without the newline
+
+    void flush() throws IOException; // called once per drained batch
+
+    default void close() throws IOException {
+        flush();
+    }
+}
@@ -0,0 +1,28 @@
+// ----------------------------
+// Pause Gate
+// ----------------------------
+// One pause switch shared by every car of a run. Pausing and resuming are a
+// single write and a single notifyAll, so they cost the same for fifteen cars
+// or ten million, and no car has to be remembered just to pause it. Cars look
+// at the gate between their steps and wait on it while it is closed.
+class PauseGate {
+    private volatile boolean paused;
+
+    synchronized void pause() {
+        paused = true;
+    }
+
+    synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    void await() throws InterruptedException {
+        if (!paused) return;
+        synchronized (this) { // checked under the lock so a resume cannot slip in before the wait
+            while (paused) {
+                wait();
+            }
+        }
+    }
+}
@@ -0,0 +1,370 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+// ----------------------------
+// Performance Regression Harness
+// ----------------------------
+// Runs a fixed catalog of headless scenarios through the real Car, Pump and
+// Semaphore threads (see LoadDriver.drive). For each one it measures
+// throughput, p99 wait and p99 time in the station, allocation and GC pauses.
+// The results are compared with a local baseline file, and the harness exits
+// with 1 when a metric got worse than the baseline by more than the
+// threshold. Each scenario gets one warm-up run at a fifth of its cars, then
+// the median of the measured repeats counts. Each metric also has a small
+// absolute slack, so timer noise on tiny values does not fail a build.
+//
+// A service that only sleeps would make throughput the bays divided by the
+// service time, whatever the code does. So small, rush-hour and overload
+// compute their services (workPerMilli loop iterations per scaled
+// millisecond, see TimeScale), and many-bay has so many short washes that
+// the hand-offs dominate. A throttled scenario moves exactly the cars the
+// throttle lets in, so for rush-hour only the latencies are gated.
+//
+//   java PerfHarness [--record] [--threshold 0.10] [--repeats 3] [--baseline file] [scenario ...]
+//
+// Without a baseline file, or with --record, the results become the new baseline.
+// The GUI itself is not measured: SimulationGUI needs a display, so the
+// catalog drives the same actors through HeadlessView.
+class PerfHarness {
+    private static final String DEFAULT_BASELINE = "carwash-baseline.properties";
+
+    static final class Scenario {
+        final String name, stageSpec;
+        final int cars, capacity, bays, burst, maxInFlight;
+        final double rate;                   // cars per second, 0 = as fast as backpressure allows
+        final long workPerMilli;             // 0 = services sleep
+
+        Scenario(String name, int cars, int capacity, int bays, String stageSpec, double rate, int burst,
+                 int maxInFlight, long workPerMilli) {
+            this.name = name;
+            this.cars = cars;
+            this.capacity = capacity;
+            this.bays = bays;
+            this.stageSpec = stageSpec;
+            this.rate = rate;
+            this.burst = burst;
+            this.maxInFlight = maxInFlight;
+            this.workPerMilli = workPerMilli;
+        }
+
+        boolean gates(Metric metric) {
+            return metric.gated && (rate == 0 || !metric.key.equals("throughput"));
+        }
+    }
+
+    static final Scenario[] CATALOG = {
+        new Scenario("small", 2_000, 3, 2, "wash:2", 0, 32, 16, 20_000),
+        new Scenario("rush-hour", 20_000, 12, 6, "wash:2,dry:1:3:2", 2_500, 200, 64, 5_000),
+        new Scenario("overload", 10_000, 8, 2, "wash:1", 0, 32, 256, 20_000),
+        new Scenario("many-bay", 100_000, 64, 200, "wash:1", 0, 32, 256, 0),
+    };
+
+    static final class Metric {
+        final String key, label;
+        final boolean higherIsBetter, gated;
+        final double slack;                  // differences below this never count as a regression
+
+        Metric(String key, String label, boolean higherIsBetter, boolean gated, double slack) {
+            this.key = key;
+            this.label = label;
+            this.higherIsBetter = higherIsBetter;
+            this.gated = gated;
+            this.slack = slack;
+        }
+    }
+
+    // Allocation per second rises with throughput, so only the per-car figure is gated
+    static final Metric[] METRICS = {
+        new Metric("throughput", "Throughput (cars/s)", true, true, 0),
+        new Metric("p99Wait", "p99 wait (ms)", false, true, 5),
+        new Metric("p99System", "p99 in station (ms)", false, true, 5),
+        new Metric("allocRate", "Allocation (MB/s)", false, false, 0),
+        new Metric("allocPerCar", "Allocation (KB/car)", false, true, 0.5),
+        new Metric("gcTime", "GC time (ms)", false, true, 20),
+        new Metric("gcMaxPause", "GC max pause (ms)", false, true, 10),
+    };
+
+    public static void main(String[] args) throws Exception {
+        boolean record = false;
+        double threshold = 0.10;
+        int repeats = 3;
+        File baselineFile = new File(DEFAULT_BASELINE);
+        List<Scenario> selected = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--record":
+                    record = true;
+                    break;
+                case "--threshold":
+                    threshold = Double.parseDouble(args[++i]);
+                    break;
+                case "--repeats":
+                    repeats = Math.max(1, Integer.parseInt(args[++i]));
+                    break;
+                case "--baseline":
+                    baselineFile = new File(args[++i]);
+                    break;
+                default:
+                    selected.add(scenario(args[i]));
+            }
+        }
+        if (selected.isEmpty()) {
+            selected.addAll(Arrays.asList(CATALOG));
+        }
+
+        Properties baseline = new Properties();
+        boolean haveBaseline = baselineFile.isFile();
+        if (haveBaseline) {
+            try (InputStream in = new FileInputStream(baselineFile)) {
+                baseline.load(in);
+            }
+            checkEnvironment(baseline);
+        }
+
+        Properties results = new Properties();
+        for (Scenario scenario : selected) {
+            System.out.println("Running " + scenario.name + ": " + scenario.cars + " cars, " + scenario.capacity +
+                " slots, " + scenario.bays + " bays, stages " + scenario.stageSpec +
+                (scenario.rate > 0 ? ", " + (long) scenario.rate + " cars/s" : ", unthrottled") +
+                (scenario.workPerMilli > 0 ? ", CPU-bound services" : ""));
+            measure(scenario, scenario.cars / 5); // warm-up
+            double[][] samples = new double[METRICS.length][repeats];
+            for (int r = 0; r < repeats; r++) {
+                double[] sample = measure(scenario, scenario.cars);
+                for (int m = 0; m < METRICS.length; m++) {
+                    samples[m][r] = sample[m];
+                }
+            }
+            for (int m = 0; m < METRICS.length; m++) {
+                results.setProperty(scenario.name + "." + METRICS[m].key, String.format("%.3f", median(samples[m])));
+            }
+        }
+
+        int regressions = haveBaseline ? compare(selected, baseline, results, threshold) : 0;
+        if (record || !haveBaseline) {
+            baseline.putAll(results);
+            baseline.setProperty("env.java", System.getProperty("java.version"));
+            baseline.setProperty("env.cores", String.valueOf(Runtime.getRuntime().availableProcessors()));
+            try (OutputStream out = new FileOutputStream(baselineFile)) {
+                baseline.store(out, "Car wash performance baseline, written by PerfHarness");
+            }
+            System.out.println((haveBaseline ? "Baseline updated: " : "No baseline yet, recorded: ") +
+                baselineFile.getAbsolutePath());
+            if (!haveBaseline) {
+                printResults(selected, results);
+            }
+            return;
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " metric(s) regressed by more than " + Math.round(threshold * 100) + "%");
+            System.exit(1);
+        }
+        System.out.println("No regressions beyond " + Math.round(threshold * 100) + "%");
+    }
+
+    private static Scenario scenario(String name) {
+        for (Scenario scenario : CATALOG) {
+            if (scenario.name.equals(name)) return scenario;
+        }
+        throw new IllegalArgumentException("Unknown scenario " + name + "; the catalog has small, rush-hour, " +
+            "overload and many-bay");
+    }
+
+    private static void checkEnvironment(Properties baseline) {
+        String java = System.getProperty("java.version");
+        String cores = String.valueOf(Runtime.getRuntime().availableProcessors());
+        if (!java.equals(baseline.getProperty("env.java", java)) || !cores.equals(baseline.getProperty("env.cores", cores))) {
+            System.out.println("WARNING: the baseline was recorded on Java " + baseline.getProperty("env.java") +
+                " with " + baseline.getProperty("env.cores") + " cores, this is Java " + java + " with " + cores);
+        }
+    }
+
+    // One run; values in METRICS order
+    private static double[] measure(Scenario scenario, int cars) throws InterruptedException {
+        System.gc(); // start every run with the same heap
+        ThreadAllocation allocation = new ThreadAllocation();
+        GcWatch gc = new GcWatch();
+        long[] allocated = new long[1];
+        LoadDriver.Run run = LoadDriver.drive(new ArrivalThrottle(scenario.rate, scenario.burst, scenario.maxInFlight),
+            scenario.maxInFlight, cars, scenario.capacity, scenario.bays, scenario.stageSpec, scenario.workPerMilli,
+            () -> allocated[0] = allocation.sinceStart()); // before the car and pump threads end
+        gc.stop();
+
+        SimulationMetrics metrics = run.metrics;
+        long[] waits = new long[cars], inStation = new long[cars];
+        for (int carId = 1; carId <= cars; carId++) {
+            waits[carId - 1] = metrics.getWaitMillis(carId);
+            inStation[carId - 1] = metrics.getFinishTime(carId) - metrics.getArrivalTime(carId);
+        }
+        double seconds = run.elapsedNanos / 1e9;
+        return new double[] {
+            run.carsPerSecond(),
+            percentile(waits, 0.99),
+            percentile(inStation, 0.99),
+            allocated[0] < 0 ? 0 : allocated[0] / 1e6 / seconds,
+            allocated[0] < 0 ? 0 : allocated[0] / 1024.0 / cars,
+            gc.totalMillis(),
+            gc.maxPauseMillis,
+        };
+    }
+
+    private static long percentile(long[] values, double quantile) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.max(0, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int n = sorted.length;
+        return n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2;
+    }
+
+    // Prints every metric against the baseline and returns how many regressed
+    private static int compare(List<Scenario> scenarios, Properties baseline, Properties results, double threshold) {
+        int regressions = 0;
+        System.out.println();
+        System.out.printf("%-10s %-21s %12s %12s %8s%n", "Scenario", "Metric", "Baseline", "Now", "Change");
+        for (Scenario scenario : scenarios) {
+            for (Metric metric : METRICS) {
+                String key = scenario.name + "." + metric.key;
+                double now = Double.parseDouble(results.getProperty(key));
+                String recorded = baseline.getProperty(key);
+                if (recorded == null) {
+                    System.out.printf("%-10s %-21s %12s %12.2f %8s%n", scenario.name, metric.label, "-", now, "new");
+                    continue;
+                }
+                double before = Double.parseDouble(recorded);
+                double worse = metric.higherIsBetter ? before - now : now - before;
+                boolean regressed = scenario.gates(metric) && worse > metric.slack && worse > threshold * Math.abs(before);
+                String change = before == 0 ? "" : String.format("%+.1f%%", (now - before) * 100 / Math.abs(before));
+                System.out.printf("%-10s %-21s %12.2f %12.2f %8s%s%n", scenario.name, metric.label, before, now,
+                    change, regressed ? "  REGRESSED" : "");
+                if (regressed) {
+                    regressions++;
+                }
+            }
+        }
+        System.out.println();
+        return regressions;
+    }
+
+    private static void printResults(List<Scenario> scenarios, Properties results) {
+        System.out.printf("%-10s %-21s %12s%n", "Scenario", "Metric", "Value");
+        for (Scenario scenario : scenarios) {
+            for (Metric metric : METRICS) {
+                System.out.printf("%-10s %-21s %12s%n", scenario.name, metric.label,
+                    results.getProperty(scenario.name + "." + metric.key));
+            }
+        }
+    }
+
+    // Bytes allocated by the threads alive at the end, since this object was made.
+    // HotSpot only; -1 elsewhere.
+    private static final class ThreadAllocation {
+        private final com.sun.management.ThreadMXBean threads;
+        private final long[] startIds, startBytes;
+
+        ThreadAllocation() {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            threads = bean instanceof com.sun.management.ThreadMXBean &&
+                ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) bean : null;
+            startIds = threads != null ? threads.getAllThreadIds() : new long[0];
+            startBytes = threads != null ? threads.getThreadAllocatedBytes(startIds) : new long[0];
+        }
+
+        long sinceStart() {
+            if (threads == null) return -1;
+            long[] ids = threads.getAllThreadIds();
+            long[] bytes = threads.getThreadAllocatedBytes(ids);
+            long total = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (bytes[i] < 0) continue;
+                int known = indexOf(startIds, ids[i]);
+                total += bytes[i] - (known >= 0 && startBytes[known] > 0 ? startBytes[known] : 0);
+            }
+            return total;
+        }
+
+        private static int indexOf(long[] ids, long id) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) return i;
+            }
+            return -1;
+        }
+    }
+
+    // GC count and time from the collector beans, the longest pause from their notifications.
+    // Notifications arrive asynchronously, so those of collections that began
+    // before the watch are ignored.
+    private static final class GcWatch {
+        private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        private final long startMillis;
+        private final long startUptime;     // JVM uptime when the watch began, the clock GcInfo uses
+        private final NotificationListener listener;
+        private long endMillis;
+        volatile double maxPauseMillis;
+
+        GcWatch() {
+            startMillis = collectionMillis();
+            startUptime = ManagementFactory.getRuntimeMXBean().getUptime();
+            listener = (notification, handback) -> {
+                if (!com.sun.management.GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
+                        .equals(notification.getType())) {
+                    return;
+                }
+                com.sun.management.GarbageCollectionNotificationInfo info = com.sun.management.
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                if (info.getGcInfo().getStartTime() < startUptime) {
+                    return; // delivered late, e.g. the System.gc() before the run
+                }
+                maxPauseMillis = Math.max(maxPauseMillis, info.getGcInfo().getDuration());
+            };
+            for (GarbageCollectorMXBean collector : collectors) {
+                if (collector instanceof NotificationEmitter) {
+                    ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+                }
+            }
+        }
+
+        private long collectionMillis() {
+            long total = 0;
+            for (GarbageCollectorMXBean collector : collectors) {
+                total += Math.max(0, collector.getCollectionTime());
+            }
+            return total;
+        }
+
+        void stop() {
+            endMillis = collectionMillis();
+            for (GarbageCollectorMXBean collector : collectors) {
+                if (collector instanceof NotificationEmitter) {
+                    try {
+                        ((NotificationEmitter) collector).removeNotificationListener(listener);
+                    } catch (javax.management.ListenerNotFoundException e) {
+                        // never added
+                    }
+                }
+            }
+        }
+
+        double totalMillis() {
+            return endMillis - startMillis;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+// ----------------------------
+// Plan Run
+// ----------------------------
+// One realization of a RunPlan. It is the arrival source of the run and
+// tells pumps each car's service time. Draws come from a hash of
+// (seed, car, purpose) instead of a Random stream, so a car's class and
+// service time are the same whichever pump asks first, with nothing stored
+// per car. A checkpoint only needs the seed and the position.
+//
+// A demand curve is sampled by thinning: candidate arrivals come at the peak
+// rate of the whole plan, and each is kept with probability rate(t) / peak,
+// which gives a Poisson process whose rate follows the curve. With a clock
+// attached, the run also notes where each demand hour started on the
+// simulation clock, so the hourly report can bucket the per-car times.
+class PlanRun implements ArrivalSource {
+    private static final int ARRIVAL = 1, CLASS = 2, SERVICE = 3, THINNING = 4;
+
+    final RunPlan plan;
+    private long seed;
+    private int released;            // cars released so far
+    private long scenarioMillis;     // scenario time of the last release
+    private long pendingGap;         // gap announced by nextDelayMillis, committed by arrived()
+    private long candidates;         // thinning candidates drawn so far
+    private long pendingCandidates;
+    private int bayIndex = -1;
+    private IntConsumer bayListener;
+
+    // demand hours on the simulation clock, only with a clock and a curve
+    private SimulationClock clock;
+    private long[] hourStarts;       // clock millis where each hour began, hours + 1 entries
+    private int hoursStarted;
+    private long releasedAtMillis;   // clock millis of the last release
+    private int speedFactor = 1;     // of the last nextDelayMillis call
+
+    PlanRun(RunPlan plan, long seed) {
+        this.plan = plan;
+        this.seed = seed;
+    }
+
+    // Gets the bay count of the schedule, now and whenever it changes
+    void setBayListener(IntConsumer listener) {
+        this.bayListener = listener;
+        bayIndex = -1;
+        applyBayChanges();
+    }
+
+    // Notes the demand hours against this clock from now on
+    void setClock(SimulationClock clock) {
+        this.clock = clock;
+        if (plan.hasDemand() && hourStarts == null) {
+            hourStarts = new long[plan.demandHours() + 1];
+        }
+    }
+
+    @Override
+    public long nextDelayMillis(int speedFactor) {
+        if (released >= plan.cars) {
+            return -1;
+        }
+        this.speedFactor = Math.max(1, speedFactor);
+        if (plan.hasDemand()) {
+            return nextDemandDelay();
+        }
+        double gap = plan.poissonArrivals
+            ? -plan.meanGapMillis * Math.log(1 - uniform(released + 1, ARRIVAL))
+            : plan.meanGapMillis;
+        pendingGap = Math.round(gap / multiplierAt(scenarioMillis));
+        return pendingGap / this.speedFactor;
+    }
+
+    // Thinning over the demand curve; -1 once the last cycle is over
+    private long nextDemandDelay() {
+        double meanCandidateGap = plan.hourMillis / plan.peakDemand;
+        long horizon = plan.hourMillis * plan.demandHours();
+        double t = scenarioMillis;
+        long candidate = candidates;
+        while (true) {
+            candidate++;
+            t += -meanCandidateGap * Math.log(1 - uniform(candidate, ARRIVAL));
+            if (t >= horizon) {
+                return -1;
+            }
+            long at = (long) t;
+            double rate = plan.demand[(int) (at / plan.hourMillis % plan.demand.length)] * multiplierAt(at);
+            if (uniform(candidate, THINNING) * plan.peakDemand < rate) {
+                pendingCandidates = candidate;
+                pendingGap = at - scenarioMillis;
+                return pendingGap / speedFactor;
+            }
+        }
+    }
+
+    private double multiplierAt(long at) {
+        int index = floorIndex(plan.rateTimes, at);
+        return index >= 0 ? plan.rates[index] : 1;
+    }
+
+    // Last index whose time is at or before the given one, -1 if none
+    private static int floorIndex(long[] times, long at) {
+        int index = Arrays.binarySearch(times, at);
+        if (index < 0) {
+            return -index - 2;
+        }
+        while (index + 1 < times.length && times[index + 1] == at) {
+            index++;
+        }
+        return index;
+    }
+
+    @Override
+    public void arrived() {
+        scenarioMillis += pendingGap;
+        pendingGap = 0;
+        candidates = Math.max(candidates, pendingCandidates);
+        released++;
+        applyBayChanges();
+        noteHours();
+    }
+
+    // Places the hour boundaries passed since the last release on the clock
+    private void noteHours() {
+        if (clock == null || hourStarts == null) return;
+        releasedAtMillis = clock.now();
+        while (hoursStarted < hourStarts.length && hoursStarted * plan.hourMillis <= scenarioMillis) {
+            long start = releasedAtMillis - (scenarioMillis - hoursStarted * plan.hourMillis) / speedFactor;
+            hourStarts[hoursStarted] = hoursStarted > 0 ? Math.max(hourStarts[hoursStarted - 1], start) : start;
+            hoursStarted++;
+        }
+    }
+
+    // Clock millis where each demand hour began, hours + 1 entries; hours not reached
+    // yet are placed at the last speed. null without a curve or a clock.
+    long[] hourStarts() {
+        if (hourStarts == null || clock == null) return null;
+        long[] starts = hourStarts.clone();
+        for (int hour = hoursStarted; hour < starts.length; hour++) {
+            long start = hoursStarted == 0 ? 0
+                : releasedAtMillis + (hour * plan.hourMillis - scenarioMillis) / speedFactor;
+            starts[hour] = hour > 0 ? Math.max(starts[hour - 1], start) : start;
+        }
+        return starts;
+    }
+
+    private void applyBayChanges() {
+        int before = bayIndex;
+        while (bayIndex + 1 < plan.bayTimes.length && plan.bayTimes[bayIndex + 1] <= scenarioMillis) {
+            bayIndex++;
+        }
+        if (bayIndex != before && bayIndex >= 0 && bayListener != null) {
+            bayListener.accept(plan.bayCounts[bayIndex]);
+        }
+    }
+
+    int classOf(int carId) {
+        int index = Arrays.binarySearch(plan.classCumulative, uniform(carId, CLASS));
+        return Math.min(plan.classNames.length - 1, index >= 0 ? index + 1 : -index - 1);
+    }
+
+    // Base millis of this car's bay service, before the speed factor
+    int serviceMillis(int carId) {
+        int c = classOf(carId);
+        double u = uniform(carId, SERVICE);
+        double millis;
+        switch (plan.serviceKind[c]) {
+            case RunPlan.EXPONENTIAL:
+                millis = -plan.serviceA[c] * Math.log(1 - u);
+                break;
+            case RunPlan.UNIFORM:
+                millis = plan.serviceA[c] + u * (plan.serviceB[c] - plan.serviceA[c]);
+                break;
+            default:
+                millis = plan.serviceA[c];
+                break;
+        }
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(millis)));
+    }
+
+    // SplitMix64 finalizer over the key, uniform in [0, 1)
+    private double uniform(long key, int purpose) {
+        long z = seed * 0x9E3779B97F4A7C15L + key * 0xBF58476D1CE4E5B9L + purpose * 0x94D049BB133111EBL;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    // Cars, mean wait and mean service per customer class, then the demand hours
+    List<String> report(SimulationMetrics metrics) {
+        int classes = plan.classNames.length;
+        long[] count = new long[classes], waited = new long[classes], service = new long[classes];
+        long[] lost = new long[classes];
+        for (int carId = 1; carId <= metrics.getTotalCars(); carId++) {
+            if (metrics.getState(carId) == CarState.LOST) {
+                lost[classOf(carId)]++;
+                continue;
+            }
+            long wait = metrics.getWaitMillis(carId);
+            if (wait < 0) continue;
+            int c = classOf(carId);
+            count[c]++;
+            waited[c] += wait;
+            service[c] += serviceMillis(carId);
+        }
+        List<String> lines = new ArrayList<>();
+        for (int c = 0; c < classes; c++) {
+            lines.add(String.format("Class %-10s %d cars, mean wait %.1fs, mean base service %.1fs%s",
+                plan.classNames[c], count[c], count[c] == 0 ? 0.0 : waited[c] / 1000.0 / count[c],
+                count[c] == 0 ? 0.0 : service[c] / 1000.0 / count[c], lost[c] > 0 ? ", " + lost[c] + " lost" : ""));
+        }
+        long[] starts = hourStarts();
+        if (starts != null) {
+            lines.addAll(HourlyReport.of(metrics, starts).lines(plan.demand.length));
+        }
+        return lines;
+    }
+
+    // ----- checkpoint support -----
+
+    @Override
+    public void writeState(DataOutputStream out) throws IOException {
+        out.writeLong(seed);
+        out.writeInt(released);
+        out.writeLong(scenarioMillis);
+        out.writeLong(candidates);
+        out.writeLong(releasedAtMillis);
+        out.writeInt(speedFactor);
+        out.writeInt(hoursStarted);
+        for (int hour = 0; hour < hoursStarted; hour++) {
+            out.writeLong(hourStarts[hour]);
+        }
+    }
+
+    @Override
+    public void readState(DataInputStream in) throws IOException {
+        seed = in.readLong();
+        released = in.readInt();
+        scenarioMillis = in.readLong();
+        bayIndex = -1;
+        candidates = in.readLong();
+        releasedAtMillis = in.readLong();
+        speedFactor = in.readInt();
+        hoursStarted = in.readInt();
+        if (hoursStarted > 0) {
+            hourStarts = new long[Math.max(hoursStarted, plan.demandHours() + 1)];
+            for (int hour = 0; hour < hoursStarted; hour++) {
+                hourStarts[hour] = in.readLong();
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+import java.util.Random;
+
+// ----------------------------
+// Poisson Arrivals
+// ----------------------------
+// Seeded random arrivals: exponential gaps with the same mean as
+// FixedIntervalArrivals unless told otherwise. Used by the headless tools,
+// where every seed has to give the same sequence of cars again.
+class PoissonArrivals implements ArrivalSource {
+    private final Random random;
+    private final double meanGapMillis; // at speed factor 1
+
+    public PoissonArrivals(long seed, double meanGapMillis) {
+        this.random = new Random(seed);
+        this.meanGapMillis = meanGapMillis;
+    }
+
+    @Override
+    public long nextDelayMillis(int speedFactor) {
+        return (long) (-Math.log(1.0 - random.nextDouble()) * meanGapMillis / Math.max(1, speedFactor));
+    }
+}
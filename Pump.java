@@ -0,0 +1,291 @@
+import java.util.Queue;
+
+// ----------------------------
+// Pump Class (Consumer)
+// ----------------------------
+class Pump extends Thread {
+    private int id;
+    private Queue<Integer> queue;
+    private Semaphore empty, full, mutex, pumpSem;
+    private SimulationView gui;
+    private SimulationLogger log;
+    private SimulationMetrics metrics;
+    private volatile boolean running = true;
+    private volatile boolean paused = false;
+    private final TimeScale timeScale;       // shared speed factor, also the monitor washes wait on
+    private volatile int currentCarId = 0;   // car taken from the queue, 0 when idle
+    private long washDuration;               // wall millis of the whole wash at the current speed
+    private double washLeft;                 // share of the wash left when the current wait segment began
+    private long segmentStart;               // nanoTime the current wait segment began, -1 while paused
+    private volatile boolean open = true;    // closed bays park instead of taking cars
+    private int resumeCarId = 0, resumeProgress = 0;
+    private InterleavingScheduler scheduler; // set for deterministic runs, washes then take virtual time
+    private int serviceMillis = 8000;        // base time of the bay stage
+    private ServiceStage nextStage;          // where a washed car goes, null when the bay finishes it
+    private StageStats stageStats;
+    private AppointmentBook appointments;    // null unless cars can book ahead
+    private PlanRun serviceTimes;            // per-car service from a scenario, null for the fixed base time
+    private ShardedStation shards;           // set when this pump's queue is one shard of many
+    private int shard;
+
+    public Pump(int id, Queue<Integer> queue, Semaphore empty, Semaphore full, Semaphore mutex, Semaphore pumpSem, TimeScale timeScale, SimulationView gui, SimulationLogger log, SimulationMetrics metrics) {
+        this.id = id;
+        this.queue = queue;
+        this.empty = empty;
+        this.full = full;
+        this.mutex = mutex;
+        this.pumpSem = pumpSem;
+        this.timeScale = timeScale;
+        this.gui = gui;
+        this.log = log;
+        this.metrics = metrics;
+    }
+
+    // Restored from a checkpoint: finish this car before taking new ones
+    public void resumeWash(int carId, int progressPermille) {
+        this.resumeCarId = carId;
+        this.resumeProgress = progressPermille;
+    }
+
+    public int getCurrentCarId() {
+        return currentCarId;
+    }
+
+    public void setScheduler(InterleavingScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public void setPipeline(ServicePipeline pipeline) {
+        this.serviceMillis = pipeline.bayBaseMillis;
+        this.nextStage = pipeline.first();
+        this.stageStats = pipeline.bayStats;
+    }
+
+    public void setAppointments(AppointmentBook appointments) {
+        this.appointments = appointments;
+    }
+
+    public void setServiceTimes(PlanRun serviceTimes) {
+        this.serviceTimes = serviceTimes;
+    }
+
+    // The queue given to the constructor is shard `shard` of these; idle, the pump takes cars from the others
+    public void setShards(ShardedStation shards, int shard) {
+        this.shards = shards;
+        this.shard = shard;
+    }
+
+    // Progress of the current wash in permille, computed from the wash timing on demand
+    public synchronized int getWashProgress() {
+        if (washDuration <= 0) return 0;
+        double left = washLeft;
+        if (segmentStart >= 0) {
+            left -= (System.nanoTime() - segmentStart) / 1e6 / washDuration;
+        }
+        return (int) Math.min(1000, Math.round((1 - Math.max(0, left)) * 1000));
+    }
+
+    private synchronized void setWashState(long duration, double left, long start) {
+        washDuration = duration;
+        washLeft = left;
+        segmentStart = start;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public void openBay() {
+        synchronized (this) {
+            open = true;
+            notifyAll();
+        }
+        if (appointments != null) {
+            appointments.setOpen(id, true);
+        }
+    }
+
+    // Takes effect once the current car (if any) is finished; booked slots move to open bays
+    public void closeBay() {
+        open = false;
+        if (appointments != null) {
+            appointments.setOpen(id, false);
+        }
+    }
+
+    private void awaitOpen() throws InterruptedException {
+        synchronized (this) {
+            while (!open && running) {
+                wait();
+            }
+        }
+    }
+
+    public void pausePump() {
+        this.paused = true;
+        timeScale.wakeWaiters(); // freeze a running wash
+    }
+
+    public void resumePump() {
+        synchronized (this) {
+            this.paused = false;
+            notifyAll();
+        }
+        timeScale.wakeWaiters();
+    }
+
+    public void stopPump() {
+        this.running = false;
+        this.interrupt();
+    }
+
+    private void checkPaused() throws InterruptedException {
+        synchronized (this) { // checked under the lock so a resume cannot slip in before the wait
+            while (paused && running) {
+                wait();
+            }
+        }
+    }
+
+    // One timed wait per wash on the shared time scale. A pause or a speed change wakes
+    // it; the share of the wash still to do is kept and timed again at the new speed.
+    private void sleepWithSpeed(int baseTime, int fromPermille) throws InterruptedException {
+        double left = (1000 - fromPermille) / 1000.0;
+        if (scheduler != null) {
+            scheduler.sleep((long) (left * timeScale.scale(baseTime)));
+            return;
+        }
+        if (timeScale.isCpuBound()) {
+            timeScale.work((long) (left * timeScale.scale(baseTime)));
+            return;
+        }
+        synchronized (timeScale) {
+            while (running && left > 0) {
+                long duration = timeScale.scale(baseTime);
+                if (paused) {
+                    setWashState(duration, left, -1);
+                    timeScale.wait(); // a paused wash holds its progress and continues on resume
+                    continue;
+                }
+                long start = System.nanoTime();
+                setWashState(duration, left, start);
+                timeScale.wait(Math.max(1, (long) Math.ceil(left * duration)));
+                left -= (System.nanoTime() - start) / 1e6 / duration;
+            }
+        }
+    }
+
+    @Override
+    public void run() {  // this method simulates the pump operation and updates the GUI accordingly
+        try {
+            if (resumeCarId > 0 && !serve(resumeCarId, resumeProgress)) {
+                return;
+            }
+            while (running && !Thread.currentThread().isInterrupted()) {
+                awaitOpen();
+                if (!running) break;
+
+                if (shards != null) {
+                    int stolenCarId = shards.nextCar(this, shard, full); // a car from a busier shard, or 0 with a local permit
+                    if (stolenCarId > 0) {
+                        if (!serve(stolenCarId, 0)) break;
+                        continue;
+                    }
+                } else if (appointments == null) {
+                    full.waitSem();
+                } else {
+                    int bookedCarId = appointments.nextCar(id, full); // a due booking, or 0 with a walk-in permit
+                    if (bookedCarId > 0) {
+                        if (!serve(bookedCarId, 0)) break;
+                        continue;
+                    }
+                }
+                if (!open) {
+                    full.signalSem(); // closed while waiting: leave the car to an open bay
+                    continue;
+                }
+                checkPaused();
+                if (!running) break;
+                
+                mutex.waitSem();
+                checkPaused();
+                if (!running) {
+                    mutex.signalSem(); // Ensure mutex is released if stopping
+                    break;
+                }
+
+                Integer carId = queue.poll(); // Get the next car from the queue
+                if (carId != null) {
+                    pickedUp(carId, queue);
+
+                    mutex.signalSem(); 
+                    empty.signalSem();// signal that there's an empty spot in the queue
+
+                    if (!serve(carId, 0)) break;
+                } else {
+                    mutex.signalSem();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.message("ERROR in Pump " + id + ": " + e.getMessage());
+        }
+    }
+
+    // Called while holding the mutex of the queue the car came from
+    void pickedUp(int carId, Queue<Integer> from) {
+        currentCarId = carId;
+        metrics.carPickedUp(carId, id);
+        log.event(LogEvent.PUMP_TOOK_CAR, carId, id, from.size());
+        gui.updateQueueDisplay(from);
+        gui.updateCarStatus(carId, CarState.AT_PUMP);
+    }
+
+    // Washes a car that this pump already took from the queue; false when the pump was stopped
+    private boolean serve(int carId, int fromPermille) throws InterruptedException {
+        currentCarId = carId;
+
+        pumpSem.waitSem();// wait for pump to be free
+        checkPaused();
+        if (!running) {
+            pumpSem.signalSem();
+            return false;
+        }
+        log.event(LogEvent.BAY_ACQUIRED, carId, id, 0);
+
+        metrics.serviceStarted(carId);
+        gui.updatePumpStatus(id, carId, true);
+        gui.updateCarStatus(carId, CarState.WASHING);
+        log.event(LogEvent.SERVICE_STARTED, carId, id, 0);
+
+        // Simulate washing time with speed control
+        int baseMillis = serviceTimes != null ? serviceTimes.serviceMillis(carId) : serviceMillis;
+        long start = stageStats != null ? stageStats.now() : 0;
+        sleepWithSpeed(baseMillis, fromPermille);
+
+        if (running) {
+            long done = stageStats != null ? stageStats.now() : 0;
+            log.event(LogEvent.SERVICE_FINISHED, carId, id, 0);
+            if (nextStage != null) {
+                setWashState(timeScale.scale(baseMillis), 0, -1); // washed, waiting for room in the next stage
+                nextStage.accept(carId); // the car keeps the bay until the next stage has room
+            } else {
+                metrics.serviceFinished(carId);
+                gui.updateCarStatus(carId, CarState.FINISHED);
+            }
+            if (stageStats != null) {
+                stageStats.served(start, done, stageStats.now());
+            }
+        }
+
+        gui.updatePumpStatus(id, -1, false);
+        currentCarId = 0;
+        synchronized (this) {
+            washDuration = 0;
+        }
+        pumpSem.signalSem();
+        log.event(LogEvent.BAY_RELEASED, carId, id, 0);
+        return true;
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.Queue;
+
+// ----------------------------
+// Queue Snapshot
+// ----------------------------
+// An immutable copy of the front of the waiting area, with the queue length
+// and a version that grows by one per change. Whoever changes the queue
+// publishes a snapshot while still holding the queue mutex, so snapshots are
+// made one at a time and in queue order. Readers such as the EDT take the
+// latest one without any lock. Only the first `limit` cars are copied, the
+// ones a view actually shows, so a publish costs the same for a waiting area
+// of ten slots or a million. A publish that finds the same length and the
+// same cars in front keeps the previous snapshot.
+final class QueueSnapshot {
+    static final QueueSnapshot EMPTY = new QueueSnapshot(0, 0, new int[0]);
+
+    final long version;
+    private final int size;
+    private final int[] front;
+
+    private QueueSnapshot(long version, int size, int[] front) {
+        this.version = version;
+        this.size = size;
+        this.front = front;
+    }
+
+    // Call while holding the mutex that guards the queue
+    static QueueSnapshot publish(Queue<Integer> queue, QueueSnapshot previous, int limit) {
+        int size = queue.size();
+        if (previous.matches(queue, size, limit)) {
+            return previous;
+        }
+        int[] front = new int[Math.min(size, limit)];
+        int i = 0;
+        for (Integer carId : queue) {
+            if (i == front.length) break;
+            front[i++] = carId;
+        }
+        return new QueueSnapshot(previous.version + 1, size, front);
+    }
+
+    private boolean matches(Queue<Integer> queue, int size, int limit) {
+        if (size != this.size || Math.min(size, limit) != front.length) return false;
+        int i = 0;
+        for (Integer carId : queue) {
+            if (i == front.length) break;
+            if (carId != front[i++]) return false;
+        }
+        return true;
+    }
+
+    // Cars waiting, including those beyond the copied front
+    int size() {
+        return size;
+    }
+
+    // Cars copied, the front of the queue
+    int copied() {
+        return front.length;
+    }
+
+    // Car at the given position, 0 for the front; below copied()
+    int car(int position) {
+        return front[position];
+    }
+}
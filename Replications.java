@@ -0,0 +1,395 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// ----------------------------
+// Monte Carlo Replications
+// ----------------------------
+// One run is one noisy sample. This runs independent replications of a
+// configuration, each with its own seed for Poisson arrivals, headless and in
+// virtual time (see ScheduleExplorer.runOnce). The replications run on a
+// fork-join pool in batches. Each task folds its results into running
+// mean/variance (Welford) and a wait-time histogram, and the halves are
+// merged on the way back up, so nothing per run is kept. After each batch
+// the 95% confidence intervals are checked, and the run stops early once
+// both throughput and mean wait are within the target precision.
+//
+// Waits are queue waits, from enqueue to a bay, except the p95 line: that one
+// runs from arrival to a bay and so includes waiting for a free slot. It is
+// the figure WhatIfOptimizer targets.
+//
+//   java Replications [capacity] [bays] [cars] [maxReplications] [precision] [seed]
+//   java Replications --scenario site.scn [maxReplications] [precision] [seed]
+//
+// A scenario is compiled once (see RunPlan); each replication only starts a
+// new PlanRun from it. Its bay schedule is not applied here, its rate changes are.
+// With a demand curve, the summary ends with a table of the demand hours:
+// arrivals, services, lost cars, queue depth and wait, averaged over the runs.
+// The precision is relative: 0.05 means a half-width of at most 5% of the mean.
+class Replications {
+    private static final int MIN_REPLICATIONS = 20;
+    private static final long HISTOGRAM_BIN_MILLIS = 500;
+    private static final int HISTOGRAM_BINS = 240;   // 2 minutes, the last bin collects the rest
+
+    // Running mean and variance (Welford), mergeable (Chan et al.)
+    static class Stats {
+        long count;
+        double mean, m2;
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+
+        void add(double x) {
+            count++;
+            double delta = x - mean;
+            mean += delta / count;
+            m2 += delta * (x - mean);
+            min = Math.min(min, x);
+            max = Math.max(max, x);
+        }
+
+        void merge(Stats other) {
+            if (other.count == 0) return;
+            long total = count + other.count;
+            double delta = other.mean - mean;
+            mean += delta * other.count / total;
+            m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+            count = total;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+
+        double variance() {
+            return count > 1 ? m2 / (count - 1) : 0;
+        }
+
+        // Half-width of the 95% confidence interval of the mean
+        double halfWidth() {
+            return count > 1 ? tCritical(count - 1) * Math.sqrt(variance() / count) : Double.POSITIVE_INFINITY;
+        }
+
+        boolean precise(double relative) {
+            return halfWidth() <= relative * Math.abs(mean);
+        }
+    }
+
+    // Everything one subtree of replications contributes
+    static class Summary {
+        final Stats throughput = new Stats();     // cars per simulated hour
+        final Stats meanWait = new Stats();       // per replication, millis from enqueue to a bay
+        final Stats maxWait = new Stats();        // per replication, millis from enqueue to a bay
+        final Stats p95Wait = new Stats();        // per replication, millis from arrival to a bay, waiting outside included
+        final Stats lostShare = new Stats();      // per replication, lost cars / arrived cars
+        final long[] waitHistogram = new long[HISTOGRAM_BINS]; // queue waits of every car of every replication
+        long failed;                               // runs that broke an invariant, left out of the stats
+        String[] stageNames;                       // null until the first successful run
+        Stats[] stageUtilization;                  // per service stage, busy share 0..1
+        Stats[][] hourly;                          // [column][hour] with a demand curve, null otherwise
+
+        void addStages(List<StageStats> stages, long elapsedMillis) {
+            if (stageNames == null) {
+                stageNames = new String[stages.size()];
+                stageUtilization = new Stats[stages.size()];
+                for (int i = 0; i < stageNames.length; i++) {
+                    stageNames[i] = stages.get(i).name;
+                    stageUtilization[i] = new Stats();
+                }
+            }
+            for (int i = 0; i < stageNames.length; i++) {
+                stageUtilization[i].add(stages.get(i).utilization(elapsedMillis));
+            }
+        }
+
+        void addHours(HourlyReport report) {
+            if (hourly == null) {
+                hourly = new Stats[HOURLY_COLUMNS.length][report.hours];
+                for (Stats[] column : hourly) {
+                    for (int hour = 0; hour < column.length; hour++) {
+                        column[hour] = new Stats();
+                    }
+                }
+            }
+            for (int hour = 0; hour < report.hours; hour++) {
+                hourly[0][hour].add(report.arrived[hour]);
+                hourly[1][hour].add(report.served[hour]);
+                hourly[2][hour].add(report.lost[hour]);
+                hourly[3][hour].add(report.meanQueue[hour]);
+                hourly[4][hour].add(report.maxQueue[hour]);
+                hourly[5][hour].add(report.meanWait[hour] / 1000);
+            }
+        }
+
+        void merge(Summary other) {
+            throughput.merge(other.throughput);
+            meanWait.merge(other.meanWait);
+            maxWait.merge(other.maxWait);
+            p95Wait.merge(other.p95Wait);
+            lostShare.merge(other.lostShare);
+            if (other.hourly != null) {
+                if (hourly == null) {
+                    hourly = other.hourly;
+                } else {
+                    for (int c = 0; c < hourly.length; c++) {
+                        for (int hour = 0; hour < hourly[c].length; hour++) {
+                            hourly[c][hour].merge(other.hourly[c][hour]);
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < HISTOGRAM_BINS; i++) {
+                waitHistogram[i] += other.waitHistogram[i];
+            }
+            failed += other.failed;
+            if (other.stageNames == null) {
+                return;
+            }
+            if (stageNames == null) {
+                stageNames = other.stageNames;
+                stageUtilization = other.stageUtilization;
+                return;
+            }
+            for (int i = 0; i < stageNames.length; i++) {
+                stageUtilization[i].merge(other.stageUtilization[i]);
+            }
+        }
+
+        // Upper edge of the bin holding the given quantile, in millis
+        long waitPercentile(double quantile) {
+            long total = 0;
+            for (long n : waitHistogram) {
+                total += n;
+            }
+            long target = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < HISTOGRAM_BINS; i++) {
+                seen += waitHistogram[i];
+                if (seen >= Math.max(1, target)) {
+                    return (i + 1) * HISTOGRAM_BIN_MILLIS;
+                }
+            }
+            return HISTOGRAM_BINS * HISTOGRAM_BIN_MILLIS;
+        }
+    }
+
+    // Splits a seed range down to single replications and merges the summaries back up
+    static class ReplicationTask extends RecursiveTask<Summary> {
+        private static final long serialVersionUID = 1L;
+
+        private final long fromSeed, toSeed;
+        private final int capacity, bays, cars;
+        private final String stageSpec;
+        private final RunPlan plan;               // null without a scenario
+        private final SimulationLogger log;
+
+        ReplicationTask(long fromSeed, long toSeed, int capacity, int bays, int cars, String stageSpec,
+                        RunPlan plan, SimulationLogger log) {
+            this.fromSeed = fromSeed;
+            this.toSeed = toSeed;
+            this.capacity = capacity;
+            this.bays = bays;
+            this.cars = cars;
+            this.stageSpec = stageSpec;
+            this.plan = plan;
+            this.log = log;
+        }
+
+        @Override
+        protected Summary compute() {
+            if (toSeed - fromSeed > 1) {
+                long middle = (fromSeed + toSeed) >>> 1;
+                ReplicationTask right = new ReplicationTask(middle, toSeed, capacity, bays, cars, stageSpec, plan, log);
+                right.fork();
+                Summary summary = new ReplicationTask(fromSeed, middle, capacity, bays, cars, stageSpec, plan,
+                    log).compute();
+                summary.merge(right.join());
+                return summary;
+            }
+            Summary summary = new Summary();
+            try {
+                PlanRun planRun = plan != null ? plan.start(fromSeed) : null;
+                ArrivalSource arrivals = planRun != null ? planRun : new PoissonArrivals(fromSeed, meanArrivalGap());
+                Replication replication = new Replication(arrivals, planRun);
+                ForkJoinPool.managedBlock(replication);
+                ScheduleExplorer.Result result = replication.result;
+                if (result.failure != null) {
+                    summary.failed++;
+                    return summary;
+                }
+                SimulationMetrics metrics = result.metrics;
+                int served = metrics.getCarsProcessed(), lost = metrics.getCarsLost();
+                summary.throughput.add(served * 3_600_000.0 / Math.max(1, result.endMillis));
+                summary.meanWait.add((double) metrics.getTotalWaitMillis() / Math.max(1, metrics.getCarsPickedUp()));
+                summary.maxWait.add(metrics.getMaxWaitMillis());
+                summary.lostShare.add(served + lost == 0 ? 0 : (double) lost / (served + lost));
+                summary.addStages(result.pipeline.stats(), result.endMillis);
+                long[] waits = new long[cars];
+                int waited = 0;
+                for (int carId = 1; carId <= cars; carId++) {
+                    long wait = metrics.getWaitMillis(carId);
+                    if (wait < 0) continue; // lost or never released
+                    summary.waitHistogram[(int) Math.min(HISTOGRAM_BINS - 1, wait / HISTOGRAM_BIN_MILLIS)]++;
+                    waits[waited++] = metrics.getPickupTime(carId) - metrics.getArrivalTime(carId);
+                }
+                if (waited > 0) {
+                    Arrays.sort(waits, 0, waited);
+                    summary.p95Wait.add(waits[(int) Math.ceil(0.95 * waited) - 1]);
+                }
+                long[] hourStarts = planRun != null ? planRun.hourStarts() : null;
+                if (hourStarts != null) {
+                    summary.addHours(HourlyReport.of(metrics, hourStarts));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                summary.failed++;
+            }
+            return summary;
+        }
+
+        // The leaf waits on the run's own car and pump threads; run as a managed
+        // block, the pool can start a spare worker so the other replications
+        // keep every core busy in the meantime.
+        private final class Replication implements ForkJoinPool.ManagedBlocker {
+            private final ArrivalSource arrivals;
+            private final PlanRun planRun;
+            ScheduleExplorer.Result result;
+
+            Replication(ArrivalSource arrivals, PlanRun planRun) {
+                this.arrivals = arrivals;
+                this.planRun = planRun;
+            }
+
+            @Override
+            public boolean block() throws InterruptedException {
+                result = ScheduleExplorer.runOnce(fromSeed, null, capacity, bays, cars, stageSpec, arrivals, planRun, log);
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return result != null;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws java.io.IOException {
+        RunPlan plan = null;
+        if (args.length >= 2 && args[0].equals("--scenario")) {
+            long compileStart = System.nanoTime();
+            plan = RunPlan.compile(new java.io.File(args[1]));
+            System.out.println("Compiled scenario " + plan.describe() + " in " +
+                (System.nanoTime() - compileStart) / 1_000_000L + " ms");
+            String[] rest = new String[3 + args.length - 2];
+            rest[0] = String.valueOf(plan.waitingCapacity);
+            rest[1] = String.valueOf(plan.bays);
+            rest[2] = String.valueOf(plan.cars);
+            System.arraycopy(args, 2, rest, 3, args.length - 2);
+            args = rest;
+        }
+        int capacity = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int bays = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int cars = args.length > 2 ? Integer.parseInt(args[2]) : 15;
+        long maxReplications = args.length > 3 ? Long.parseLong(args[3]) : 10_000;
+        double precision = args.length > 4 ? Double.parseDouble(args[4]) : 0.02;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+
+        System.out.println("Replicating " + capacity + " waiting slots, " + bays + " service bays, " + cars +
+            " cars (" + (plan != null ? "scenario arrivals" : "mean arrival gap " + (long) meanArrivalGap() +
+            " ms at speed 1") + ") until the 95% CIs are within " +
+            (precision * 100) + "% of the mean, at most " + maxReplications + " runs");
+
+        String stageSpec = plan != null ? plan.stageSpec : ServicePipeline.configuredSpec();
+        if (!stageSpec.equals(ServicePipeline.DEFAULT_SPEC)) {
+            System.out.println("Service stages: " + stageSpec);
+        }
+
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        SimulationLogger log = new SimulationLogger(16384); // no sinks: records are dropped unformatted
+        Summary total = new Summary();
+        long startNanos = System.nanoTime();
+        long done = 0;
+        boolean converged = false;
+
+        while (done < maxReplications && !converged) {
+            long batch = Math.min(maxReplications - done, Math.max(MIN_REPLICATIONS, parallelism * 8L));
+            total.merge(pool.invoke(new ReplicationTask(seed + done, seed + done + batch, capacity, bays, cars,
+                stageSpec, plan, log)));
+            done += batch;
+            converged = total.throughput.count >= MIN_REPLICATIONS &&
+                total.throughput.precise(precision) && total.meanWait.precise(precision);
+            System.out.printf("  %6d runs: throughput %.1f +- %.1f cars/h, mean wait %.2f +- %.2f s%n",
+                total.throughput.count, total.throughput.mean, total.throughput.halfWidth(),
+                total.meanWait.mean / 1000, total.meanWait.halfWidth() / 1000);
+        }
+        pool.shutdown();
+        log.close();
+
+        long elapsed = (System.nanoTime() - startNanos) / 1_000_000L;
+        System.out.println();
+        System.out.println((converged ? "Target precision reached" : "Stopped at the replication limit") +
+            " after " + total.throughput.count + " replications in " + elapsed + " ms");
+        if (total.failed > 0) {
+            System.out.println("WARNING: " + total.failed + " runs broke an invariant and were left out" +
+                " (reproduce with ScheduleExplorer)");
+        }
+        printRow("Throughput (cars/h)", total.throughput, 1);
+        printRow("Mean queue wait (s)", total.meanWait, 1000);
+        printRow("Max queue wait (s)", total.maxWait, 1000);
+        printRow("p95 arrival to bay (s)", total.p95Wait, 1000);
+        System.out.printf("Queue wait per car (s): p50 <= %.1f, p90 <= %.1f, p99 <= %.1f%n",
+            total.waitPercentile(0.50) / 1000.0, total.waitPercentile(0.90) / 1000.0,
+            total.waitPercentile(0.99) / 1000.0);
+        if (total.stageNames != null && total.stageNames.length > 1) {
+            for (int i = 0; i < total.stageNames.length; i++) {
+                printRow("Busy " + total.stageNames[i] + " (%)", total.stageUtilization[i], 0.01);
+            }
+        }
+        if (total.hourly != null) {
+            printRow("Lost (%)", total.lostShare, 0.01);
+            printHours(total.hourly, plan.demand.length);
+        }
+    }
+
+    private static final String[] HOURLY_COLUMNS = {"Arrived", "Served", "Lost", "Queue avg", "Queue max", "Wait (s)"};
+
+    // Mean per demand hour over the replications, with the half-width for lost cars
+    private static void printHours(Stats[][] hourly, int cycleHours) {
+        System.out.println();
+        System.out.printf("%-12s %8s %8s %14s %10s %10s %9s%n", "Hour", HOURLY_COLUMNS[0], HOURLY_COLUMNS[1],
+            HOURLY_COLUMNS[2], HOURLY_COLUMNS[3], HOURLY_COLUMNS[4], HOURLY_COLUMNS[5]);
+        for (int hour = 0; hour < hourly[0].length; hour++) {
+            double lostHalfWidth = hourly[2][hour].count > 1 ? hourly[2][hour].halfWidth() : 0;
+            System.out.printf("%-12s %8.1f %8.1f %7.1f +-%4.1f %10.2f %10.1f %9.1f%n",
+                HourlyReport.label(hour, cycleHours), hourly[0][hour].mean, hourly[1][hour].mean,
+                hourly[2][hour].mean, lostHalfWidth, hourly[3][hour].mean, hourly[4][hour].mean,
+                hourly[5][hour].mean);
+        }
+    }
+
+    private static void printRow(String name, Stats stats, double scale) {
+        double mean = stats.mean / scale;
+        double halfWidth = stats.halfWidth() / scale;
+        System.out.printf("%-22s %9.2f   95%% CI [%.2f, %.2f]   sd %.2f   range [%.2f, %.2f]%n",
+            name, mean, mean - halfWidth, mean + halfWidth, Math.sqrt(stats.variance()) / scale,
+            stats.min / scale, stats.max / scale);
+    }
+
+    // Mean gap between arrivals at speed 1, -Dcarwash.replications.meanGap; FixedIntervalArrivals' 3 s by default
+    static double meanArrivalGap() {
+        return Long.getLong("carwash.replications.meanGap", 3000L);
+    }
+
+    // 97.5% quantile of Student's t (two-sided 95%); Cornish-Fisher approximation beyond the table
+    private static final double[] T_975 = {
+        12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+        2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+        2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+    };
+
+    static double tCritical(long degreesOfFreedom) {
+        if (degreesOfFreedom <= T_975.length) {
+            return T_975[(int) degreesOfFreedom - 1];
+        }
+        double z = 1.959964;
+        return z + (z * z * z + z) / (4.0 * degreesOfFreedom);
+    }
+}
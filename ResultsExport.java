@@ -0,0 +1,268 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+// ----------------------------
+// Per-car Results Export
+// ----------------------------
+// Writes the lifecycle timestamps of every car to a compact columnar file
+// that loads without parsing logs. Cars go out in chunks of CHUNK_ROWS. Each
+// chunk stores its columns one after the other, and each column is prefixed
+// with its byte length, so a reader can skip the columns it does not need.
+// Timestamps are delta-encoded zigzag varints (neighbouring cars have close
+// times, so most take 1-3 bytes); the bay is one byte.
+//
+//   header:  MAGIC, VERSION, totalCars, chunkRows, columnCount, column names
+//   chunk:   rows, firstCarId, then per column: byteLength, bytes
+//   footer:  chunkCount, chunk offsets, footerOffset, MAGIC
+//
+// Only one chunk is encoded in memory at a time. Missing times are -1.
+//
+//   java ResultsExport carwash-results.cwr [--csv out.csv] [column...]
+class ResultsExport {
+    private static final int MAGIC = 0x43575253; // "CWRS"
+    private static final int VERSION = 1;
+    static final int CHUNK_ROWS = 65536;
+
+    static final String[] TIME_COLUMNS = {"arrival", "enqueue", "pickup", "service_start", "finish"};
+    static final String BAY_COLUMN = "bay";
+
+    // ---- writing ----
+
+    static void write(File file, SimulationMetrics metrics) throws IOException {
+        int totalCars = metrics.getTotalCars();
+        long[] times = new long[CHUNK_ROWS];
+        ByteArrayOutputStream column = new ByteArrayOutputStream(CHUNK_ROWS * 3);
+        int chunkCount = (totalCars + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        long[] chunkOffsets = new long[chunkCount];
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(totalCars);
+            out.writeInt(CHUNK_ROWS);
+            out.writeByte(TIME_COLUMNS.length + 1);
+            for (String name : TIME_COLUMNS) {
+                out.writeUTF(name);
+            }
+            out.writeUTF(BAY_COLUMN);
+            long offset = out.size();
+
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                chunkOffsets[chunk] = offset;
+                int firstCarId = chunk * CHUNK_ROWS + 1;
+                int rows = Math.min(CHUNK_ROWS, totalCars - firstCarId + 1);
+                out.writeInt(rows);
+                out.writeInt(firstCarId);
+                offset += 8;
+                for (int c = 0; c < TIME_COLUMNS.length; c++) {
+                    for (int r = 0; r < rows; r++) {
+                        times[r] = metrics.getTime(c, firstCarId + r);
+                    }
+                    column.reset();
+                    encodeDeltas(times, rows, column);
+                    offset += writeColumn(out, column);
+                }
+                column.reset();
+                for (int r = 0; r < rows; r++) {
+                    column.write(metrics.getBay(firstCarId + r));
+                }
+                offset += writeColumn(out, column);
+            }
+
+            out.writeInt(chunkCount);
+            for (long chunkOffset : chunkOffsets) {
+                out.writeLong(chunkOffset);
+            }
+            out.writeLong(offset);
+            out.writeInt(MAGIC);
+        }
+    }
+
+    private static int writeColumn(DataOutputStream out, ByteArrayOutputStream column) throws IOException {
+        out.writeInt(column.size());
+        column.writeTo(out);
+        return 4 + column.size();
+    }
+
+    private static void encodeDeltas(long[] values, int count, ByteArrayOutputStream out) {
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = values[i] - previous;
+            previous = values[i];
+            long zigzag = (delta << 1) ^ (delta >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                out.write((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            out.write((int) zigzag);
+        }
+    }
+
+    // ---- reading ----
+
+    // The loaded columns, indexed by carId - 1; columns that were not asked for stay null
+    static class Columns {
+        final int totalCars;
+        final long[][] times = new long[TIME_COLUMNS.length][];
+        int[] bays;
+
+        Columns(int totalCars) {
+            this.totalCars = totalCars;
+        }
+
+        long[] time(String name) {
+            return times[timeColumn(name)];
+        }
+    }
+
+    // Loads the named columns (all of them when none are given), skipping the rest chunk by chunk
+    static Columns read(File file, String... wanted) throws IOException {
+        boolean[] load = new boolean[TIME_COLUMNS.length + 1];
+        Arrays.fill(load, wanted.length == 0);
+        for (String name : wanted) {
+            load[name.equals(BAY_COLUMN) ? TIME_COLUMNS.length : timeColumn(name)] = true;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a car wash results file: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported results version " + version);
+            }
+            Columns columns = new Columns(in.readInt());
+            int chunkRows = in.readInt();
+            int columnCount = in.readUnsignedByte();
+            for (int c = 0; c < columnCount; c++) {
+                in.readUTF(); // fixed order in version 1
+            }
+            for (int c = 0; c < TIME_COLUMNS.length; c++) {
+                if (load[c]) columns.times[c] = new long[columns.totalCars];
+            }
+            if (load[TIME_COLUMNS.length]) columns.bays = new int[columns.totalCars];
+
+            byte[] buffer = new byte[chunkRows * 10];
+            int chunkCount = (columns.totalCars + chunkRows - 1) / chunkRows;
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                int rows = in.readInt();
+                int from = in.readInt() - 1;
+                for (int c = 0; c <= TIME_COLUMNS.length; c++) {
+                    int length = in.readInt();
+                    if (!load[c]) {
+                        in.skipBytes(length);
+                        continue;
+                    }
+                    in.readFully(buffer, 0, length);
+                    if (c < TIME_COLUMNS.length) {
+                        decodeDeltas(buffer, rows, columns.times[c], from);
+                    } else {
+                        for (int r = 0; r < rows; r++) {
+                            columns.bays[from + r] = buffer[r] & 0xFF;
+                        }
+                    }
+                }
+            }
+            return columns;
+        }
+    }
+
+    private static void decodeDeltas(byte[] in, int count, long[] values, int from) {
+        long previous = 0;
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = in[pos++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            values[from + i] = previous;
+        }
+    }
+
+    private static int timeColumn(String name) {
+        for (int c = 0; c < TIME_COLUMNS.length; c++) {
+            if (TIME_COLUMNS[c].equals(name)) return c;
+        }
+        throw new IllegalArgumentException("Unknown column " + name + ", expected one of " +
+            Arrays.toString(TIME_COLUMNS) + " or " + BAY_COLUMN);
+    }
+
+    static void writeCsv(File file, Columns columns) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("car,arrival,enqueue,pickup,service_start,finish,bay");
+            for (int i = 0; i < columns.totalCars; i++) {
+                out.print(i + 1);
+                for (long[] time : columns.times) {
+                    out.print(',');
+                    out.print(time[i]);
+                }
+                out.print(',');
+                out.println(columns.bays[i]);
+            }
+        }
+    }
+
+    // Summary of a results file, or a CSV copy of it with --csv
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java ResultsExport <results file> [--csv out.csv] [column...]");
+            System.exit(2);
+        }
+        File file = new File(args[0]);
+        if (args.length >= 3 && args[1].equals("--csv")) {
+            writeCsv(new File(args[2]), read(file));
+            System.out.println("Wrote " + args[2]);
+            return;
+        }
+        long startNanos = System.nanoTime();
+        Columns columns = read(file, Arrays.copyOfRange(args, 1, args.length));
+        long elapsed = (System.nanoTime() - startNanos) / 1_000_000L;
+        System.out.println(columns.totalCars + " cars, " + file.length() + " bytes (" +
+            String.format("%.1f", file.length() / (double) Math.max(1, columns.totalCars)) +
+            " per car), loaded in " + elapsed + " ms");
+        for (int c = 0; c < TIME_COLUMNS.length; c++) {
+            if (columns.times[c] != null) {
+                printColumn(TIME_COLUMNS[c], columns.times[c]);
+            }
+        }
+        if (columns.times[timeColumn("enqueue")] != null && columns.times[timeColumn("pickup")] != null) {
+            long[] enqueue = columns.time("enqueue"), pickup = columns.time("pickup");
+            long total = 0, count = 0;
+            for (int i = 0; i < columns.totalCars; i++) {
+                if (enqueue[i] >= 0 && pickup[i] >= 0) {
+                    total += pickup[i] - enqueue[i];
+                    count++;
+                }
+            }
+            System.out.printf("Mean wait %.2f s over %d cars%n", count == 0 ? 0.0 : total / 1000.0 / count, count);
+        }
+    }
+
+    private static void printColumn(String name, long[] values) {
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE, missing = 0;
+        for (long value : values) {
+            if (value < 0) {
+                missing++;
+                continue;
+            }
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        System.out.printf("  %-14s %s%n", name, missing == values.length ? "never reached" :
+            "from " + min + " to " + max + " ms" + (missing > 0 ? ", " + missing + " missing" : ""));
+    }
+}
@@ -0,0 +1,74 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+// ----------------------------
+// Rolling File Log Sink
+// ----------------------------
+class RollingFileLogSink implements LogSink {
+    private final File directory;
+    private final String baseName;
+    private final long maxBytes;
+    private final int maxFiles;
+    private Writer out;
+    private long written;
+
+    public RollingFileLogSink(File directory, String baseName, long maxBytes, int maxFiles) throws IOException {
+        this.directory = directory;
+        this.baseName = baseName;
+        this.maxBytes = Math.max(1024, maxBytes);
+        this.maxFiles = Math.max(1, maxFiles);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create log directory " + directory);
+        }
+        open();
+    }
+
+    private File file(int index) {
+        return new File(directory, index == 0 ? baseName + ".log" : baseName + "." + index + ".log");
+    }
+
+    private void open() throws IOException {
+        File current = file(0);
+        written = current.length();
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(current, true), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private void rotate() throws IOException { // carwash.log -> carwash.1.log -> ... oldest is dropped
+        out.close();
+        File oldest = file(maxFiles - 1);
+        if (oldest.exists() && !oldest.delete()) {
+            throw new IOException("Cannot delete " + oldest);
+        }
+        for (int i = maxFiles - 2; i >= 0; i--) {
+            File from = file(i);
+            if (from.exists() && !from.renameTo(file(i + 1))) {
+                throw new IOException("Cannot rotate " + from);
+            }
+        }
+        open();
+    }
+
+    @Override
+    public void write(CharSequence line) throws IOException {
+        if (written >= maxBytes) {
+            rotate();
+        }
+        out.append(line).append('\n');
+        written += line.length() + 1;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,456 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// ----------------------------
+// Run Plan (compiled scenario)
+// ----------------------------
+// A scenario file describes one site and its day. compile() parses and
+// validates it once into this immutable plan: plain arrays and numbers the
+// engine reads directly. Every run then only calls start(seed), which costs
+// no parsing at all, so sweeps over many seeds pay for the file once.
+//
+//   # comment
+//   station  waiting=40 bays=12 cars=20000 seed=7
+//   lanes    soak:3000,wash:8000:2:1,dry:4000:1:2     (optional, see ServicePipeline)
+//   arrivals poisson mean=1500                        (or: fixed every=3000), millis at speed 1
+//   class    compact share=60 service=exp:6000        (fixed:N, N, exp:MEAN or uniform:LO:HI)
+//   class    suv     share=40 service=uniform:9000:13000
+//   at 0       bays=4                                 (schedule over scenario time)
+//   at 3600000 bays=12 rate=2.0                       (rate multiplies the arrival rate)
+//
+// Customer classes set the bay service of each car. Later lanes keep their own
+// base times. Scenario time is the sum of the arrival gaps at speed 1.
+//
+// Instead of an arrivals line, a demand curve gives cars per hour for each
+// hour of a repeating cycle (non-homogeneous Poisson arrivals, see PlanRun):
+//
+//   demand   hours=168 hour=60000 cycles=1            (cycle length, scenario millis per hour)
+//   hour     0-167 rate=4                             (cars per hour over hours 0..167 of the cycle)
+//   hour     7-9   rate=40 every=24                   (the same hours of every day; later lines win)
+//
+// Hours no line covers get no cars. The run ends after the last cycle or
+// after cars= cars, whichever comes first. With a curve, a car that finds
+// every waiting slot taken drives on and is counted as lost.
+class RunPlan {
+    static final int MAX_WAITING = 1_000_000;
+    static final int MAX_BAYS = 255;               // bays are stored as one byte per car
+    static final int MAX_CARS = 10_000_000;
+    static final int MAX_DEMAND_HOURS = 24 * 366;
+
+    static final int FIXED = 0, EXPONENTIAL = 1, UNIFORM = 2;
+
+    final String path;
+    final int waitingCapacity, bays, cars;
+    final long seed;
+    final String stageSpec;
+    final int bayBaseMillis;                        // base time of the first lane, the default service
+
+    final boolean poissonArrivals;
+    final double meanGapMillis;
+
+    final String[] classNames;
+    final double[] classCumulative;                 // running share, the last entry is 1
+    final int[] serviceKind;
+    final double[] serviceA, serviceB;              // fixed/mean/low, -/-/high
+
+    final long[] rateTimes;                         // ascending scenario millis
+    final double[] rates;
+    final long[] bayTimes;
+    final int[] bayCounts;
+
+    final double[] demand;                          // cars per hour of the cycle, null without a curve
+    final long hourMillis;                          // scenario millis per demand hour
+    final int demandCycles;
+    final double peakDemand;                        // highest hourly rate times the highest multiplier
+
+    private RunPlan(Builder b) {
+        this.path = b.path;
+        this.waitingCapacity = b.waiting;
+        this.bays = b.bays;
+        this.cars = b.cars;
+        this.seed = b.seed;
+        this.stageSpec = b.stageSpec;
+        this.bayBaseMillis = b.bayBaseMillis;
+        this.poissonArrivals = b.poisson;
+        this.meanGapMillis = b.meanGap;
+        int classes = b.classNames.size();
+        this.classNames = b.classNames.toArray(new String[0]);
+        this.classCumulative = new double[classes];
+        this.serviceKind = new int[classes];
+        this.serviceA = new double[classes];
+        this.serviceB = new double[classes];
+        double totalShare = 0;
+        for (double share : b.shares) {
+            totalShare += share;
+        }
+        double running = 0;
+        for (int i = 0; i < classes; i++) {
+            running += b.shares.get(i) / totalShare;
+            classCumulative[i] = i == classes - 1 ? 1.0 : running;
+            serviceKind[i] = b.services.get(i).kind;
+            serviceA[i] = b.services.get(i).a;
+            serviceB[i] = b.services.get(i).b;
+        }
+        this.rateTimes = toLongs(b.rateTimes);
+        this.rates = toDoubles(b.rates);
+        this.bayTimes = toLongs(b.bayTimes);
+        this.bayCounts = new int[b.bayCounts.size()];
+        for (int i = 0; i < bayCounts.length; i++) {
+            bayCounts[i] = b.bayCounts.get(i);
+        }
+        this.demand = b.demand;
+        this.hourMillis = b.hourMillis;
+        this.demandCycles = b.cycles;
+        double peak = 0, multiplier = rates.length > 0 && rateTimes[0] == 0 ? 0 : 1;
+        for (double rate : rates) {
+            multiplier = Math.max(multiplier, rate);
+        }
+        if (demand != null) {
+            for (double rate : demand) {
+                peak = Math.max(peak, rate);
+            }
+        }
+        this.peakDemand = peak * multiplier;
+    }
+
+    boolean hasDemand() {
+        return demand != null;
+    }
+
+    // Hours the demand curve covers over the whole run
+    int demandHours() {
+        return demand == null ? 0 : demand.length * demandCycles;
+    }
+
+    // A fresh realization of the plan; cars, classes and services depend only on the seed
+    PlanRun start(long runSeed) {
+        return new PlanRun(this, runSeed);
+    }
+
+    String describe() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(new File(path).getName()).append(": ").append(waitingCapacity).append(" waiting slots, ")
+          .append(bays).append(" bays, ").append(cars).append(" cars, lanes ").append(stageSpec).append(", ");
+        if (demand != null) {
+            double expected = 0;
+            for (double rate : demand) {
+                expected += rate;
+            }
+            sb.append("demand curve over ").append(demandHours()).append(" hours of ").append(hourMillis)
+              .append(" ms (about ").append(Math.round(expected * demandCycles)).append(" cars)");
+        } else {
+            sb.append(poissonArrivals ? "Poisson" : "fixed").append(" arrivals every ").append((long) meanGapMillis)
+              .append(" ms");
+        }
+        sb.append(", ").append(classNames.length).append(" customer class(es)");
+        if (bayTimes.length + rateTimes.length > 0) {
+            sb.append(", ").append(bayTimes.length + rateTimes.length).append(" schedule change(s)");
+        }
+        return sb.toString();
+    }
+
+    // ---- compiling ----
+
+    private static final class Service {
+        final int kind;
+        final double a, b;
+
+        Service(int kind, double a, double b) {
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+        }
+    }
+
+    private static final class Builder {
+        String path;
+        int waiting = -1, bays = -1, cars = -1;
+        long seed = 1;
+        String stageSpec = ServicePipeline.DEFAULT_SPEC;
+        int bayBaseMillis;
+        boolean poisson = false;
+        double meanGap = 3000;
+        final List<String> classNames = new ArrayList<>();
+        final List<Double> shares = new ArrayList<>();
+        final List<Service> services = new ArrayList<>();
+        final List<Long> rateTimes = new ArrayList<>();
+        final List<Double> rates = new ArrayList<>();
+        final List<Long> bayTimes = new ArrayList<>();
+        final List<Integer> bayCounts = new ArrayList<>();
+        boolean arrivalsSeen;
+        double[] demand;
+        long hourMillis = 3_600_000L;
+        int cycles = 1;
+    }
+
+    // Parses and validates the whole file; IOException messages name the file and line
+    static RunPlan compile(File file) throws IOException {
+        Builder b = new Builder();
+        b.path = file.getAbsolutePath();
+        boolean stationSeen = false;
+        long lastAt = -1;
+        int lineNumber = 0;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                int hash = line.indexOf('#');
+                String[] words = (hash >= 0 ? line.substring(0, hash) : line).trim().split("\\s+");
+                if (words[0].isEmpty()) continue;
+                String where = file.getName() + ":" + lineNumber + ": ";
+                try {
+                    switch (words[0]) {
+                        case "station": {
+                            if (stationSeen) {
+                                throw new IllegalArgumentException("one station per scenario file");
+                            }
+                            stationSeen = true;
+                            Map<String, String> args = keyValues(words, 1, "waiting", "bays", "cars", "seed");
+                            b.waiting = bounded(required(args, "waiting"), 1, MAX_WAITING, "waiting");
+                            b.bays = bounded(required(args, "bays"), 1, MAX_BAYS, "bays");
+                            b.cars = bounded(required(args, "cars"), 1, MAX_CARS, "cars");
+                            if (args.containsKey("seed")) {
+                                b.seed = Long.parseLong(args.get("seed"));
+                            }
+                            break;
+                        }
+                        case "lanes":
+                            if (words.length != 2) {
+                                throw new IllegalArgumentException("lanes takes one stage list, e.g. soak:3000,wash:8000:2:1");
+                            }
+                            b.stageSpec = words[1];
+                            break;
+                        case "arrivals": {
+                            if (words.length < 2) {
+                                throw new IllegalArgumentException("arrivals needs poisson or fixed");
+                            }
+                            if (b.demand != null) {
+                                throw new IllegalArgumentException("a demand curve replaces the arrivals line");
+                            }
+                            b.arrivalsSeen = true;
+                            if (words[1].equals("poisson")) {
+                                b.poisson = true;
+                                b.meanGap = positive(required(keyValues(words, 2, "mean"), "mean"), "mean");
+                            } else if (words[1].equals("fixed")) {
+                                b.poisson = false;
+                                b.meanGap = positive(required(keyValues(words, 2, "every"), "every"), "every");
+                            } else {
+                                throw new IllegalArgumentException("unknown arrival process " + words[1]);
+                            }
+                            break;
+                        }
+                        case "class": {
+                            if (words.length < 3) {
+                                throw new IllegalArgumentException("class needs a name, share= and service=");
+                            }
+                            if (b.classNames.contains(words[1])) {
+                                throw new IllegalArgumentException("class " + words[1] + " defined twice");
+                            }
+                            Map<String, String> args = keyValues(words, 2, "share", "service");
+                            b.classNames.add(words[1]);
+                            b.shares.add(positive(required(args, "share"), "share"));
+                            b.services.add(distribution(required(args, "service")));
+                            break;
+                        }
+                        case "at": {
+                            if (words.length < 3) {
+                                throw new IllegalArgumentException("at needs a time and bays= and/or rate=");
+                            }
+                            long at = Long.parseLong(words[1]);
+                            if (at < 0 || at < lastAt) {
+                                throw new IllegalArgumentException("schedule times must be ascending and not negative");
+                            }
+                            lastAt = at;
+                            Map<String, String> args = keyValues(words, 2, "bays", "rate");
+                            if (args.containsKey("bays")) {
+                                b.bayTimes.add(at);
+                                b.bayCounts.add(bounded(args.get("bays"), 1, MAX_BAYS, "bays"));
+                            }
+                            if (args.containsKey("rate")) {
+                                b.rateTimes.add(at);
+                                b.rates.add(positive(args.get("rate"), "rate"));
+                            }
+                            break;
+                        }
+                        case "demand": {
+                            if (b.arrivalsSeen) {
+                                throw new IllegalArgumentException("a demand curve replaces the arrivals line");
+                            }
+                            if (b.demand != null) {
+                                throw new IllegalArgumentException("one demand curve per scenario file");
+                            }
+                            Map<String, String> args = keyValues(words, 1, "hours", "hour", "cycles");
+                            b.demand = new double[bounded(required(args, "hours"), 1, MAX_DEMAND_HOURS, "hours")];
+                            if (args.containsKey("hour")) {
+                                b.hourMillis = Math.round(positive(args.get("hour"), "hour"));
+                                if (b.hourMillis < 1) {
+                                    throw new IllegalArgumentException("hour must be at least 1 ms");
+                                }
+                            }
+                            if (args.containsKey("cycles")) {
+                                b.cycles = bounded(args.get("cycles"), 1, MAX_DEMAND_HOURS, "cycles");
+                            }
+                            break;
+                        }
+                        case "hour": {
+                            if (b.demand == null) {
+                                throw new IllegalArgumentException("hour needs a demand line first");
+                            }
+                            if (words.length < 3) {
+                                throw new IllegalArgumentException("hour needs an hour or range and rate=");
+                            }
+                            int dash = words[1].indexOf('-');
+                            int last = b.demand.length - 1;
+                            int from = bounded(dash < 0 ? words[1] : words[1].substring(0, dash), 0, last, "hour");
+                            int to = dash < 0 ? from : bounded(words[1].substring(dash + 1), from, last, "the range end");
+                            Map<String, String> args = keyValues(words, 2, "rate", "every");
+                            double rate = Double.parseDouble(required(args, "rate"));
+                            if (!(rate >= 0) || Double.isInfinite(rate)) {
+                                throw new IllegalArgumentException("rate must be a number of cars per hour, 0 or more");
+                            }
+                            int every = args.containsKey("every")
+                                ? bounded(args.get("every"), 1, b.demand.length, "every") : b.demand.length;
+                            for (int start = from; start < b.demand.length; start += every) {
+                                for (int hour = start; hour <= Math.min(last, start + to - from); hour++) {
+                                    b.demand[hour] = rate;
+                                }
+                            }
+                            break;
+                        }
+                        default:
+                            throw new IllegalArgumentException("unknown entry " + words[0]);
+                    }
+                } catch (IllegalArgumentException e) { // NumberFormatException included
+                    throw new IOException(where + e.getMessage(), e);
+                }
+            }
+        }
+        String where = file.getName() + ": ";
+        if (!stationSeen) {
+            throw new IOException(where + "no station line");
+        }
+        if (b.demand != null) {
+            double total = 0;
+            for (double rate : b.demand) {
+                total += rate;
+            }
+            if (total == 0) {
+                throw new IOException(where + "the demand curve has no cars in any hour");
+            }
+            if ((double) b.hourMillis * b.demand.length * b.cycles > Long.MAX_VALUE / 4) {
+                throw new IOException(where + "the demand curve is too long");
+            }
+        }
+        for (int count : b.bayCounts) {
+            if (count > b.bays) {
+                throw new IOException(where + "the schedule opens " + count + " bays but the station has " + b.bays);
+            }
+        }
+        try {
+            b.bayBaseMillis = ServicePipeline.validate(b.stageSpec);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(where + e.getMessage(), e);
+        }
+        if (b.classNames.isEmpty()) {
+            b.classNames.add("standard");
+            b.shares.add(1.0);
+            b.services.add(new Service(FIXED, b.bayBaseMillis, 0));
+        }
+        return new RunPlan(b);
+    }
+
+    private static Map<String, String> keyValues(String[] words, int from, String... allowed) {
+        Map<String, String> args = new HashMap<>();
+        for (int i = from; i < words.length; i++) {
+            int eq = words[i].indexOf('=');
+            String key = eq > 0 ? words[i].substring(0, eq) : "";
+            boolean known = false;
+            for (String name : allowed) {
+                known |= name.equals(key);
+            }
+            if (!known) {
+                throw new IllegalArgumentException("unexpected \"" + words[i] + "\"");
+            }
+            args.put(key, words[i].substring(eq + 1));
+        }
+        return args;
+    }
+
+    private static String required(Map<String, String> args, String key) {
+        String value = args.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException(key + "= is missing");
+        }
+        return value;
+    }
+
+    private static int bounded(String value, int min, int max, String name) {
+        int n = Integer.parseInt(value);
+        if (n < min || n > max) {
+            throw new IllegalArgumentException(name + " must be between " + min + " and " + max);
+        }
+        return n;
+    }
+
+    private static double positive(String value, String name) {
+        double x = Double.parseDouble(value);
+        if (!(x > 0) || Double.isInfinite(x)) {
+            throw new IllegalArgumentException(name + " must be a positive number");
+        }
+        return x;
+    }
+
+    // fixed:N or N, exp:MEAN, uniform:LO:HI
+    private static Service distribution(String spec) {
+        String[] f = spec.split(":");
+        switch (f[0]) {
+            case "fixed":
+                checkFields(f, 2, spec);
+                return new Service(FIXED, positive(f[1], "service"), 0);
+            case "exp":
+                checkFields(f, 2, spec);
+                return new Service(EXPONENTIAL, positive(f[1], "service mean"), 0);
+            case "uniform": {
+                checkFields(f, 3, spec);
+                double low = positive(f[1], "service low"), high = positive(f[2], "service high");
+                if (high < low) {
+                    throw new IllegalArgumentException("uniform service needs low <= high");
+                }
+                return new Service(UNIFORM, low, high);
+            }
+            default:
+                checkFields(f, 1, spec);
+                return new Service(FIXED, positive(f[0], "service"), 0);
+        }
+    }
+
+    private static void checkFields(String[] fields, int count, String spec) {
+        if (fields.length != count) {
+            throw new IllegalArgumentException("cannot read service distribution " + spec);
+        }
+    }
+
+    private static long[] toLongs(List<Long> values) {
+        long[] out = new long[values.size()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = values.get(i);
+        }
+        return out;
+    }
+
+    private static double[] toDoubles(List<Double> values) {
+        double[] out = new double[values.size()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = values.get(i);
+        }
+        return out;
+    }
+}
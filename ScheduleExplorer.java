@@ -0,0 +1,326 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// ----------------------------
+// Schedule Explorer
+// ----------------------------
+// Stress test for the Car/Pump/Semaphore protocol without timing flakiness.
+// Each run builds the same actors ServiceStation does, headless, and lets an
+// InterleavingScheduler pick the interleaving from a seed. Queue and semaphore
+// invariants are checked at every scheduling point, and every car must be
+// washed exactly once by the end. The first failing run is written out as a
+// schedule file that replays the same interleaving exactly, with its log.
+//
+//   java ScheduleExplorer [runs] [seed] [capacity] [bays] [cars]
+//   java ScheduleExplorer --replay carwash-schedule-<seed>.bin
+class ScheduleExplorer {
+    private static final int MAGIC = 0x43575343; // "CWSC"
+    private static final int VERSION = 1;
+    private static final double MEAN_ARRIVAL_GAP_MILLIS = 3000; // FixedIntervalArrivals at speed 1
+    static final int SPEED_FACTOR = 2; // the GUI's default speed
+    private static final long MAX_STEPS = 1_000_000L;
+
+    // Outcome of one scheduled run
+    static class Result {
+        final long seed;
+        final int capacity, bays, cars;
+        final String stageSpec;    // see ServicePipeline
+        final String failure;      // null when every invariant held
+        final int[] choices;
+        final long steps;
+        final SimulationMetrics metrics;
+        final long endMillis;      // virtual time when the last actor stopped
+        final ServicePipeline pipeline;
+
+        Result(long seed, int capacity, int bays, int cars, String stageSpec, String failure, int[] choices,
+               long steps, SimulationMetrics metrics, long endMillis, ServicePipeline pipeline) {
+            this.seed = seed;
+            this.capacity = capacity;
+            this.bays = bays;
+            this.cars = cars;
+            this.stageSpec = stageSpec;
+            this.failure = failure;
+            this.choices = choices;
+            this.steps = steps;
+            this.metrics = metrics;
+            this.endMillis = endMillis;
+            this.pipeline = pipeline;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("--replay")) {
+            System.exit(replay(new File(args[1])) ? 0 : 1);
+        }
+        long runs = args.length > 0 ? Long.parseLong(args[0]) : 10_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int bays = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        int cars = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+        System.exit(explore(runs, seed, capacity, bays, cars) ? 0 : 1);
+    }
+
+    // Runs seeds seed .. seed+runs-1 on all cores; stops at the first failure
+    static boolean explore(long runs, long seed, int capacity, int bays, int cars) throws Exception {
+        System.out.println("Exploring " + runs + " interleavings from seed " + seed + ": " +
+            capacity + " waiting slots, " + bays + " service bays, " + cars + " cars");
+        String stageSpec = ServicePipeline.configuredSpec();
+        if (!stageSpec.equals(ServicePipeline.DEFAULT_SPEC)) {
+            System.out.println("Service stages: " + stageSpec);
+        }
+        SimulationLogger log = new SimulationLogger(16384); // no sinks: records are dropped unformatted
+        AtomicLong next = new AtomicLong();
+        AtomicLong done = new AtomicLong();
+        AtomicLong totalSteps = new AtomicLong();
+        AtomicReference<Result> firstFailure = new AtomicReference<>();
+        long reportEvery = Math.max(1, runs / 10);
+        long startNanos = System.nanoTime();
+
+        Thread[] workers = new Thread[Runtime.getRuntime().availableProcessors()];
+        for (int w = 0; w < workers.length; w++) {
+            workers[w] = new Thread(() -> {
+                long run;
+                while (firstFailure.get() == null && (run = next.getAndIncrement()) < runs) {
+                    try {
+                        Result result = runOnce(seed + run, null, capacity, bays, cars, stageSpec,
+                            arrivalsFor(seed + run), null, log);
+                        totalSteps.addAndGet(result.steps);
+                        if (result.failure != null) {
+                            firstFailure.compareAndSet(null, result);
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long finished = done.incrementAndGet();
+                    if (finished % reportEvery == 0) {
+                        long elapsed = Math.max(1, (System.nanoTime() - startNanos) / 1_000_000L);
+                        System.out.println("  " + finished + " runs, " + (finished * 1000 / elapsed) + " runs/s");
+                    }
+                }
+            }, "Explorer-" + w);
+            workers[w].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        log.close();
+
+        long elapsed = Math.max(1, (System.nanoTime() - startNanos) / 1_000_000L);
+        Result failure = firstFailure.get();
+        if (failure == null) {
+            System.out.println("No violations in " + done.get() + " runs (" + totalSteps.get() +
+                " scheduling points) in " + elapsed + " ms");
+            return true;
+        }
+        File file = new File("carwash-schedule-" + failure.seed + ".bin");
+        write(failure, file);
+        System.out.println("VIOLATION with seed " + failure.seed + ": " + failure.failure);
+        System.out.println("Schedule saved; replay with: java ScheduleExplorer --replay " + file.getPath());
+        return false;
+    }
+
+    // Replays a saved schedule with the log on the console
+    static boolean replay(File file) throws Exception {
+        Result recorded = read(file);
+        System.out.println("Replaying seed " + recorded.seed + " (" + recorded.choices.length + " choices): " +
+            recorded.capacity + " waiting slots, " + recorded.bays + " service bays, " + recorded.cars + " cars, " +
+            "stages " + recorded.stageSpec);
+        SimulationLogger log = new SimulationLogger(16384);
+        log.addSink(new ConsoleLogSink());
+        Result result = runOnce(recorded.seed, recorded.choices, recorded.capacity, recorded.bays, recorded.cars,
+            recorded.stageSpec, arrivalsFor(recorded.seed), null, log);
+        log.close();
+        if (result.failure == null) {
+            System.out.println("Schedule ran clean: the violation no longer reproduces");
+            return true;
+        }
+        System.out.println("VIOLATION: " + result.failure);
+        return false;
+    }
+
+    private static ArrivalSource arrivalsFor(long seed) {
+        return new PoissonArrivals(~seed, MEAN_ARRIVAL_GAP_MILLIS);
+    }
+
+    // One headless run in virtual time; also the engine behind Replications.
+    // serviceTimes gives per-car bay services from a scenario, null for the stage base time.
+    // With a demand curve in the scenario, cars balk at a full waiting area.
+    // When the arrival source runs out early, the cars never released count
+    // as never arrived, not as stuck.
+    static Result runOnce(long seed, int[] replay, int capacity, int bays, int cars, String stageSpec,
+                          ArrivalSource arrivals, PlanRun serviceTimes, SimulationLogger log)
+            throws InterruptedException {
+        InterleavingScheduler scheduler = new InterleavingScheduler(seed, replay, MAX_STEPS);
+        SimulationView view = new HeadlessView();
+        SimulationMetrics metrics = new SimulationMetrics(cars, scheduler.clock());
+        Queue<Integer> queue = new LinkedList<>();
+        Semaphore empty = new Semaphore(capacity, scheduler);
+        Semaphore full = new Semaphore(0, scheduler);
+        Semaphore mutex = new Semaphore(1, scheduler);
+        Semaphore pumpSem = new Semaphore(bays, scheduler);
+        boolean balking = serviceTimes != null && serviceTimes.plan.hasDemand();
+        if (serviceTimes != null) {
+            serviceTimes.setClock(scheduler.clock());
+        }
+        int[] released = new int[1]; // written by the generator only
+
+        TimeScale timeScale = new TimeScale(SPEED_FACTOR);
+        ServicePipeline pipeline = ServicePipeline.create(stageSpec, bays, null,
+            timeScale, scheduler, scheduler.clock(), view, log, metrics);
+        pipeline.start();
+        Pump[] pumps = new Pump[bays];
+        for (int i = 0; i < bays; i++) {
+            pumps[i] = new Pump(i + 1, queue, empty, full, mutex, pumpSem, timeScale, view, log, metrics);
+            pumps[i].setScheduler(scheduler);
+            pumps[i].setPipeline(pipeline);
+            pumps[i].setServiceTimes(serviceTimes);
+            scheduler.spawn(pumps[i], "Pump-" + (i + 1));
+        }
+
+        scheduler.spawn(() -> {
+            try {
+                for (int carId = 1; carId <= cars; carId++) {
+                    long delay = arrivals.nextDelayMillis(timeScale.get());
+                    if (delay < 0) {
+                        break; // source exhausted: the remaining cars never arrive
+                    }
+                    scheduler.sleep(delay);
+                    Car car = new Car(carId, queue, empty, full, mutex, view, log, metrics);
+                    car.setBalking(balking);
+                    scheduler.spawn(car, "Car-" + carId);
+                    released[0] = carId;
+                    log.event(LogEvent.CAR_GENERATED, carId, 0, 0);
+                    arrivals.arrived();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                throw new IllegalStateException("Arrival source failed: " + e.getMessage(), e);
+            }
+        }, "Generator");
+
+        boolean[] seen = new boolean[cars + 1];
+        int inService = bays + pipeline.capacityAfterBays();
+        scheduler.setInvariant(() -> checkStep(queue, empty, full, mutex, capacity, inService, metrics, seen));
+        String failure = scheduler.run();
+        if (failure == null) {
+            failure = checkFinished(queue, empty, full, mutex, pumpSem, capacity, bays, metrics, released[0]);
+        }
+        return new Result(seed, capacity, bays, cars, stageSpec, failure, scheduler.getChoices(),
+            scheduler.getSteps(), metrics, scheduler.clock().now(), pipeline);
+    }
+
+    // Holds between any two scheduling points
+    private static void checkStep(Queue<Integer> queue, Semaphore empty, Semaphore full, Semaphore mutex,
+                                  int capacity, int inService, SimulationMetrics metrics, boolean[] seen) {
+        int queued = queue.size();
+        if (queued > capacity) {
+            throw new IllegalStateException(queued + " cars in a queue of " + capacity);
+        }
+        if (full.permits() > queued || queued > capacity - empty.permits()) {
+            throw new IllegalStateException("semaphores out of step with the queue: empty=" + empty.permits() +
+                " full=" + full.permits() + " queued=" + queued);
+        }
+        if (mutex.permits() > 1) {
+            throw new IllegalStateException("mutex released twice");
+        }
+        String duplicate = null;
+        for (Integer carId : queue) {
+            if (seen[carId]) {
+                duplicate = "car " + carId + " is in the queue twice";
+            }
+            seen[carId] = true;
+        }
+        for (Integer carId : queue) {
+            seen[carId] = false;
+        }
+        if (duplicate != null) {
+            throw new IllegalStateException(duplicate);
+        }
+        int washing = 0;
+        for (int carId = 1; carId <= metrics.getTotalCars(); carId++) {
+            if (metrics.getState(carId) == CarState.WASHING) {
+                washing++;
+            }
+        }
+        if (washing > inService) {
+            throw new IllegalStateException(washing + " cars washing with room for " + inService);
+        }
+    }
+
+    // Holds once nobody can run any more
+    private static String checkFinished(Queue<Integer> queue, Semaphore empty, Semaphore full, Semaphore mutex,
+                                        Semaphore pumpSem, int capacity, int bays, SimulationMetrics metrics,
+                                        int released) {
+        StringBuilder stuck = new StringBuilder();
+        for (int carId = 1; carId <= metrics.getTotalCars(); carId++) {
+            CarState state = metrics.getState(carId);
+            boolean done = state == CarState.FINISHED || state == CarState.LOST ||
+                (state == CarState.NOT_ARRIVED && carId > released);
+            if (!done) {
+                stuck.append(" car ").append(carId).append('=').append(state);
+            }
+        }
+        if (stuck.length() > 0) {
+            return "stalled with cars unfinished:" + stuck;
+        }
+        if (metrics.getCarsProcessed() + metrics.getCarsLost() != released) {
+            return metrics.getCarsProcessed() + " services and " + metrics.getCarsLost() + " lost counted for " +
+                released + " cars";
+        }
+        if (!queue.isEmpty() || empty.permits() != capacity || full.permits() != 0 ||
+                mutex.permits() != 1 || pumpSem.permits() != bays) {
+            return "leaked permits: queue=" + queue + " empty=" + empty.permits() + " full=" + full.permits() +
+                " mutex=" + mutex.permits() + " bays=" + pumpSem.permits();
+        }
+        return null;
+    }
+
+    static void write(Result result, File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(result.seed);
+            out.writeInt(result.capacity);
+            out.writeInt(result.bays);
+            out.writeInt(result.cars);
+            out.writeUTF(result.stageSpec);
+            out.writeInt(result.choices.length);
+            for (int choice : result.choices) {
+                out.writeShort(choice);
+            }
+        }
+    }
+
+    static Result read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a car wash schedule: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported schedule version " + version);
+            }
+            long seed = in.readLong();
+            int capacity = in.readInt();
+            int bays = in.readInt();
+            int cars = in.readInt();
+            String stageSpec = in.readUTF();
+            int[] choices = new int[in.readInt()];
+            for (int i = 0; i < choices.length; i++) {
+                choices[i] = in.readUnsignedShort();
+            }
+            return new Result(seed, capacity, bays, cars, stageSpec, null, choices, 0, null, 0, null);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+// ----------------------------
+// Counting Semaphore
+// ----------------------------
+class Semaphore {
+    private int value;
+    private final InterleavingScheduler scheduler; // null outside deterministic runs
+    private SemaphoreProfile profile;               // null unless contention profiling is on
+    private FlightRecorder recorder;                // null unless tracing is on
+    private int traceIndex;
+
+    public Semaphore(int value) {
+        this(value, null);
+    }
+
+    public Semaphore(int value, InterleavingScheduler scheduler) {
+        this.value = value;
+        this.scheduler = scheduler;
+    }
+
+    public void waitSem() throws InterruptedException { // wait operation
+        if (scheduler != null) {
+            scheduler.yieldPoint();
+            while (!tryAcquire()) {
+                scheduler.block(this); // the monitor is not held here, so signalSem can still get in
+            }
+            return;
+        }
+        synchronized (this) {
+            if (value == 0 && (profile != null || recorder != null)) {
+                awaitPermitObserved(0);
+            }
+            while (value == 0) {
+                wait();
+            }
+            value--;
+            if (profile != null) {
+                profile.acquires++;
+            }
+        }
+    }
+
+    // Same wait as waitSem, timed and traced; called with the monitor held. With a
+    // timeout, gives up after that many millis; returns whether a permit is free.
+    private boolean awaitPermitObserved(long timeoutMillis) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + timeoutMillis * 1_000_000L;
+        int thread = (int) Thread.currentThread().getId();
+        boolean acquired = false;
+        if (profile != null) {
+            profile.waiters++;
+        }
+        if (recorder != null) {
+            recorder.record(FlightRecorder.BLOCKED, thread, traceIndex, 0);
+        }
+        try {
+            while (value == 0) {
+                if (timeoutMillis <= 0) {
+                    wait();
+                    continue;
+                }
+                long left = deadline - System.nanoTime();
+                if (left <= 0) return false;
+                wait(Math.max(1, left / 1_000_000L));
+            }
+            acquired = true;
+            return true;
+        } finally {
+            long waited = System.nanoTime() - start;
+            if (profile != null) {
+                profile.waiters--;
+                if (acquired) {
+                    profile.blocked(waited);
+                }
+            }
+            if (recorder != null) {
+                recorder.record(FlightRecorder.WOKE, thread, traceIndex, (int) Math.min(Integer.MAX_VALUE, waited / 1000));
+            }
+        }
+    }
+
+    public void signalSem() { //when the station is free make signal operation to allow next car to enter
+        synchronized (this) {
+            value++;
+            notify();
+        }
+        if (scheduler != null) {
+            scheduler.wakeAll(this);
+            scheduler.yieldPointQuietly();
+        }
+    }
+
+    // waitSem that gives up after timeoutMillis; returns whether a permit was taken.
+    // Deterministic runs have no wall time to wait on, so they do not support it.
+    public boolean waitSem(long timeoutMillis) throws InterruptedException {
+        if (scheduler != null) {
+            throw new IllegalStateException("timed waitSem under an InterleavingScheduler");
+        }
+        synchronized (this) {
+            if (value == 0 && !awaitPermitObserved(Math.max(1, timeoutMillis))) return false;
+            value--;
+            if (profile != null) {
+                profile.acquires++;
+            }
+            return true;
+        }
+    }
+
+    // waitSem that never blocks; returns whether a permit was taken. A refusal is traced.
+    public boolean tryWaitSem() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.yieldPoint();
+            return tryAcquire();
+        }
+        synchronized (this) {
+            if (value == 0) {
+                if (recorder != null) {
+                    recorder.record(FlightRecorder.REFUSED, (int) Thread.currentThread().getId(), traceIndex, 0);
+                }
+                return false;
+            }
+            value--;
+            if (profile != null) {
+                profile.acquires++;
+            }
+            return true;
+        }
+    }
+
+    private synchronized boolean tryAcquire() {
+        if (value == 0) return false;
+        value--;
+        return true;
+    }
+
+    synchronized int permits() {
+        return value;
+    }
+
+    // Call before any thread uses the semaphore
+    Semaphore profiled(String name) {
+        this.profile = new SemaphoreProfile(name);
+        return this;
+    }
+
+    // Records every block in waitSem and the timed waitSem, the wake-up, and every refused
+    // tryWaitSem under this name; call before any thread uses it
+    Semaphore traced(String name, FlightRecorder recorder) {
+        if (recorder != null) {
+            this.traceIndex = recorder.semaphore(name);
+            this.recorder = recorder;
+        }
+        return this;
+    }
+
+    synchronized SemaphoreProfile profileSnapshot() {
+        return profile != null ? profile.copy() : null;
+    }
+}
@@ -0,0 +1,66 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+// ----------------------------
+// Semaphore Contention Profile
+// ----------------------------
+// Counters of one named Semaphore. They are only updated while the semaphore's
+// monitor is held, and readers get a consistent copy from Semaphore.profileSnapshot().
+class SemaphoreProfile {
+    final String name;
+    long acquires;           // successful waitSem calls
+    long blockedAcquires;    // ... of which found no permit and had to wait
+    long totalWaitNanos;
+    long maxWaitNanos;
+    int waiters;             // threads waiting right now
+
+    SemaphoreProfile(String name) {
+        this.name = name;
+    }
+
+    void blocked(long waitNanos) {
+        blockedAcquires++;
+        totalWaitNanos += waitNanos;
+        if (waitNanos > maxWaitNanos) {
+            maxWaitNanos = waitNanos;
+        }
+    }
+
+    SemaphoreProfile copy() {
+        SemaphoreProfile copy = new SemaphoreProfile(name);
+        copy.acquires = acquires;
+        copy.blockedAcquires = blockedAcquires;
+        copy.totalWaitNanos = totalWaitNanos;
+        copy.maxWaitNanos = maxWaitNanos;
+        copy.waiters = waiters;
+        return copy;
+    }
+
+    double averageWaitMillis() {
+        return blockedAcquires == 0 ? 0 : totalWaitNanos / 1e6 / blockedAcquires;
+    }
+
+    // Short form for the status bar
+    String summary() {
+        return String.format("%s %d/%d blocked, avg %.0f ms, max %d ms, %d waiting",
+            name, blockedAcquires, acquires, averageWaitMillis(), maxWaitNanos / 1_000_000L, waiters);
+    }
+
+    // End-of-run line for the log
+    String report() {
+        return String.format("Semaphore %-7s acquires=%d blocked=%d (%.1f%%) wait total=%.1fs avg=%.1fms max=%.1fms waiting=%d",
+            name, acquires, blockedAcquires, acquires == 0 ? 0.0 : blockedAcquires * 100.0 / acquires,
+            totalWaitNanos / 1e9, averageWaitMillis(), maxWaitNanos / 1e6, waiters);
+    }
+
+    static void writeCsv(File file, SemaphoreProfile[] profiles) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("semaphore,acquires,blocked_acquires,total_wait_ms,avg_wait_ms,max_wait_ms,waiters");
+            for (SemaphoreProfile p : profiles) {
+                out.printf(java.util.Locale.ROOT, "%s,%d,%d,%.3f,%.3f,%.3f,%d%n", p.name, p.acquires, p.blockedAcquires,
+                    p.totalWaitNanos / 1e6, p.averageWaitMillis(), p.maxWaitNanos / 1e6, p.waiters);
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// ----------------------------
+// Service Pipeline
+// ----------------------------
+// The stages a car goes through once a pump has taken it from the queue.
+// The service bays always run the first stage; any further stages have their
+// own workers and buffers (see ServiceStage). Configured with
+//
+//   -Dcarwash.stages=soak:3000,wash:8000:2:1,dry:4000:1:2
+//
+// The first entry is name:baseMillis for the bays. Every further entry is
+// name:baseMillis:workers:buffer. Without the property there is a single
+// "wash:8000" stage, which is the classic one-bay-per-car service.
+class ServicePipeline {
+    static final String DEFAULT_SPEC = "wash:8000";
+
+    final String spec;
+    final String bayStageName;
+    final int bayBaseMillis;
+    final StageStats bayStats;
+    final ServiceStage[] stages; // after the bays, in order
+
+    private ServicePipeline(String spec, String bayStageName, int bayBaseMillis, StageStats bayStats, ServiceStage[] stages) {
+        this.spec = spec;
+        this.bayStageName = bayStageName;
+        this.bayBaseMillis = bayBaseMillis;
+        this.bayStats = bayStats;
+        this.stages = stages;
+    }
+
+    static String configuredSpec() {
+        String spec = System.getProperty("carwash.stages", DEFAULT_SPEC).trim();
+        return spec.isEmpty() ? DEFAULT_SPEC : spec;
+    }
+
+    // restored: per later stage, the cars it held in a checkpoint (may be null)
+    static ServicePipeline create(String spec, int bays, List<List<Integer>> restored, TimeScale timeScale,
+                                  InterleavingScheduler scheduler, SimulationClock clock,
+                                  SimulationView gui, SimulationLogger log, SimulationMetrics metrics) {
+        String[] entries = spec.split(",");
+        String[] first = field(entries[0], 2);
+        ServiceStage[] stages = new ServiceStage[entries.length - 1];
+        for (int i = 1; i < entries.length; i++) {
+            String[] f = field(entries[i], 4);
+            List<Integer> cars = restored != null && i - 1 < restored.size()
+                ? restored.get(i - 1) : Collections.<Integer>emptyList();
+            stages[i - 1] = new ServiceStage(f[0], positive(f[1], entries[i]), positive(f[2], entries[i]),
+                positive(f[3], entries[i]), cars, timeScale, scheduler, clock, gui, log, metrics);
+            if (i > 1) {
+                stages[i - 2].setNext(stages[i - 1]);
+            }
+        }
+        return new ServicePipeline(spec, first[0], positive(first[1], entries[0]),
+            new StageStats(first[0], bays, clock), stages);
+    }
+
+    // Checks a spec without building anything; returns the base time of the bay stage
+    static int validate(String spec) {
+        String[] entries = spec.split(",");
+        for (int i = 1; i < entries.length; i++) {
+            String[] f = field(entries[i], 4);
+            for (int j = 1; j < 4; j++) {
+                positive(f[j], entries[i]);
+            }
+        }
+        String[] first = field(entries[0], 2);
+        return positive(first[1], entries[0]);
+    }
+
+    private static String[] field(String entry, int count) {
+        String[] fields = entry.trim().split(":");
+        if (fields.length != count || fields[0].trim().isEmpty()) {
+            throw new IllegalArgumentException("Stage \"" + entry.trim() + "\" should have " + count +
+                " colon-separated fields");
+        }
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = fields[i].trim();
+        }
+        return fields;
+    }
+
+    private static int positive(String value, String entry) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) return n;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Stage \"" + entry.trim() + "\": " + value + " is not a positive number");
+    }
+
+    // The stage after the bays, or null when the bays finish the car
+    ServiceStage first() {
+        return stages.length > 0 ? stages[0] : null;
+    }
+
+    // Upper bound on cars between leaving a pump and finishing, for invariant checks
+    int capacityAfterBays() {
+        int total = 0;
+        for (ServiceStage stage : stages) {
+            total += stage.workers + stage.capacity;
+        }
+        return total;
+    }
+
+    void start() {
+        for (ServiceStage stage : stages) {
+            stage.start();
+        }
+    }
+
+    void pause() {
+        for (ServiceStage stage : stages) {
+            stage.pause();
+        }
+    }
+
+    void resume() {
+        for (ServiceStage stage : stages) {
+            stage.resume();
+        }
+    }
+
+    void stop() {
+        for (ServiceStage stage : stages) {
+            stage.stop();
+        }
+    }
+
+    // After stop(): waits for the workers to exit
+    void join(long millis) throws InterruptedException {
+        for (ServiceStage stage : stages) {
+            stage.join(millis);
+        }
+    }
+
+    // Per later stage, the cars it holds; a car that just moved on is only kept by the later stage
+    List<List<Integer>> carIds() {
+        List<List<Integer>> all = new ArrayList<>();
+        List<Integer> seen = new ArrayList<>();
+        for (int i = stages.length - 1; i >= 0; i--) {
+            List<Integer> cars = stages[i].carIds();
+            cars.removeAll(seen);
+            seen.addAll(cars);
+            all.add(0, cars);
+        }
+        return all;
+    }
+
+    // Every stage in order, the bays' first
+    List<StageStats> stats() {
+        List<StageStats> all = new ArrayList<>();
+        all.add(bayStats);
+        for (ServiceStage stage : stages) {
+            all.add(stage.stats);
+        }
+        return all;
+    }
+
+    // Utilization of every stage over the run so far, with the bottleneck named
+    List<String> report(long elapsedMillis) {
+        List<String> lines = new ArrayList<>();
+        StageStats bottleneck = bayStats;
+        for (StageStats stats : stats()) {
+            lines.add(stats.report(elapsedMillis));
+            if (stats.utilization(elapsedMillis) > bottleneck.utilization(elapsedMillis)) {
+                bottleneck = stats;
+            }
+        }
+        if (stages.length > 0) {
+            lines.add("Bottleneck stage: " + bottleneck.name);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,206 @@
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+// ----------------------------
+// Service Stage (after the bays)
+// ----------------------------
+// One step of a wash tunnel with its own bounded buffer and workers. Cars
+// come in through accept(), which blocks while the buffer is full, so a
+// slow stage holds cars in the previous one the way a real tunnel does.
+// The buffer is the same empty/full/mutex producer-consumer as the waiting
+// queue. The last stage finishes the car.
+class ServiceStage {
+    final String name;
+    final int baseMillis;
+    final int workers;
+    final int capacity;
+    final StageStats stats;
+
+    private final Queue<Integer> buffer = new LinkedList<>();
+    private final List<Integer> inService = new ArrayList<>(); // guarded by this
+    private final Semaphore empty, full, mutex;
+    private final TimeScale timeScale;
+    private final InterleavingScheduler scheduler; // null outside deterministic runs
+    private final SimulationView gui;
+    private final SimulationLogger log;
+    private final SimulationMetrics metrics;
+    private final Worker[] workerThreads;
+    private ServiceStage next;                      // null for the last stage
+    private volatile boolean running = true;
+    private volatile boolean paused = false;
+
+    ServiceStage(String name, int baseMillis, int workers, int capacity, List<Integer> restored,
+                 TimeScale timeScale, InterleavingScheduler scheduler, SimulationClock clock,
+                 SimulationView gui, SimulationLogger log, SimulationMetrics metrics) {
+        this.name = name;
+        this.baseMillis = baseMillis;
+        this.workers = workers;
+        this.capacity = capacity;
+        this.stats = new StageStats(name, workers, clock);
+        this.timeScale = timeScale;
+        this.scheduler = scheduler;
+        this.gui = gui;
+        this.log = log;
+        this.metrics = metrics;
+        buffer.addAll(restored); // may overfill the buffer once; accept() blocks until it drains
+        this.empty = new Semaphore(Math.max(0, capacity - buffer.size()), scheduler);
+        this.full = new Semaphore(buffer.size(), scheduler);
+        this.mutex = new Semaphore(1, scheduler);
+        this.workerThreads = new Worker[workers];
+        for (int i = 0; i < workers; i++) {
+            workerThreads[i] = new Worker(i + 1);
+        }
+    }
+
+    void setNext(ServiceStage next) {
+        this.next = next;
+    }
+
+    // Hands a car to this stage; blocks while the buffer is full
+    void accept(int carId) throws InterruptedException {
+        empty.waitSem();
+        mutex.waitSem();
+        buffer.add(carId);
+        mutex.signalSem();
+        full.signalSem();
+        gui.updateCarStatus(carId, CarState.WASHING);
+    }
+
+    void start() {
+        for (Worker worker : workerThreads) {
+            if (scheduler != null) {
+                scheduler.spawn(worker, worker.getName());
+            } else {
+                worker.setDaemon(true);
+                worker.start();
+            }
+        }
+    }
+
+    void pause() {
+        paused = true;
+        timeScale.wakeWaiters(); // freeze services in progress
+    }
+
+    void resume() {
+        synchronized (this) {
+            paused = false;
+            notifyAll();
+        }
+        timeScale.wakeWaiters();
+    }
+
+    void stop() {
+        running = false;
+        for (Worker worker : workerThreads) {
+            worker.interrupt();
+        }
+    }
+
+    // After stop(): waits up to millis per worker for it to exit
+    void join(long millis) throws InterruptedException {
+        for (Worker worker : workerThreads) {
+            worker.join(millis);
+        }
+    }
+
+    // Cars in the buffer or being served, for checkpoints; services restart on restore
+    List<Integer> carIds() {
+        List<Integer> carIds;
+        synchronized (this) {
+            carIds = new ArrayList<>(inService);
+        }
+        try {
+            mutex.waitSem();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return carIds;
+        }
+        carIds.addAll(buffer);
+        mutex.signalSem();
+        return carIds;
+    }
+
+    private void checkPaused() throws InterruptedException {
+        synchronized (this) {
+            while (paused && running) {
+                wait();
+            }
+        }
+    }
+
+    // Time-scaled and pause-aware, like a wash at a pump
+    private void work() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.sleep(timeScale.scale(baseMillis));
+            return;
+        }
+        if (timeScale.isCpuBound()) {
+            timeScale.work(timeScale.scale(baseMillis));
+            return;
+        }
+        double left = 1;
+        synchronized (timeScale) {
+            while (running && left > 0) {
+                if (paused) {
+                    timeScale.wait();
+                    continue;
+                }
+                long duration = timeScale.scale(baseMillis);
+                long start = System.nanoTime();
+                timeScale.wait(Math.max(1, (long) Math.ceil(left * duration)));
+                left -= (System.nanoTime() - start) / 1e6 / duration;
+            }
+        }
+    }
+
+    private class Worker extends Thread {
+        Worker(int index) {
+            super("Stage-" + name + "-" + index);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running && !isInterrupted()) {
+                    checkPaused();
+                    full.waitSem();
+                    mutex.waitSem();
+                    Integer carId = buffer.poll();
+                    synchronized (ServiceStage.this) {
+                        if (carId != null) {
+                            inService.add(carId);
+                        }
+                    }
+                    mutex.signalSem();
+                    empty.signalSem();
+                    if (carId == null) continue;
+
+                    long start = stats.now();
+                    log.event(LogEvent.STAGE_STARTED, carId, name);
+                    work();
+                    if (!running) break;
+                    long done = stats.now();
+                    log.event(LogEvent.STAGE_FINISHED, carId, name);
+
+                    if (next != null) {
+                        next.accept(carId); // the car keeps this worker until the next stage has room
+                    } else {
+                        metrics.serviceFinished(carId);
+                        gui.updateCarStatus(carId, CarState.FINISHED);
+                    }
+                    synchronized (ServiceStage.this) {
+                        inService.remove(carId);
+                    }
+                    stats.served(start, done, stats.now());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.message("ERROR in stage " + name + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -6,322 +6,216 @@
 
 import java.awt.*;
 import java.awt.event.ActionListener;
-import java.net.URL;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.swing.*;
 import javax.swing.event.ChangeListener;
 
-class Semaphore {
-    private int value;
-
-    public Semaphore(int value) {
-        this.value = value;
-    }
-
-    public synchronized void waitSem() throws InterruptedException { // wait operation
-        while (value == 0) {
-            wait();
-        }
-        value--;
-    }
-
-    public synchronized void signalSem() { //when the station is free make signal operation to allow next car to enter
-        value++;
-        notify();
-    }
-}
-
 // ----------------------------
 // Image Panel with URL Support
 // ----------------------------
 class ImagePanel extends JPanel {
-    private Image image;
+    private final String imageUrl;
     private int width, height;
 
     public ImagePanel(String imageUrl, int width, int height) {
+        this.imageUrl = imageUrl;
         this.width = width;
         this.height = height;
-        loadImageFromUrl(imageUrl);
         setPreferredSize(new Dimension(width, height));
         setOpaque(false);
-    }
-
-    private void loadImageFromUrl(String imageUrl) {
-        try {
-            URL url = new URL(imageUrl);
-            ImageIcon icon = new ImageIcon(url);
-            image = icon.getImage();
-        } catch (Exception e) {
-            System.err.println("Error loading image from URL: " + imageUrl);
-            image = null;
-        }
+        IconCache.get(imageUrl, width, height, this); // start loading while the rest of the GUI is built
     }
 
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
+        Image image = IconCache.get(imageUrl, width, height, this); // loads in the background
         if (image != null) {
-            g.drawImage(image, 0, 0, width, height, this);
+            g.drawImage(image, 0, 0, this);
         } else {
             // Professional fallback
-            g.setColor(new Color(240, 240, 240));
+            g.setColor(StatusStyles.ICON_FALLBACK);
             g.fillRect(0, 0, width, height);
-            g.setColor(new Color(200, 200, 200));
+            g.setColor(StatusStyles.ICON_FALLBACK_EDGE);
             g.drawRect(0, 0, width - 1, height - 1);
             g.setColor(Color.GRAY);
-            g.setFont(new Font("Arial", Font.PLAIN, 10));
+            g.setFont(StatusStyles.ICON_FALLBACK_FONT);
             String text = width > 30 ? "Icon" : "I";
             g.drawString(text, width/2 - 10, height/2 + 4);
         }
     }
 }
 
-// ----------------------------
-// Car Class (Producer)
-// ----------------------------
-class Car extends Thread {
-    private int id;
-    private Queue<Integer> queue;
-    private Semaphore empty, full, mutex;
-    private SimulationGUI gui;
-    private volatile boolean paused = false;
-    private volatile int speedFactor = 1;
-
-    public Car(int id, Queue<Integer> queue, Semaphore empty, Semaphore full, Semaphore mutex, SimulationGUI gui) {
-        this.id = id;
-        this.queue = queue;
-        this.empty = empty;
-        this.full = full;
-        this.mutex = mutex;
-        this.gui = gui;
-    }
-
-    public void setSpeedFactor(int factor) {
-        this.speedFactor = Math.max(1, factor);
-    }
-
-    public void pauseCar() {
-        this.paused = true;
-    }
-
-    public void resumeCar() {
-        this.paused = false;
-        synchronized (this) {
-            notify();
-        }
-    }
-
-    private void checkPaused() throws InterruptedException {
-        while (paused) {
-            synchronized (this) {
-                wait();
-            }
-        }
-    }
-
-    @Override
-    public void run() { //this method simulates the car arrival and updates the GUI
-        try {
-            checkPaused();
-            gui.updateCarStatus(id, "ARRIVED");
-            gui.logMessage("Car " + id + " arrived at the station");
-
-            empty.waitSem();
-            checkPaused();
-            
-            mutex.waitSem();
-            checkPaused();
-
-            queue.add(id);
-            gui.logMessage("Car " + id + " added to queue. Queue size: " + queue.size());
-            gui.updateQueueDisplay(queue);
-            gui.updateCarStatus(id, "IN_QUEUE");
-            gui.logMessage("Car " + id + " entered the waiting queue");
-
-            mutex.signalSem();
-            full.signalSem();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        } catch (Exception e) {
-            gui.logMessage("ERROR in Car " + id + ": " + e.getMessage());
-        }
-    }
-}
-
-// ----------------------------
-// Pump Class (Consumer)
-// ----------------------------
-class Pump extends Thread {
-    private int id;
-    private Queue<Integer> queue;
-    private Semaphore empty, full, mutex, pumpSem;
-    private SimulationGUI gui;
-    private volatile boolean running = true;
-    private volatile boolean paused = false;
-    private volatile int speedFactor = 1;
-
-    public Pump(int id, Queue<Integer> queue, Semaphore empty, Semaphore full, Semaphore mutex, Semaphore pumpSem, SimulationGUI gui) {
-        this.id = id;
-        this.queue = queue;
-        this.empty = empty;
-        this.full = full;
-        this.mutex = mutex;
-        this.pumpSem = pumpSem;
-        this.gui = gui;
-    }
-
-    public void setSpeedFactor(int factor) {
-        this.speedFactor = Math.max(1, factor);
-    }
-
-    public void pausePump() {
-        this.paused = true;
-    }
-
-    public void resumePump() {
-        this.paused = false;
-        synchronized (this) {
-            notify();
-        }
-    }
-
-    public void stopPump() {
-        this.running = false;
-        this.interrupt();
-    }
-
-    private void checkPaused() throws InterruptedException {
-        while (paused && running) {
-            synchronized (this) {
-                wait();
-            }
-        }
-    }
-
-    private void sleepWithSpeed(int baseTime) throws InterruptedException {
-        int adjustedTime = (baseTime * 2) / speedFactor;
-        int step = Math.max(200, adjustedTime / 10);
-        for (int i = 0; i < 10 && running && !paused; i++) {
-            Thread.sleep(step);
-            gui.updatePumpProgress(id, (i + 1) * 10);
-            checkPaused();
-        }
-    }
-
-    @Override
-    public void run() {  // this method simulates the pump operation and updates the GUI accordingly
-        try {
-            while (running && !Thread.currentThread().isInterrupted()) {
-                full.waitSem();
-                checkPaused();
-                if (!running) break;
-                
-                mutex.waitSem();
-                checkPaused();
-                if (!running) {
-                    mutex.signalSem(); // Ensure mutex is released if stopping
-                    break;
-                }
-
-                Integer carId = queue.poll(); // Get the next car from the queue
-                if (carId != null) {
-                    gui.logMessage("Pump " + id + " took Car " + carId + ". Queue size now: " + queue.size());
-                    gui.updateQueueDisplay(queue);
-                    gui.updateCarStatus(carId, "AT_PUMP_" + id);
-                    gui.logMessage("Pump " + id + " took Car " + carId + " from queue");
-
-                    mutex.signalSem(); 
-                    empty.signalSem();// signal that there's an empty spot in the queue
-
-                    pumpSem.waitSem();// wait for pump to be free
-                    checkPaused();
-                    if (!running) {
-                        pumpSem.signalSem();
-                        break;
-                    }
-
-                    gui.updatePumpStatus(id, carId, true);
-                    gui.updateCarStatus(carId, "WASHING_" + id);
-                    gui.logMessage("Pump " + id + ": Car " + carId + " begins service at Bay " + id);
-
-                    // Simulate washing time with speed control
-                    sleepWithSpeed(8000);
-
-                    if (running && !paused) {
-                        gui.logMessage("Pump " + id + ": Car " + carId + " finishes service");
-                        gui.logMessage("Pump " + id + ": Bay " + id + " is now free");
-                        gui.updateCarStatus(carId, "FINISHED");
-                    }
-                    
-                    gui.updatePumpStatus(id, -1, false);
-                    pumpSem.signalSem();
-                } else {
-                    mutex.signalSem();
-                }
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        } catch (Exception e) {
-            gui.logMessage("ERROR in Pump " + id + ": " + e.getMessage());
-        }
-    }
-}
-
 // ----------------------------
 // Professional Simulation GUI
 // ----------------------------
-class SimulationGUI {
+class SimulationGUI implements SimulationView {
     private JFrame mainFrame;
     private JTextArea logTextArea;
     private JPanel controlPanel, visualizationPanel, statusPanel;
-    private JLabel queueSizeLabel, carsProcessedLabel, simulationTimeLabel;
+    private JLabel queueSizeLabel, carsProcessedLabel, simulationTimeLabel, openBaysLabel, startupLabel, contentionLabel;
+    private Semaphore[] profiledSemaphores = new Semaphore[0];
     private AtomicInteger carsProcessed = new AtomicInteger(0);
     private JSlider speedSlider;
-    private JButton startButton, pauseButton, stopButton;
+    private JButton startButton, pauseButton, stopButton, checkpointButton;
     private Timer simulationTimer;
-    private long startTime;
+    private SimulationClock clock;
+    private SimulationLogger log;
+    private long buildMillis;
     
     // GUI Components arrays
     private JLabel[] queueSlotLabels;
     private JLabel[] pumpStatusLabels;
+    private boolean[] pumpClosed;
     private JProgressBar[] pumpProgressBars;
-    private JLabel[] carStatusLabels;
-    private int waitingCapacity;
-
-    public SimulationGUI(int waitingCapacity, int pumpsCount, int totalCars) {
-        this.waitingCapacity = waitingCapacity;
-        initializeGUI(waitingCapacity, pumpsCount, totalCars);
-        startSimulationTimer();
+    private boolean[] pumpOccupied;
+    private Pump[] pumps;
+    private Timer progressTimer;
+    private int waitingCapacity, pumpsCount, totalCars;
+    private static final int MAX_LOG_CHARS = 200_000;
+    static final int MAX_SHOWN_SLOTS = 100;          // waiting slots drawn; the header counts all of them
+    private static final String CAR_ICON_URL = "https://cdn-icons-png.flaticon.com/512/3073/3073477.png";
+
+    // Car tiles are painted from shownStates, only those in view (see CarGrid)
+    private JPanel carsPanel;
+    private CarGrid carsGrid;
+    private int carTilesShown;
+    private byte[] shownStates = new byte[1];        // CarState ordinal per car tile, EDT only
+    private final String[] carNames = new String[256];   // "Car n" for recent cars, by carId modulo the size
+    private final int[] carNameIds = new int[256];
+
+    // Car and bay updates are coalesced: actor threads leave the latest state per
+    // car and the latest car per bay here, and one preallocated task applies
+    // whatever is pending on the EDT. Nothing is allocated per update.
+    private final Object pendingLock = new Object();
+    private byte[] pendingStates = new byte[1];
+    private final BitSet dirtyCars = new BitSet();
+    private int[] pendingPumpCars = new int[0];      // -1 for a free bay
+    private final BitSet dirtyPumps = new BitSet();
+    private boolean flushScheduled;
+    private final Runnable flushTask = this::flushPending;
+    private int[] drainIds = new int[64], drainValues = new int[64]; // EDT only
+
+    // The waiting area as last published by a worker (see QueueSnapshot)
+    private volatile QueueSnapshot queueSnapshot = QueueSnapshot.EMPTY;
+    private final AtomicBoolean queueFlushScheduled = new AtomicBoolean();
+    private final Runnable queueTask = this::showQueue;
+    private long queueShown = -1;                    // version on screen, EDT only
+
+    // Builds the window once; every run only reconfigures it (see configure)
+    public SimulationGUI(SimulationLogger log) {
+        this.log = log;
+        long buildStart = System.nanoTime();
+        initializeGUI();
+        buildMillis = (System.nanoTime() - buildStart) / 1_000_000L;
     }
 
-    private void initializeGUI(int waitingCapacity, int pumpsCount, int totalCars) {
-        // Create main frame
-        mainFrame = new JFrame("Car Wash Simulation - Professional System");
-        mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        mainFrame.setLayout(new BorderLayout(10, 10));
-        
-        // Set professional look and feel
+    // Set once per process instead of on every window build
+    static void installLookAndFeel() {
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception e) {
             e.printStackTrace();
         }
+    }
+
+    private void initializeGUI() {
+        // Create main frame
+        mainFrame = new JFrame("Car Wash Simulation - Professional System");
+        mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        mainFrame.setLayout(new BorderLayout(10, 10));
 
         // Create panels
         controlPanel = createControlPanel();
-        visualizationPanel = createVisualizationPanel(waitingCapacity, pumpsCount, totalCars);
+        visualizationPanel = createVisualizationPanel();
         statusPanel = createStatusPanel();
 
         mainFrame.add(controlPanel, BorderLayout.NORTH);
         mainFrame.add(visualizationPanel, BorderLayout.CENTER);
         mainFrame.add(statusPanel, BorderLayout.SOUTH);
+    }
 
-        mainFrame.pack();
-        mainFrame.setSize(1400, 900);
-        mainFrame.setLocationRelativeTo(null);
-        mainFrame.setVisible(true);
+    // Prepares the window for a new run, rebuilding only the panels whose size changed
+    public void configure(int waitingCapacity, int pumpsCount, int totalCars, SimulationClock clock) {
+        this.clock = clock;
+        this.pumps = null;
+
+        if (queueSlotLabels == null || waitingCapacity != this.waitingCapacity) {
+            visualizationPanel.remove(0);
+            visualizationPanel.add(createQueuePanel(waitingCapacity), 0);
+        }
+        this.waitingCapacity = waitingCapacity;
+        queueSizeLabel.setText("0/" + waitingCapacity + " cars");
+        queueSnapshot = QueueSnapshot.EMPTY;
+        queueShown = QueueSnapshot.EMPTY.version;
+        for (JLabel slotLabel : queueSlotLabels) {
+            slotLabel.setText("EMPTY");
+            StatusStyles.SLOT_EMPTY.apply(slotLabel);
+        }
+
+        if (pumpStatusLabels == null || pumpsCount != this.pumpsCount) {
+            visualizationPanel.remove(1);
+            visualizationPanel.add(createPumpsPanel(pumpsCount), 1);
+        }
+        this.pumpsCount = pumpsCount;
+        for (int i = 0; i < pumpsCount; i++) {
+            pumpClosed[i] = false;
+            pumpOccupied[i] = false;
+            pumpStatusLabels[i].setText("READY");
+            StatusStyles.BAY_READY.apply(pumpStatusLabels[i]);
+            pumpProgressBars[i].setValue(0);
+            pumpProgressBars[i].setString("Waiting...");
+        }
+
+        this.totalCars = totalCars;
+        synchronized (pendingLock) {
+            dirtyCars.clear();
+            dirtyPumps.clear();
+            if (pendingStates.length < totalCars + 1) {
+                pendingStates = new byte[totalCars + 1];
+            }
+            if (pendingPumpCars.length < pumpsCount) {
+                pendingPumpCars = new int[pumpsCount];
+            }
+        }
+        if (shownStates.length < totalCars + 1) {
+            shownStates = new byte[totalCars + 1];
+        }
+        java.util.Arrays.fill(shownStates, (byte) CarState.NOT_ARRIVED.ordinal());
+        carTilesShown = 0;
+        carsGrid.revalidate();
+        carsGrid.repaint();
+        ((javax.swing.border.TitledBorder) ((javax.swing.border.CompoundBorder) carsPanel.getBorder())
+            .getOutsideBorder()).setTitle(" VEHICLE STATUS - " + totalCars + " CARS ");
+
+        carsProcessed.set(0);
+        carsProcessedLabel.setText("Cars Processed: 0");
+        openBaysLabel.setText("Open Bays: -");
+        startupLabel.setText("First Car: -");
+        logTextArea.setText("");
+
+        visualizationPanel.revalidate();
+        visualizationPanel.repaint();
+        startSimulationTimer();
+        startProgressTimer();
+    }
+
+    // Shows the window after the simulation core is already running
+    public void showWindow() {
+        if (!mainFrame.isVisible()) {
+            mainFrame.pack();
+            mainFrame.setSize(1400, 900);
+            mainFrame.setLocationRelativeTo(null);
+            mainFrame.setVisible(true);
+        }
     }
 
     private JPanel createControlPanel() {
@@ -370,10 +264,12 @@ class SimulationGUI {
         startButton = createStyledButton("Resume", new Color(40, 167, 69));
         pauseButton = createStyledButton("Pause", new Color(255, 193, 7));
         stopButton = createStyledButton("Stop", new Color(220, 53, 69));
+        checkpointButton = createStyledButton("Checkpoint", new Color(0, 123, 255));
 
         rightPanel.add(startButton);
         rightPanel.add(pauseButton);
         rightPanel.add(stopButton);
+        rightPanel.add(checkpointButton);
 
         panel.add(leftPanel, BorderLayout.WEST);
         panel.add(centerPanel, BorderLayout.CENTER);
@@ -407,19 +303,17 @@ class SimulationGUI {
         return button;
     }
 
-    private JPanel createVisualizationPanel(int waitingCapacity, int pumpsCount, int totalCars) {
+    private JPanel createVisualizationPanel() {
         JPanel panel = new JPanel(new GridLayout(1, 3, 15, 0));
         panel.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
         panel.setBackground(new Color(240, 242, 245));
 
-        // Queue Panel
-        panel.add(createQueuePanel(waitingCapacity));
-        
-        // Pumps Panel
-        panel.add(createPumpsPanel(pumpsCount));
+        // Queue and Pumps Panels depend on the configuration and are added by configure()
+        panel.add(new JPanel());
+        panel.add(new JPanel());
         
         // Cars Panel
-        panel.add(createCarsPanel(totalCars));
+        panel.add(createCarsPanel());
 
         return panel;
     }
@@ -451,28 +345,24 @@ class SimulationGUI {
         panel.add(headerPanel);
         panel.add(Box.createVerticalStrut(15));
 
-        // Initialize queueSlotLabels array
-        queueSlotLabels = new JLabel[capacity];
+        // Initialize queueSlotLabels array: large waiting areas only draw their front slots
+        int shown = Math.min(capacity, MAX_SHOWN_SLOTS);
+        queueSlotLabels = new JLabel[shown];
         
         // Queue slots
-        JPanel slotsPanel = new JPanel(new GridLayout(capacity, 1, 5, 5));
+        JPanel slotsPanel = new JPanel(new GridLayout(shown, 1, 5, 5));
         slotsPanel.setBackground(Color.WHITE);
         
-        for (int i = 0; i < capacity; i++) {
+        for (int i = 0; i < shown; i++) {
             JPanel slotPanel = new JPanel(new BorderLayout(5, 0));
             slotPanel.setBackground(Color.WHITE);
             
-            ImagePanel carIcon = new ImagePanel("https://cdn-icons-png.flaticon.com/512/3073/3073477.png", 25, 15);
+            ImagePanel carIcon = new ImagePanel(CAR_ICON_URL, 25, 15);
             
             JLabel slotLabel = new JLabel("EMPTY", JLabel.CENTER);
             slotLabel.setOpaque(true);
-            slotLabel.setBackground(new Color(248, 249, 250));
-            slotLabel.setBorder(BorderFactory.createCompoundBorder(
-                BorderFactory.createLineBorder(new Color(222, 226, 230), 1),
-                BorderFactory.createEmptyBorder(8, 10, 8, 10)
-            ));
-            slotLabel.setFont(new Font("Segoe UI", Font.BOLD, 11));
-            slotLabel.setForeground(new Color(108, 117, 125));
+            slotLabel.setFont(StatusStyles.SLOT_FONT);
+            StatusStyles.SLOT_EMPTY.apply(slotLabel);
             
             slotPanel.add(carIcon, BorderLayout.WEST);
             slotPanel.add(slotLabel, BorderLayout.CENTER);
@@ -480,7 +370,22 @@ class SimulationGUI {
             queueSlotLabels[i] = slotLabel;
         }
         
-        panel.add(slotsPanel);
+        if (shown <= 10) {
+            panel.add(slotsPanel); // few slots share the panel's height
+        } else {
+            JScrollPane slotsScroll = new JScrollPane(slotsPanel);
+            slotsScroll.setBorder(BorderFactory.createEmptyBorder());
+            slotsScroll.getVerticalScrollBar().setUnitIncrement(16);
+            panel.add(slotsScroll);
+        }
+        if (capacity > shown) {
+            JLabel moreLabel = new JLabel("+ " + (capacity - shown) + " more slots, counted above", JLabel.CENTER);
+            moreLabel.setFont(StatusStyles.SLOT_FONT);
+            moreLabel.setForeground(new Color(108, 117, 125));
+            moreLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+            panel.add(Box.createVerticalStrut(5));
+            panel.add(moreLabel);
+        }
         return panel;
     }
 
@@ -500,7 +405,9 @@ class SimulationGUI {
         pumpsContainer.setBackground(Color.WHITE);
 
         pumpStatusLabels = new JLabel[pumpsCount];
+        pumpClosed = new boolean[pumpsCount];
         pumpProgressBars = new JProgressBar[pumpsCount];
+        pumpOccupied = new boolean[pumpsCount];
 
         for (int i = 0; i < pumpsCount; i++) {
             JPanel pumpPanel = createSinglePumpPanel(i + 1);
@@ -548,14 +455,13 @@ class SimulationGUI {
         rightPanel.setOpaque(false);
 
         JLabel statusLabel = new JLabel("READY", JLabel.CENTER);
-        statusLabel.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        statusLabel.setFont(StatusStyles.BAY_FONT);
         statusLabel.setOpaque(true);
-        statusLabel.setBackground(new Color(108, 117, 125));
-        statusLabel.setForeground(Color.WHITE);
+        StatusStyles.BAY_READY.apply(statusLabel);
         statusLabel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
         statusLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
 
-        JProgressBar progressBar = new JProgressBar(0, 100);
+        JProgressBar progressBar = new JProgressBar(0, 1000);
         progressBar.setStringPainted(true);
         progressBar.setString("Waiting...");
         progressBar.setForeground(new Color(40, 167, 69));
@@ -579,61 +485,155 @@ class SimulationGUI {
         return pumpPanel;
     }
 
-    private JPanel createCarsPanel(int totalCars) {
+    private JPanel createCarsPanel() {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBorder(BorderFactory.createCompoundBorder(
             BorderFactory.createTitledBorder(
                 BorderFactory.createLineBorder(new Color(0, 123, 255), 2),
-                " VEHICLE STATUS - " + totalCars + " CARS "
+                " VEHICLE STATUS "
             ),
             BorderFactory.createEmptyBorder(15, 15, 15, 15)
         ));
         panel.setBackground(Color.WHITE);
 
-        int cols = 3;
-        int rows = (int) Math.ceil(totalCars / (double) cols);
-        JPanel carsGrid = new JPanel(new GridLayout(rows, cols, 8, 8));
-        carsGrid.setBackground(Color.WHITE);
-
-        carStatusLabels = new JLabel[totalCars];
-        for (int i = 0; i < totalCars; i++) {
-            JPanel carPanel = new JPanel(new BorderLayout(3, 3));
-            carPanel.setBackground(Color.WHITE);
-
-            ImagePanel carIcon = new ImagePanel("https://cdn-icons-png.flaticon.com/512/3073/3073477.png", 30, 20);
-            carIcon.setAlignmentX(Component.CENTER_ALIGNMENT);
-
-            JLabel carLabel = new JLabel("Car " + (i+1), JLabel.CENTER);
-            carLabel.setOpaque(true);
-            carLabel.setBackground(new Color(255, 193, 7));
-            carLabel.setForeground(Color.BLACK);
-            carLabel.setBorder(BorderFactory.createCompoundBorder(
-                BorderFactory.createLineBorder(new Color(253, 126, 20), 1),
-                BorderFactory.createEmptyBorder(8, 5, 8, 5)
-            ));
-            carLabel.setFont(new Font("Segoe UI", Font.BOLD, 10));
-
-            JPanel contentPanel = new JPanel();
-            contentPanel.setLayout(new BoxLayout(contentPanel, BoxLayout.Y_AXIS));
-            contentPanel.setOpaque(false);
-            contentPanel.add(carIcon);
-            contentPanel.add(Box.createVerticalStrut(3));
-            contentPanel.add(carLabel);
-
-            carPanel.add(contentPanel, BorderLayout.CENTER);
-            carsGrid.add(carPanel);
-            carStatusLabels[i] = carLabel;
-        }
+        carsGrid = new CarGrid();
 
         JScrollPane scrollPane = new JScrollPane(carsGrid);
         scrollPane.setPreferredSize(new Dimension(300, 400));
         scrollPane.getViewport().setBackground(Color.WHITE);
         scrollPane.setBorder(BorderFactory.createEmptyBorder());
+        scrollPane.getVerticalScrollBar().setUnitIncrement(16);
         panel.add(scrollPane, BorderLayout.CENTER);
 
+        carsPanel = panel;
         return panel;
     }
 
+    // Car tiles, three per row, painted from shownStates. Only the rows in view are
+    // drawn, so the grid costs the same for fifteen cars or ten million: there is no
+    // component per car, and a state change repaints one tile.
+    private final class CarGrid extends JComponent implements Scrollable {
+        private static final long serialVersionUID = 1L;
+
+        private static final int COLUMNS = 3, GAP = 8, ICON_WIDTH = 30, ICON_HEIGHT = 20, LABEL_HEIGHT = 31;
+        private static final int TILE_HEIGHT = ICON_HEIGHT + 3 + LABEL_HEIGHT;
+        private final char[] name = new char[16];   // "Car n" while it is painted
+
+        CarGrid() {
+            setOpaque(true);
+            setBackground(Color.WHITE);
+        }
+
+        // Makes tiles up to carId visible and repaints the tile of carId
+        void showTile(int carId) {
+            if (carId > carTilesShown) {
+                carTilesShown = carId;
+                revalidate();
+                repaint();
+            } else {
+                repaint(tileX(carId), tileY(carId), tileWidth(), TILE_HEIGHT);
+            }
+        }
+
+        private int tileWidth() {
+            return Math.max(1, (getWidth() - (COLUMNS - 1) * GAP) / COLUMNS);
+        }
+
+        private int tileX(int carId) {
+            return ((carId - 1) % COLUMNS) * (tileWidth() + GAP);
+        }
+
+        private int tileY(int carId) {
+            return ((carId - 1) / COLUMNS) * (TILE_HEIGHT + GAP);
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            long rows = (carTilesShown + COLUMNS - 1) / COLUMNS;
+            return new Dimension(COLUMNS * 80, (int) Math.min(Integer.MAX_VALUE, rows * (TILE_HEIGHT + GAP)));
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            int width = tileWidth();
+            int firstRow = clip.y / (TILE_HEIGHT + GAP);
+            int lastRow = (clip.y + clip.height) / (TILE_HEIGHT + GAP);
+            Image icon = IconCache.get(CAR_ICON_URL, ICON_WIDTH, ICON_HEIGHT, this);
+            g.setFont(StatusStyles.CAR_TILE_FONT);
+            FontMetrics metrics = g.getFontMetrics();
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = 0; column < COLUMNS; column++) {
+                    int carId = row * COLUMNS + column + 1;
+                    if (carId > carTilesShown) return;
+                    paintTile(g, metrics, icon, carId, column * (width + GAP), row * (TILE_HEIGHT + GAP), width);
+                }
+            }
+        }
+
+        private void paintTile(Graphics g, FontMetrics metrics, Image icon, int carId, int x, int y, int width) {
+            int iconX = x + (width - ICON_WIDTH) / 2;
+            if (icon != null) {
+                g.drawImage(icon, iconX, y, this);
+            } else {
+                g.setColor(StatusStyles.ICON_FALLBACK);
+                g.fillRect(iconX, y, ICON_WIDTH, ICON_HEIGHT);
+            }
+            StatusStyles.Style style = StatusStyles.car(CarState.of(shownStates[carId]));
+            int labelY = y + ICON_HEIGHT + 3;
+            g.setColor(style.background);
+            g.fillRect(x, labelY, width, LABEL_HEIGHT);
+            style.border.paintBorder(this, g, x, labelY, width, LABEL_HEIGHT);
+            int length = carName(carId, name);
+            g.setColor(style.foreground);
+            g.drawChars(name, 0, length, x + (width - metrics.charsWidth(name, 0, length)) / 2,
+                labelY + (LABEL_HEIGHT - metrics.getHeight()) / 2 + metrics.getAscent());
+        }
+
+        @Override
+        public Dimension getPreferredScrollableViewportSize() {
+            return getPreferredSize();
+        }
+
+        @Override
+        public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction) {
+            return orientation == SwingConstants.VERTICAL ? TILE_HEIGHT + GAP : 16;
+        }
+
+        @Override
+        public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction) {
+            return orientation == SwingConstants.VERTICAL ? visible.height : visible.width;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportWidth() {
+            return true;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportHeight() {
+            return false;
+        }
+    }
+
+    // Writes "Car n" into the buffer without allocating; returns the length
+    private static int carName(int carId, char[] buffer) {
+        buffer[0] = 'C';
+        buffer[1] = 'a';
+        buffer[2] = 'r';
+        buffer[3] = ' ';
+        int digits = 1;
+        for (int n = carId; n >= 10; n /= 10) {
+            digits++;
+        }
+        for (int i = 3 + digits, n = carId; i > 3; i--, n /= 10) {
+            buffer[i] = (char) ('0' + n % 10);
+        }
+        return 4 + digits;
+    }
+
     private JPanel createStatusPanel() {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBorder(BorderFactory.createCompoundBorder(
@@ -654,9 +654,21 @@ class SimulationGUI {
         simulationTimeLabel.setFont(new Font("Segoe UI", Font.BOLD, 12));
         simulationTimeLabel.setForeground(new Color(0, 123, 255));
 
+        openBaysLabel = new JLabel("Open Bays: -");
+        openBaysLabel.setFont(new Font("Segoe UI", Font.BOLD, 12));
+        openBaysLabel.setForeground(new Color(108, 117, 125));
+
         statsPanel.add(carsProcessedLabel);
         statsPanel.add(new JSeparator(SwingConstants.VERTICAL));
         statsPanel.add(simulationTimeLabel);
+        statsPanel.add(new JSeparator(SwingConstants.VERTICAL));
+        statsPanel.add(openBaysLabel);
+
+        startupLabel = new JLabel("First Car: -");
+        startupLabel.setFont(new Font("Segoe UI", Font.BOLD, 12));
+        startupLabel.setForeground(new Color(108, 117, 125));
+        statsPanel.add(new JSeparator(SwingConstants.VERTICAL));
+        statsPanel.add(startupLabel);
 
         // Center: Log area
         JPanel logPanel = new JPanel(new BorderLayout());
@@ -676,27 +688,59 @@ class SimulationGUI {
 
         logPanel.add(scrollPane, BorderLayout.CENTER);
 
+        // Bottom: semaphore contention, shown only while profiling
+        contentionLabel = new JLabel(" ");
+        contentionLabel.setFont(new Font("Consolas", Font.PLAIN, 11));
+        contentionLabel.setForeground(new Color(108, 117, 125));
+        contentionLabel.setVisible(false);
+
         panel.add(statsPanel, BorderLayout.WEST);
         panel.add(logPanel, BorderLayout.CENTER);
+        panel.add(contentionLabel, BorderLayout.SOUTH);
 
         return panel;
     }
 
     private void startSimulationTimer() {
-        startTime = System.currentTimeMillis();
-        simulationTimer = new Timer(1000, e -> updateSimulationTime());
-        simulationTimer.start();
+        if (simulationTimer == null) {
+            simulationTimer = new Timer(1000, e -> updateSimulationTime());
+        }
+        simulationTimer.restart();
     }
 
     private void updateSimulationTime() {
-        long currentTime = System.currentTimeMillis();
-        long elapsed = currentTime - startTime;
+        long elapsed = clock.now();
         long hours = elapsed / 3600000;
         long minutes = (elapsed % 3600000) / 60000;
         long seconds = (elapsed % 60000) / 1000;
         
         String timeString = String.format("Running Time: %02d:%02d:%02d", hours, minutes, seconds);
         simulationTimeLabel.setText(timeString);
+        refreshContention();
+    }
+
+    // Semaphores to show in the status panel; none hides the contention line
+    public void setProfiledSemaphores(Semaphore... semaphores) {
+        SwingUtilities.invokeLater(() -> {
+            profiledSemaphores = semaphores;
+            contentionLabel.setVisible(semaphores.length > 0);
+            refreshContention();
+        });
+    }
+
+    private void refreshContention() {
+        if (profiledSemaphores.length == 0) return;
+        StringBuilder text = new StringBuilder("Contention: ");
+        for (int i = 0; i < profiledSemaphores.length; i++) {
+            if (i > 0) text.append("  |  ");
+            text.append(profiledSemaphores[i].profileSnapshot().summary());
+        }
+        contentionLabel.setText(text.toString());
+    }
+
+    // Time it took to build and show the main window
+    public long getBuildMillis() {
+        return buildMillis;
     }
 
     // Public methods for simulation control
@@ -706,6 +750,10 @@ class SimulationGUI {
         stopButton.addActionListener(stopListener);
     }
 
+    public void setCheckpointListener(ActionListener checkpointListener) {
+        checkpointButton.addActionListener(checkpointListener);
+    }
+
     public void addSpeedChangeListener(ChangeListener listener) {
         speedSlider.addChangeListener(listener);
     }
@@ -714,129 +762,231 @@ class SimulationGUI {
         return speedSlider.getValue();
     }
 
+    // Runs on the worker holding the queue mutex: publishes a new snapshot when the
+    // cars changed and makes sure one EDT task will pick up the latest
     public void updateQueueDisplay(Queue<Integer> queue) {
-        SwingUtilities.invokeLater(() -> {
-            try {
-                if (queueSlotLabels == null) return;
-                
-                queueSizeLabel.setText(queue.size() + "/" + waitingCapacity + " cars");
-                
-                // Clear all slots first
-                for (int i = 0; i < queueSlotLabels.length; i++) {
-                    queueSlotLabels[i].setText("EMPTY");
-                    queueSlotLabels[i].setBackground(new Color(248, 249, 250));// light gray
-                    queueSlotLabels[i].setForeground(new Color(108, 117, 125));
-                    queueSlotLabels[i].setBorder(BorderFactory.createCompoundBorder(
-                        BorderFactory.createLineBorder(new Color(222, 226, 230), 1),
-                        BorderFactory.createEmptyBorder(8, 10, 8, 10)
-                    ));
-                }
-                
-                // Fill occupied slots with actual queue content
-                Integer[] queueArray = queue.toArray(new Integer[0]);
-                for (int i = 0; i < queueArray.length && i < queueSlotLabels.length; i++) {
-                    if (queueArray[i] != null) {
-                        queueSlotLabels[i].setText("Car " + queueArray[i]);
-                        queueSlotLabels[i].setBackground(new Color(255, 243, 205));
-                        queueSlotLabels[i].setForeground(new Color(133, 100, 4));
-                        queueSlotLabels[i].setBorder(BorderFactory.createCompoundBorder(
-                            BorderFactory.createLineBorder(new Color(255, 193, 7), 2),
-                            BorderFactory.createEmptyBorder(8, 10, 8, 10)
-                        ));
-                    }
-                }
-            } catch (Exception e) {
-                logMessage("ERROR updating queue display: " + e.getMessage());
+        QueueSnapshot previous = queueSnapshot;
+        QueueSnapshot published = QueueSnapshot.publish(queue, previous, MAX_SHOWN_SLOTS);
+        if (published == previous) return;
+        queueSnapshot = published;
+        if (queueFlushScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(queueTask);
+        }
+    }
+
+    private void showQueue() {
+        queueFlushScheduled.set(false);
+        QueueSnapshot snapshot = queueSnapshot;
+        if (queueSlotLabels == null || snapshot.version == queueShown) return;
+        queueShown = snapshot.version;
+        try {
+            queueSizeLabel.setText(snapshot.size() + "/" + waitingCapacity + " cars");
+            // Occupied slots show their car, the rest are empty; unchanged slots are left alone
+            for (int i = 0; i < queueSlotLabels.length; i++) {
+                boolean taken = i < snapshot.size();
+                queueSlotLabels[i].setText(taken ? carName(snapshot.car(i)) : "EMPTY");
+                (taken ? StatusStyles.SLOT_TAKEN : StatusStyles.SLOT_EMPTY).apply(queueSlotLabels[i]);
             }
-        });
+        } catch (Exception e) {
+            log.message("ERROR updating queue display: " + e.getMessage());
+        }
     }
 
     public void updatePumpStatus(int pumpId, int carId, boolean occupied) {
+        synchronized (pendingLock) {
+            int index = pumpId - 1;
+            if (index < 0 || index >= pendingPumpCars.length) return;
+            pendingPumpCars[index] = occupied ? carId : -1;
+            dirtyPumps.set(index);
+            scheduleFlush();
+        }
+    }
+
+    private void showPump(int index, int carId) {
+        if (index >= pumpStatusLabels.length) return;
+        pumpOccupied[index] = carId >= 0;
+        if (carId >= 0) {
+            pumpStatusLabels[index].setText(carName(carId));
+            StatusStyles.BAY_BUSY.apply(pumpStatusLabels[index]);
+            pumpProgressBars[index].setString("Washing...");
+        } else if (pumpClosed[index]) {
+            pumpStatusLabels[index].setText("CLOSED");
+            StatusStyles.BAY_CLOSED.apply(pumpStatusLabels[index]);
+            pumpProgressBars[index].setValue(0);
+            pumpProgressBars[index].setString("Closed");
+        } else {
+            pumpStatusLabels[index].setText("READY");
+            StatusStyles.BAY_READY.apply(pumpStatusLabels[index]);
+            pumpProgressBars[index].setValue(0);
+            pumpProgressBars[index].setString("Waiting...");
+        }
+    }
+
+    // A closed bay shows CLOSED as soon as it has no car; a busy one keeps its car until finished
+    public void updatePumpOpen(int pumpId, boolean open, boolean busy) {
         SwingUtilities.invokeLater(() -> {
-            try {
-                int index = pumpId - 1;
-                if (index >= 0 && index < pumpStatusLabels.length) {
-                    if (occupied) {
-                        pumpStatusLabels[index].setText("Car " + carId);
-                        pumpStatusLabels[index].setBackground(new Color(40, 167, 69));
-                        pumpProgressBars[index].setString("Washing...");
-                    } else {
-                        pumpStatusLabels[index].setText("READY");
-                        pumpStatusLabels[index].setBackground(new Color(108, 117, 125));
-                        pumpProgressBars[index].setValue(0);
-                        pumpProgressBars[index].setString("Waiting...");
-                    }
+            int index = pumpId - 1;
+            if (index >= 0 && index < pumpClosed.length) {
+                pumpClosed[index] = !open;
+                if (!pumpOccupied[index]) {
+                    showPump(index, -1);
                 }
-            } catch (Exception e) {
-                logMessage("ERROR updating pump status: " + e.getMessage());
             }
         });
+        if (!busy) {
+            updatePumpStatus(pumpId, -1, false);
+        }
     }
 
-    public void updatePumpProgress(int pumpId, int progress) {
-        SwingUtilities.invokeLater(() -> {
-            try {
-                int index = pumpId - 1;
-                if (index >= 0 && index < pumpProgressBars.length) {
-                    pumpProgressBars[index].setValue(progress);
-                    pumpProgressBars[index].setString("Washing... " + progress + "%");
+    public void updateStartupTime(long timeToFirstCarMillis) {
+        SwingUtilities.invokeLater(() -> startupLabel.setText("First Car: " + timeToFirstCarMillis + " ms"));
+    }
+
+    public void updateOpenBays(int openBays, int totalBays, String staffing) {
+        SwingUtilities.invokeLater(() ->
+            openBaysLabel.setText("Open Bays: " + openBays + "/" + totalBays + "  " + staffing));
+    }
+
+    // Progress bars are driven by the view: one timer reads the wash timing of the busy pumps
+    public void setPumps(Pump[] pumps) {
+        this.pumps = pumps;
+    }
+
+    private void startProgressTimer() {
+        if (progressTimer == null) {
+            progressTimer = new Timer(40, e -> refreshPumpProgress());
+        }
+        progressTimer.restart();
+    }
+
+    private void refreshPumpProgress() {
+        if (pumps == null) return;
+        for (int i = 0; i < pumps.length && i < pumpProgressBars.length; i++) {
+            if (!pumpOccupied[i]) continue;
+            int permille = pumps[i].getWashProgress();
+            if (permille != pumpProgressBars[i].getValue()) {
+                int percent = pumpProgressBars[i].getValue() / 10;
+                pumpProgressBars[i].setValue(permille);
+                if (permille / 10 != percent) {
+                    pumpProgressBars[i].setString("Washing... " + (permille / 10) + "%");
                 }
-            } catch (Exception e) {
-                logMessage("ERROR updating pump progress: " + e.getMessage());
             }
-        });
+        }
     }
 
-    public void updateCarStatus(int carId, String status) {
-        SwingUtilities.invokeLater(() -> {
-            try {
-                int index = carId - 1;
-                if (index >= 0 && index < carStatusLabels.length) {
-                    Color backgroundColor;
-                    Color borderColor;
-                    
-                    if (status.contains("ARRIVED")) {
-                        backgroundColor = new Color(255, 193, 7);
-                        borderColor = new Color(253, 126, 20);
-                    } else if (status.contains("IN_QUEUE")) {
-                        backgroundColor = new Color(255, 243, 205);
-                        borderColor = new Color(255, 193, 7);
-                    } else if (status.contains("AT_PUMP") || status.contains("WASHING")) {
-                        backgroundColor = new Color(209, 231, 221);
-                        borderColor = new Color(40, 167, 69);
-                    } else if (status.contains("FINISHED")) {
-                        backgroundColor = new Color(209, 229, 240);
-                        borderColor = new Color(0, 123, 255);
-                        carsProcessed.incrementAndGet();
-                        carsProcessedLabel.setText("Cars Processed: " + carsProcessed.get());
-                    } else {
-                        backgroundColor = new Color(255, 193, 7);
-                        borderColor = new Color(253, 126, 20);
-                    }
-                    
-                    carStatusLabels[index].setBackground(backgroundColor);
-                    carStatusLabels[index].setBorder(BorderFactory.createCompoundBorder(
-                        BorderFactory.createLineBorder(borderColor, 1),
-                        BorderFactory.createEmptyBorder(8, 5, 8, 5)
-                    ));
-                }
-            } catch (Exception e) {
-                logMessage("ERROR updating car status: " + e.getMessage());
+    public void updateCarStatus(int carId, CarState state) {
+        synchronized (pendingLock) {
+            if (carId < 1 || carId >= pendingStates.length) return;
+            pendingStates[carId] = (byte) state.ordinal();
+            dirtyCars.set(carId);
+            scheduleFlush();
+        }
+    }
+
+    // Called holding pendingLock
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            SwingUtilities.invokeLater(flushTask);
+        }
+    }
+
+    // On the EDT: takes everything pending under the lock, then applies it without
+    private void flushPending() {
+        int cars = 0, bays;
+        synchronized (pendingLock) {
+            flushScheduled = false;
+            ensureDrain(dirtyCars.cardinality() + dirtyPumps.cardinality());
+            for (int carId = dirtyCars.nextSetBit(0); carId >= 0; carId = dirtyCars.nextSetBit(carId + 1)) {
+                drainIds[cars] = carId;
+                drainValues[cars++] = pendingStates[carId];
             }
-        });
+            bays = cars;
+            for (int index = dirtyPumps.nextSetBit(0); index >= 0; index = dirtyPumps.nextSetBit(index + 1)) {
+                drainIds[bays] = index;
+                drainValues[bays++] = pendingPumpCars[index];
+            }
+            dirtyCars.clear();
+            dirtyPumps.clear();
+        }
+        try {
+            int finished = 0;
+            for (int i = 0; i < cars; i++) {
+                finished += showCar(drainIds[i], CarState.of(drainValues[i]));
+            }
+            if (finished > 0) {
+                carsProcessedLabel.setText("Cars Processed: " + carsProcessed.addAndGet(finished));
+            }
+        } catch (Exception e) {
+            log.message("ERROR updating car status: " + e.getMessage());
+        }
+        try {
+            for (int i = cars; i < bays; i++) {
+                showPump(drainIds[i], drainValues[i]);
+            }
+        } catch (Exception e) {
+            log.message("ERROR updating pump status: " + e.getMessage());
+        }
     }
 
-    public void logMessage(String message) {
-        SwingUtilities.invokeLater(() -> {
-            try {
-                String timestamp = java.time.LocalTime.now().format(
-                    java.time.format.DateTimeFormatter.ofPattern("HH:mm:ss"));
-                logTextArea.append("[" + timestamp + "] " + message + "\n");
-                logTextArea.setCaretPosition(logTextArea.getDocument().getLength());
-            } catch (Exception e) {
-                System.err.println("Error logging message: " + e.getMessage());
+    private void ensureDrain(int size) {
+        if (drainIds.length < size) {
+            drainIds = new int[Math.max(size, drainIds.length * 2)];
+            drainValues = new int[drainIds.length];
+        }
+    }
+
+    // Restyles one tile if its state changed; 1 when the car just finished
+    private int showCar(int carId, CarState state) {
+        if (carId > totalCars || shownStates[carId] == state.ordinal()) return 0;
+        shownStates[carId] = (byte) state.ordinal();
+        carsGrid.showTile(carId);
+        return state == CarState.FINISHED ? 1 : 0;
+    }
+
+    // Label text for the queue slots and bays; the cars shown there change slowly, so
+    // a small table by carId keeps them from allocating on every update
+    private String carName(int carId) {
+        int slot = carId & (carNames.length - 1);
+        if (carNameIds[slot] != carId || carNames[slot] == null) {
+            carNames[slot] = "Car " + carId;
+            carNameIds[slot] = carId;
+        }
+        return carNames[slot];
+    }
+
+    // Log sink for the real-time log panel: lines of one logger batch are
+    // collected and appended to the text area with a single EDT task
+    public LogSink createLogSink() {
+        return new LogSink() {
+            private final StringBuilder pending = new StringBuilder();
+
+            @Override
+            public void write(CharSequence line) {
+                pending.append(line).append('\n');
             }
-        });
+
+            @Override
+            public void flush() {
+                if (pending.length() == 0) return;
+                String batch = pending.toString();
+                pending.setLength(0);
+                SwingUtilities.invokeLater(() -> appendLog(batch));
+            }
+        };
+    }
+
+    private void appendLog(String batch) {
+        try {
+            logTextArea.append(batch);
+            int overflow = logTextArea.getDocument().getLength() - MAX_LOG_CHARS;
+            if (overflow > 0) {
+                logTextArea.replaceRange("", 0, overflow);
+            }
+            logTextArea.setCaretPosition(logTextArea.getDocument().getLength());
+        } catch (Exception e) {
+            System.err.println("Error logging message: " + e.getMessage());
+        }
     }
 
     public void showCompletionDialog(Runnable restartCallback) {
@@ -845,6 +995,9 @@ class SimulationGUI {
                 if (simulationTimer != null) {
                     simulationTimer.stop();
                 }
+                if (progressTimer != null) {
+                    progressTimer.stop();
+                }
                 
                 int choice = JOptionPane.showConfirmDialog(mainFrame,
                     "Simulation completed successfully!\n\n" +
@@ -854,8 +1007,7 @@ class SimulationGUI {
                     JOptionPane.INFORMATION_MESSAGE);
                 
                 if (choice == JOptionPane.YES_OPTION) {
-                    mainFrame.dispose();
-                    restartCallback.run();
+                    restartCallback.run(); // the window is reused by the next run
                 } else {
                     System.exit(0);
                 }
@@ -871,6 +1023,9 @@ class SimulationGUI {
             if (simulationTimer != null) {
                 simulationTimer.stop();
             }
+            if (progressTimer != null) {
+                progressTimer.stop();
+            }
             mainFrame.dispose();
         } catch (Exception e) {
             System.err.println("Error disposing GUI: " + e.getMessage());
@@ -883,35 +1038,105 @@ class SimulationGUI {
 // ----------------------------
 class ServiceStation {
     private static Pump[] pumps;
-    private static Car[] cars;
     private static Thread[] pumpThreads;
     private static Thread carGeneratorThread;
+    private static ThreadGroup carThreads;        // the cars of the current run
+    private static PauseGate carsPaused;          // shared by the cars; only live car threads are referenced
     private static SimulationGUI gui;
+    private static SimulationLogger log;
+    private static LogSink guiLogSink;
     private static volatile boolean simulationRunning = false;
     private static volatile boolean simulationPaused = false;
+    private static SimulationClock clock;
+    private static TimeScale timeScale;
+    private static SimulationMetrics metrics;
+    private static volatile int generatedCars;
+    private static Timer autosaveTimer;
+    private static ArrivalSource arrivals;
+    private static String tracePath = "";
+    private static boolean autoScaling = false;
+    private static BayScaler bayScaler;
+    private static ServicePipeline pipeline;
+    private static AppointmentBook appointments;
+    private static ArrivalThrottle throttle;
+    private static RunPlan plan;                 // compiled scenario, null when configured by hand
+    private static PlanRun planRun;
+    private static FlightRecorder recorder;      // null unless -Dcarwash.trace.file is set
+    private static String scenarioPath = System.getProperty("carwash.scenario", "");
     
     private static Queue<Integer> queue;
     private static Semaphore empty, full, mutex, pumpSem;
     
     private static int waitingCapacity, pumpsCount, totalCars;
+    private static final long ACTOR_JOIN_MILLIS = 2000; // per thread; a stopped actor exits at its next wait
+    private static Thread actorStopper;                // stops and joins a run's threads off the EDT; EDT only
+    private static boolean checkpointRequested;        // the user saved a checkpoint of this run; EDT only
+    private static volatile Thread checkpointWriter;   // the latest checkpoint being written, if any
 
     public static void main(String[] args) {
         Thread.setDefaultUncaughtExceptionHandler((thread, throwable) -> {
             System.err.println("Uncaught exception in thread " + thread.getName() + ": " + throwable.getMessage());
             throwable.printStackTrace();
         });
+
+        log = createLogger();
+        Runtime.getRuntime().addShutdownHook(new Thread(log::close, "LoggerShutdown"));
         
-        SwingUtilities.invokeLater(ServiceStation::showConfigurationDialog);
+        SwingUtilities.invokeLater(() -> {
+            SimulationGUI.installLookAndFeel(); // once per process, before the first dialog
+            showConfigurationDialog();
+        });
+    }
+
+    // Console output is always on; rolling files are written when -Dcarwash.log.dir is set
+    private static SimulationLogger createLogger() {
+        SimulationLogger logger = new SimulationLogger(Integer.getInteger("carwash.log.buffer", 16384));
+        logger.addSink(new ConsoleLogSink());
+        String logDir = System.getProperty("carwash.log.dir");
+        if (logDir != null && !logDir.trim().isEmpty()) {
+            try {
+                logger.addSink(new RollingFileLogSink(new java.io.File(logDir.trim()), "carwash",
+                    Long.getLong("carwash.log.maxBytes", 10L * 1024 * 1024),
+                    Integer.getInteger("carwash.log.maxFiles", 5)));
+            } catch (java.io.IOException e) {
+                System.err.println("File logging disabled: " + e.getMessage());
+            }
+        }
+        return logger;
     }
 
     private static void showConfigurationDialog() {
         while (true) {
-            JPanel configPanel = new JPanel(new GridLayout(4, 2, 10, 10));
+            JPanel configPanel = new JPanel(new GridLayout(7, 2, 10, 10));
             configPanel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
 
             JTextField waitingField = new JTextField("3");
             JTextField pumpsField = new JTextField("2");
             JTextField carsField = new JTextField("15");
+            JTextField traceField = new JTextField(tracePath);
+            JButton browseButton = new JButton("...");
+            browseButton.addActionListener(e -> {
+                JFileChooser chooser = new JFileChooser();
+                chooser.setDialogTitle("Select Arrival Trace (CSV or binary)");
+                if (chooser.showOpenDialog(configPanel) == JFileChooser.APPROVE_OPTION) {
+                    traceField.setText(chooser.getSelectedFile().getAbsolutePath());
+                }
+            });
+            JPanel tracePanel = new JPanel(new BorderLayout(5, 0));
+            tracePanel.add(traceField, BorderLayout.CENTER);
+            tracePanel.add(browseButton, BorderLayout.EAST);
+            JTextField scenarioField = new JTextField(scenarioPath);
+            JButton scenarioButton = new JButton("...");
+            scenarioButton.addActionListener(e -> {
+                JFileChooser chooser = new JFileChooser();
+                chooser.setDialogTitle("Select Scenario File");
+                if (chooser.showOpenDialog(configPanel) == JFileChooser.APPROVE_OPTION) {
+                    scenarioField.setText(chooser.getSelectedFile().getAbsolutePath());
+                }
+            });
+            JPanel scenarioPanel = new JPanel(new BorderLayout(5, 0));
+            scenarioPanel.add(scenarioField, BorderLayout.CENTER);
+            scenarioPanel.add(scenarioButton, BorderLayout.EAST);
 
             configPanel.add(new JLabel("Waiting Area Capacity (1-10):"));
             configPanel.add(waitingField);
@@ -919,23 +1144,76 @@ class ServiceStation {
             configPanel.add(pumpsField);
             configPanel.add(new JLabel("Total Cars to Simulate (1-50):"));
             configPanel.add(carsField);
+            configPanel.add(new JLabel("Arrival Trace File (optional, replays all its cars):"));
+            configPanel.add(tracePanel);
+            configPanel.add(new JLabel("Scenario File (replaces the above):"));
+            configPanel.add(scenarioPanel);
+            JCheckBox scalingBox = new JCheckBox("Auto-scale bays (count above is the maximum)", autoScaling);
+            configPanel.add(scalingBox);
+            configPanel.add(new JLabel());
             
             JLabel noteLabel = new JLabel("<html><i>Note: Default speed is slow. Use slider to increase speed.</i></html>");
             noteLabel.setForeground(Color.GRAY);
             configPanel.add(noteLabel);
             configPanel.add(new JLabel());
 
-            int result = JOptionPane.showConfirmDialog(null, configPanel, 
+            Object[] options = {"Start", "Resume Checkpoint...", "Cancel"};
+            int result = JOptionPane.showOptionDialog(null, configPanel, 
                     "Car Wash Simulation Configuration", 
-                    JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
-
-            if (result == JOptionPane.OK_OPTION) {
+                    JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+
+            if (result == 1) {
+                SimulationSnapshot snapshot = chooseCheckpoint();
+                if (snapshot != null) {
+                    waitingCapacity = snapshot.waitingCapacity;
+                    autoScaling = snapshot.autoScaling;
+                    pumpsCount = snapshot.pumpsCount;
+                    totalCars = snapshot.totalCars;
+                    initializeSimulation(snapshot);
+                    return;
+                }
+            } else if (result == 0) {
+                scenarioPath = scenarioField.getText().trim();
+                autoScaling = scalingBox.isSelected();
+                plan = null;
+                if (!scenarioPath.isEmpty()) {
+                    try {
+                        plan = RunPlan.compile(new File(scenarioPath));
+                        waitingCapacity = plan.waitingCapacity;
+                        pumpsCount = plan.bays;
+                        totalCars = plan.cars;
+                        tracePath = "";
+                        break;
+                    } catch (IOException e) {
+                        JOptionPane.showMessageDialog(null,
+                            "Cannot use scenario:\n" + e.getMessage(),
+                            "Invalid Scenario", JOptionPane.WARNING_MESSAGE);
+                        continue;
+                    }
+                }
                 try {
                     waitingCapacity = Integer.parseInt(waitingField.getText().trim());
                     pumpsCount = Integer.parseInt(pumpsField.getText().trim());
                     totalCars = Integer.parseInt(carsField.getText().trim());
+                    tracePath = traceField.getText().trim();
 
-                    if (waitingCapacity >= 1 && waitingCapacity <= 10 &&
+                    if (!tracePath.isEmpty() && !new File(tracePath).isFile()) {
+                        JOptionPane.showMessageDialog(null,
+                            "Arrival trace not found:\n" + tracePath,
+                            "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                    } else if (!tracePath.isEmpty()) {
+                        // A trace brings its own car count and gets the limits of a scenario
+                        if (waitingCapacity >= 1 && waitingCapacity <= RunPlan.MAX_WAITING &&
+                            pumpsCount >= 1 && pumpsCount <= RunPlan.MAX_BAYS) {
+                            startWithTrace();
+                            return;
+                        }
+                        JOptionPane.showMessageDialog(null,
+                            "Please enter valid numbers:\n" +
+                            "Waiting Capacity: 1-" + RunPlan.MAX_WAITING + "\n" +
+                            "Service Bays: 1-" + RunPlan.MAX_BAYS,
+                            "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                    } else if (waitingCapacity >= 1 && waitingCapacity <= 10 &&
                         pumpsCount >= 1 && pumpsCount <= 10 &&
                         totalCars >= 1 && totalCars <= 50) {
                         break;
@@ -957,52 +1235,273 @@ class ServiceStation {
             }
         }
 
-        initializeSimulation();
+        initializeSimulation(null);
+    }
+
+    private static SimulationSnapshot chooseCheckpoint() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Resume Simulation From Checkpoint");
+        chooser.setSelectedFile(checkpointFile().getAbsoluteFile());
+        if (chooser.showOpenDialog(null) != JFileChooser.APPROVE_OPTION) {
+            return null;
+        }
+        try {
+            return SimulationSnapshot.readFrom(chooser.getSelectedFile());
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null,
+                "Cannot read checkpoint: " + e.getMessage(),
+                "Invalid Checkpoint", JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+    }
+
+    // Trace timestamps are compressed by -Dcarwash.trace.speedup (default: one trace minute per simulated second)
+    private static double traceSpeedup() {
+        String speedup = System.getProperty("carwash.trace.speedup", "60");
+        try {
+            return Double.parseDouble(speedup);
+        } catch (NumberFormatException e) {
+            return 60;
+        }
+    }
+
+    // Counts the cars of the chosen trace off the EDT, behind a progress monitor (a CSV
+    // trace is scanned once), then starts the run with all of them. Goes back to the
+    // configuration dialog when the trace holds none or the count is cancelled.
+    private static void startWithTrace() {
+        ProgressMonitor progress = new ProgressMonitor(null, "Counting the arrivals in " +
+            new File(tracePath).getName(), null, 0, 100);
+        Thread counter = new Thread("TraceCounter") {
+            @Override
+            public void run() {
+                long traced = countTraceArrivals(percent -> SwingUtilities.invokeLater(() -> {
+                    if (progress.isCanceled()) {
+                        interrupt();
+                    } else {
+                        progress.setProgress(percent);
+                    }
+                }));
+                SwingUtilities.invokeLater(() -> {
+                    progress.close();
+                    if (traced > 0) {
+                        totalCars = (int) Math.min(traced, RunPlan.MAX_CARS);
+                        initializeSimulation(null);
+                        return;
+                    }
+                    if (traced == 0) {
+                        JOptionPane.showMessageDialog(null, "The arrival trace holds no arrivals.",
+                            "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                    }
+                    showConfigurationDialog();
+                });
+            }
+        };
+        counter.setDaemon(true);
+        counter.start();
+    }
+
+    // Arrivals in the chosen trace, 0 when it cannot be read, -1 when counting was cancelled
+    private static long countTraceArrivals(java.util.function.IntConsumer percentScanned) {
+        try (TraceArrivalSource trace = new TraceArrivalSource(new File(tracePath), traceSpeedup())) {
+            return trace.countArrivals(percentScanned);
+        } catch (java.io.InterruptedIOException e) {
+            return -1;
+        } catch (IOException e) {
+            System.err.println("Cannot read arrival trace: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private static ArrivalSource createArrivalSource() throws IOException {
+        if (tracePath.isEmpty()) {
+            return new FixedIntervalArrivals();
+        }
+        return new TraceArrivalSource(new File(tracePath), traceSpeedup());
+    }
+
+    private static File checkpointFile() {
+        return new File(System.getProperty("carwash.checkpoint.file", "carwash-checkpoint.bin"));
+    }
+
+    // Called on the EDT. The previous run's threads are stopped and joined on a background
+    // thread, and must be gone before the window is reconfigured; the run is built back on the EDT.
+    private static void initializeSimulation(SimulationSnapshot snapshot) {
+        long startNanos = System.nanoTime();
+        actorStopper = new Thread(() -> {
+            stopActors();
+            SwingUtilities.invokeLater(() -> startRun(snapshot, startNanos));
+        }, "ActorStopper");
+        actorStopper.start();
     }
 
-    private static void initializeSimulation() {
+    private static void startRun(SimulationSnapshot snapshot, long startNanos) {
+        checkpointRequested = false;
         try {
             // Initialize semaphores and queue
             queue = new LinkedList<>();
-            empty = new Semaphore(waitingCapacity);
-            full = new Semaphore(0);
+            List<Integer> arrivingCars = new ArrayList<>();
+            closeArrivals();
+            if (snapshot != null) {
+                arrivals = snapshot.restoreArrivals(traceSpeedup());
+                plan = arrivals instanceof PlanRun ? ((PlanRun) arrivals).plan : null;
+                tracePath = snapshot.tracePath != null ? snapshot.tracePath : "";
+                clock = new SimulationClock(snapshot.clockMillis);
+                metrics = snapshot.metrics.withClock(clock);
+                generatedCars = snapshot.generatedCars;
+                arrivingCars.addAll(snapshot.arrivingCars());
+                for (int carId : snapshot.queuedCars()) {
+                    if (queue.size() < waitingCapacity) {
+                        queue.add(carId);
+                    } else {
+                        arrivingCars.add(carId); // did not fit after all: line up again
+                    }
+                }
+            } else {
+                arrivals = plan != null ? plan.start(plan.seed) : createArrivalSource();
+                clock = new SimulationClock(0);
+                metrics = new SimulationMetrics(totalCars, clock);
+                generatedCars = 0;
+            }
+            empty = new Semaphore(waitingCapacity - queue.size());
+            full = new Semaphore(queue.size());
             mutex = new Semaphore(1);
             pumpSem = new Semaphore(pumpsCount);
-
-            // Initialize GUI
-            gui = new SimulationGUI(waitingCapacity, pumpsCount, totalCars);
-            
-            // Set up control listeners
-            gui.setControlListeners(
-                e -> resumeSimulation(),
-                e -> pauseSimulation(),
-                e -> stopSimulation()
-            );
-            
-            gui.addSpeedChangeListener(e -> updateSimulationSpeed());
+            boolean profiling = Boolean.getBoolean("carwash.profile.semaphores");
+            if (profiling) {
+                empty.profiled("empty");
+                full.profiled("full");
+                mutex.profiled("mutex");
+                pumpSem.profiled("pumpSem");
+            }
+            recorder = FlightRecorder.configured();
+            empty.traced("empty", recorder);
+            full.traced("full", recorder);
+            mutex.traced("mutex", recorder);
+            pumpSem.traced("pumpSem", recorder);
+            log.setRecorder(recorder);
+
+            // Initialize GUI: the window is built once per process and reconfigured on restart
+            boolean firstRun = gui == null;
+            if (firstRun) {
+                gui = new SimulationGUI(log);
+                guiLogSink = gui.createLogSink();
+                log.addSink(guiLogSink);
+
+                // Set up control listeners
+                gui.setControlListeners(
+                    e -> resumeSimulation(),
+                    e -> pauseSimulation(),
+                    e -> stopSimulation()
+                );
+                gui.setCheckpointListener(e -> {
+                    checkpointRequested = true;
+                    saveCheckpoint(checkpointFile());
+                });
+
+                gui.addSpeedChangeListener(e -> updateSimulationSpeed());
+            }
+            gui.configure(waitingCapacity, pumpsCount, totalCars, clock);
+            timeScale = new TimeScale(gui.getSpeedFactor()); // the slider keeps its position across runs
+            if (profiling) {
+                gui.setProfiledSemaphores(mutex, empty, full, pumpSem);
+            } else {
+                gui.setProfiledSemaphores();
+            }
+            metrics.setFirstArrivalListener(() -> {
+                long millis = (System.nanoTime() - startNanos) / 1_000_000L;
+                log.message("Time to first car: " + millis + " ms");
+                gui.updateStartupTime(millis);
+            });
             
-            gui.logMessage("=== Car Wash Simulation Started ===");
-            gui.logMessage("Configuration: " + waitingCapacity + " waiting slots, " + 
+            log.message("=== Car Wash Simulation Started ===");
+            if (firstRun) {
+                log.message("GUI ready in " + gui.getBuildMillis() + " ms");
+            }
+            log.message("Configuration: " + waitingCapacity + " waiting slots, " + 
                           pumpsCount + " service bays, " + totalCars + " total cars");
-            gui.logMessage("Initializing simulation components...");
+            if (!tracePath.isEmpty()) {
+                log.message("Replaying arrivals from trace " + tracePath);
+            }
+            planRun = arrivals instanceof PlanRun ? (PlanRun) arrivals : null;
+            if (plan != null) {
+                log.message("Scenario " + plan.describe());
+            }
+            if (planRun != null) {
+                planRun.setClock(clock);
+            }
+            log.message("Initializing simulation components...");
+
+            // Service stages: the bays run the first one
+            pipeline = ServicePipeline.create(snapshot != null ? snapshot.stageSpec :
+                    plan != null ? plan.stageSpec : ServicePipeline.configuredSpec(),
+                pumpsCount, snapshot != null ? snapshot.stageCarIds : null, timeScale, null, clock, gui, log, metrics);
+            if (pipeline.stages.length > 0) {
+                log.message("Service stages: " + pipeline.spec);
+            }
+            appointments = AppointmentBook.configured(pumpsCount, totalCars, pipeline.bayBaseMillis, timeScale,
+                clock, metrics, gui, log);
+            if (appointments != null) {
+                log.message("Appointments: " + appointments.describe());
+            }
+            throttle = ArrivalThrottle.configured();
+            log.message("Arrivals: " + throttle.describe());
 
             // Initialize pumps
             pumps = new Pump[pumpsCount];
             pumpThreads = new Thread[pumpsCount];
             
             for (int i = 0; i < pumpsCount; i++) {
-                pumps[i] = new Pump(i + 1, queue, empty, full, mutex, pumpSem, gui);
+                pumps[i] = new Pump(i + 1, queue, empty, full, mutex, pumpSem, timeScale, gui, log, metrics);
+                pumps[i].setPipeline(pipeline);
+                pumps[i].setAppointments(appointments);
+                pumps[i].setServiceTimes(planRun);
+                if (snapshot != null && snapshot.pumpCarIds[i] > 0) {
+                    pumps[i].resumeWash(snapshot.pumpCarIds[i], snapshot.pumpProgress[i]);
+                }
+                if (snapshot != null && !snapshot.pumpOpen[i]) {
+                    pumps[i].closeBay();
+                    gui.updatePumpOpen(i + 1, false, snapshot.pumpCarIds[i] > 0);
+                }
                 pumpThreads[i] = new Thread(pumps[i], "Pump-" + (i + 1));
                 pumpThreads[i].setDaemon(true);
             }
 
-            // Initialize cars array
-            cars = new Car[totalCars];
+            gui.setPumps(pumps);
+
+            boolean scheduledBays = plan != null && plan.bayTimes.length > 0;
+            if (appointments != null && autoScaling) {
+                log.message("Auto-scaling is off while appointments hold bay slots");
+            } else if (scheduledBays && autoScaling) {
+                log.message("Auto-scaling is off while the scenario schedules the bays");
+            }
+            bayScaler = new BayScaler(pumps, metrics, clock, log, gui,
+                BayScaler.Policy.fromSystemProperties(autoScaling && appointments == null && !scheduledBays, pumpsCount));
+            if (scheduledBays) {
+                planRun.setBayListener(bayScaler::setOpenBays);
+            }
+            if (snapshot == null) {
+                bayScaler.applyInitialBays();
+            }
+
+            carsPaused = new PauseGate();
+            carThreads = new ThreadGroup("Cars");
+
+            if (snapshot != null) {
+                restoreDisplay();
+                log.message("Resumed from checkpoint at " + (snapshot.clockMillis / 1000) + "s: " +
+                    metrics.getCarsProcessed() + " cars processed, " + queue.size() + " in queue, " +
+                    (totalCars - generatedCars) + " still to arrive");
+            }
             
-            gui.logMessage("All components initialized successfully");
-            gui.logMessage("Starting simulation...");
+            log.message("All components initialized successfully");
+            log.message("Starting simulation...");
 
-            startSimulation();
+            startSimulation(arrivingCars);
+            bayScaler.start();
+            startAutosave();
+
+            // The core is already running; the window is realized on the next EDT turn
+            SwingUtilities.invokeLater(gui::showWindow);
             
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null, 
@@ -1012,26 +1511,52 @@ class ServiceStation {
         }
     }
 
-    private static void startSimulation() {
+    // Brings the car tiles and queue view in line with a restored checkpoint
+    private static void restoreDisplay() {
+        for (int carId = 1; carId <= totalCars; carId++) {
+            CarState state = metrics.getState(carId);
+            if (state != CarState.NOT_ARRIVED && state != CarState.ARRIVED) {
+                gui.updateCarStatus(carId, state);
+            }
+        }
+        gui.updateQueueDisplay(queue);
+    }
+
+    private static void startSimulation(List<Integer> arrivingCars) {
         simulationRunning = true;
         simulationPaused = false;
         
+        pipeline.start();
+
         // Start all pumps
         for (Thread pumpThread : pumpThreads) {
             pumpThread.start();
         }
         
+        // Cars that were already at the station when the checkpoint was taken
+        for (int carId : arrivingCars) {
+            spawnCar(carId);
+        }
+
         // Start car generator
         startCarGenerator();
         
-        gui.logMessage("Simulation is now running");
-        gui.logMessage("Use the speed slider to adjust simulation speed");
+        log.message("Simulation is now running");
+        log.message("Use the speed slider to adjust simulation speed");
     }
 
     private static void startCarGenerator() {
         carGeneratorThread = new Thread(() -> {
             try {
-                for (int i = 0; i < totalCars && simulationRunning; i++) {
+                for (int i = generatedCars; i < totalCars && simulationRunning; i++) {
+                    // Adjust arrival interval based on speed
+                    long arrivalDelay = arrivals.nextDelayMillis(timeScale.get());
+                    if (arrivalDelay < 0) {
+                        log.message("No more arrivals after " + i + " cars");
+                        break;
+                    }
+                    Thread.sleep(arrivalDelay);
+
                     // Check if simulation is paused
                     while (simulationPaused && simulationRunning) {
                         Thread.sleep(100);
@@ -1040,28 +1565,27 @@ class ServiceStation {
                     if (!simulationRunning) break;
                     
                     int carId = i + 1;
-                    cars[i] = new Car(carId, queue, empty, full, mutex, gui);
-                    Thread carThread = new Thread(cars[i], "Car-" + carId);
-                    carThread.setDaemon(true);
-                    carThread.start();
-                    
-                    gui.logMessage("Generated Car " + carId);
+                    if (appointments != null && appointments.booksAhead(carId)) {
+                        appointments.reserve(carId); // arrives when its slot starts
+                    } else {
+                        throttle.acquire(); // holds the generator while too many cars wait for a slot
+                        spawnCar(carId, throttle);
+                    }
+                    generatedCars = carId;
+                    arrivals.arrived();
                     
-                    // Adjust arrival interval based on speed
-                    int speedFactor = gui.getSpeedFactor();
-                    int arrivalInterval = Math.max(1000, 3000 / speedFactor);
-                    Thread.sleep(arrivalInterval);
+                    log.event(LogEvent.CAR_GENERATED, carId, 0, 0);
                 }
                 
                 // Wait for all cars to be processed
-                gui.logMessage("All cars have been generated. Waiting for completion...");
+                log.message("All cars have been generated. Waiting for completion...");
                 waitForCompletion();
                 
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
-                gui.logMessage("Car generator interrupted");
+                log.message("Car generator interrupted");
             } catch (Exception e) {
-                gui.logMessage("ERROR in car generator: " + e.getMessage());
+                log.message("ERROR in car generator: " + e.getMessage());
             }
         }, "CarGenerator");
         
@@ -1069,31 +1593,53 @@ class ServiceStation {
         carGeneratorThread.start();
     }
 
+    private static void closeArrivals() {
+        if (arrivals != null) {
+            try {
+                arrivals.close();
+            } catch (IOException e) {
+                log.message("ERROR closing arrival source: " + e.getMessage());
+            }
+            arrivals = null;
+        }
+    }
+
+    private static void spawnCar(int carId) {
+        spawnCar(carId, null);
+    }
+
+    // With a throttle, the car hands back its in-flight permit once it is in the queue
+    private static void spawnCar(int carId, ArrivalThrottle throttle) {
+        Car car = new Car(carId, queue, empty, full, mutex, gui, log, metrics);
+        car.setBalking(planRun != null && planRun.plan.hasDemand());
+        car.setPauseGate(carsPaused);
+        Thread carThread = new Thread(carThreads, throttle != null ? throttle.track(car) : car, "Car-" + carId);
+        carThread.setDaemon(true);
+        carThread.start();
+    }
+
     private static void waitForCompletion() {
         new Thread(() -> {
             try {
-                // Wait for queue to be empty and all pumps to be idle
-                while (simulationRunning) {
-                    Thread.sleep(1000);
-                    boolean queueEmpty = queue.isEmpty();
-                    boolean allPumpsIdle = true;
-                    
-                    // Check if all pumps are idle (no cars being processed)
-                    for (int i = 0; i < pumpsCount; i++) {
-                        // This is a simplified check - in a real implementation you'd track pump state
-                    }
-                    
-                    if (queueEmpty) {
-                        // Additional wait to ensure all processing is complete
-                        Thread.sleep(2000);
-                        if (queue.isEmpty()) {
-                            break;
-                        }
-                    }
+                // Done once every generated car was washed through the last stage or lost;
+                // the queue runs empty long before the last cars leave the bays and stages
+                while (simulationRunning && metrics.getCarsProcessed() + metrics.getCarsLost() < generatedCars) {
+                    Thread.sleep(250);
                 }
                 
                 if (simulationRunning) {
-                    gui.logMessage("=== Simulation Completed Successfully ===");
+                    simulationRunning = false;
+                    SwingUtilities.invokeLater(ServiceStation::stopAutosave);
+                    stopActors(); // nothing changes the metrics while they are reported and exported
+                    log.message(bayScaler.report());
+                    reportStages();
+                    reportAppointments();
+                    reportScenario();
+                    log.message(throttle.report());
+                    reportContention();
+                    exportResults();
+                    writeTrace();
+                    log.message("=== Simulation Completed Successfully ===");
                     gui.showCompletionDialog(ServiceStation::showConfigurationDialog);
                 }
                 
@@ -1103,109 +1649,308 @@ class ServiceStation {
         }, "CompletionMonitor").start();
     }
 
-    private static void pauseSimulation() {
-        if (simulationRunning && !simulationPaused) {
-            simulationPaused = true;
-            gui.logMessage("Simulation PAUSED");
-            
-            // Pause all cars
-            for (int i = 0; i < totalCars; i++) {
-                if (cars[i] != null) {
-                    cars[i].pauseCar();
+    // Stops the generator, the cars, the pumps, the later stages and the scaler, and
+    // waits for them to exit. Reports and exports after this see the metrics of a
+    // finished run, and no thread of this run updates the window once it is reused.
+    private static void stopActors() {
+        try {
+            if (carGeneratorThread != null && carGeneratorThread != Thread.currentThread()) {
+                carGeneratorThread.interrupt();
+                carGeneratorThread.join(ACTOR_JOIN_MILLIS); // no car is spawned after this
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (carThreads != null) {
+            carThreads.interrupt();
+        }
+        if (pumps != null) {
+            for (Pump pump : pumps) {
+                if (pump != null) {
+                    pump.stopPump();
                 }
             }
-            
-            // Pause all pumps
-            for (int i = 0; i < pumpsCount; i++) {
-                if (pumps[i] != null) {
-                    pumps[i].pausePump();
+        }
+        if (pumpThreads != null) {
+            for (Thread pumpThread : pumpThreads) {
+                if (pumpThread != null) {
+                    pumpThread.interrupt();
                 }
             }
         }
-    }
-
-    private static void resumeSimulation() {
-        if (simulationRunning && simulationPaused) {
-            simulationPaused = false;
-            gui.logMessage("Simulation RESUMED");
-            
-            // Resume all cars
-            for (int i = 0; i < totalCars; i++) {
-                if (cars[i] != null) {
-                    cars[i].resumeCar();
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+        if (bayScaler != null) {
+            bayScaler.stop();
+        }
+        try {
+            if (carThreads != null) {
+                Thread[] alive = new Thread[carThreads.activeCount() + 16];
+                int count = carThreads.enumerate(alive, false);
+                for (int i = 0; i < count; i++) {
+                    alive[i].join(ACTOR_JOIN_MILLIS);
                 }
             }
-            
-            // Resume all pumps
-            for (int i = 0; i < pumpsCount; i++) {
-                if (pumps[i] != null) {
-                    pumps[i].resumePump();
+            if (pumpThreads != null) {
+                for (Thread pumpThread : pumpThreads) {
+                    if (pumpThread != null) {
+                        pumpThread.join(ACTOR_JOIN_MILLIS);
+                    }
                 }
             }
+            if (pipeline != null) {
+                pipeline.join(ACTOR_JOIN_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private static void stopSimulation() {
-        simulationRunning = false;
-        simulationPaused = false;
-        
-        gui.logMessage("Stopping simulation...");
-        
-        // Stop car generator
-        if (carGeneratorThread != null) {
-            carGeneratorThread.interrupt();
+    private static void reportStages() {
+        for (String line : pipeline.report(clock.now())) {
+            log.message(line);
         }
-        
-        // Stop all pumps
+    }
+
+    private static void reportScenario() {
+        if (planRun == null) return;
+        for (String line : planRun.report(metrics)) {
+            log.message(line);
+        }
+    }
+
+    private static void reportAppointments() {
+        if (appointments == null) return;
+        for (String line : appointments.report()) {
+            log.message(line);
+        }
+    }
+
+    // Writes the per-car timings to -Dcarwash.results.file, in the background
+    private static void exportResults() {
+        String path = System.getProperty("carwash.results.file");
+        if (path == null || path.isEmpty() || metrics == null) return;
+        SimulationMetrics results = metrics;
+        Thread writer = new Thread(() -> {
+            File file = new File(path);
+            try {
+                long startNanos = System.nanoTime();
+                ResultsExport.write(file, results);
+                log.message("Per-car results written to " + file.getAbsolutePath() + " (" + file.length() +
+                    " bytes, " + (System.nanoTime() - startNanos) / 1_000_000L + " ms)");
+            } catch (IOException e) {
+                log.message("ERROR writing results: " + e.getMessage());
+            }
+        }, "ResultsExport");
+        writer.start();
+    }
+
+    // Writes the flight recording to -Dcarwash.trace.file, in the background
+    private static void writeTrace() {
+        FlightRecorder recording = recorder;
+        if (recording == null) return;
+        Thread writer = new Thread(() -> {
+            try {
+                recording.write();
+                log.message("Flight recording written to " + recording.file.getAbsolutePath() +
+                    " (view with: java TraceViewer " + recording.file.getPath() + ")");
+            } catch (IOException e) {
+                log.message("ERROR writing flight recording: " + e.getMessage());
+            }
+        }, "TraceWriter");
+        writer.start();
+    }
+
+    // Logs the semaphore counters and writes them to -Dcarwash.profile.file when profiling is on
+    private static void reportContention() {
+        Semaphore[] semaphores = {mutex, empty, full, pumpSem};
+        SemaphoreProfile[] profiles = new SemaphoreProfile[semaphores.length];
+        for (int i = 0; i < semaphores.length; i++) {
+            profiles[i] = semaphores[i] != null ? semaphores[i].profileSnapshot() : null;
+            if (profiles[i] == null) return;
+            log.message(profiles[i].report());
+        }
+        File file = new File(System.getProperty("carwash.profile.file", "carwash-contention.csv"));
+        try {
+            SemaphoreProfile.writeCsv(file, profiles);
+            log.message("Semaphore contention written to " + file.getAbsolutePath());
+        } catch (IOException e) {
+            log.message("ERROR writing contention profile: " + e.getMessage());
+        }
+    }
+
+    private static void pauseSimulation() {
+        if (simulationRunning && !simulationPaused) {
+            log.message("Simulation PAUSED");
+            pauseActors();
+        }
+    }
+
+    private static void pauseActors() {
+        simulationPaused = true;
+        clock.pause();
+
+        carsPaused.pause();
+
+        // Pause all pumps
         for (int i = 0; i < pumpsCount; i++) {
             if (pumps[i] != null) {
-                pumps[i].stopPump();
+                pumps[i].pausePump();
             }
         }
-        
-        // Interrupt pump threads
-        for (Thread pumpThread : pumpThreads) {
-            if (pumpThread != null) {
-                pumpThread.interrupt();
+        pipeline.pause();
+    }
+
+    private static void resumeSimulation() {
+        if (simulationRunning && simulationPaused) {
+            log.message("Simulation RESUMED");
+            resumeActors();
+        }
+    }
+
+    private static void resumeActors() {
+        simulationPaused = false;
+        clock.resume();
+
+        carsPaused.resume();
+
+        // Resume all pumps
+        for (int i = 0; i < pumpsCount; i++) {
+            if (pumps[i] != null) {
+                pumps[i].resumePump();
             }
         }
+        pipeline.resume();
+    }
+
+    // Freezes the actors just long enough to copy their state; the file is written in the background
+    private static void saveCheckpoint(File file) {
+        if (!simulationRunning) return;
+
+        boolean wasPaused = simulationPaused;
+        if (!wasPaused) {
+            pauseActors();
+        }
+        SimulationSnapshot snapshot;
+        try {
+            snapshot = SimulationSnapshot.capture(waitingCapacity, totalCars, clock.now(),
+                generatedCars, pumps, autoScaling, metrics.withClock(null), arrivals, pipeline);
+        } catch (IOException e) {
+            log.message("ERROR capturing checkpoint: " + e.getMessage());
+            return;
+        } finally {
+            if (!wasPaused) {
+                resumeActors();
+            }
+        }
+
+        Runnable writer = () -> {
+            try {
+                snapshot.writeTo(file);
+                log.message("Checkpoint saved to " + file.getAbsolutePath());
+            } catch (IOException e) {
+                log.message("ERROR saving checkpoint: " + e.getMessage());
+            }
+        };
+        Thread writerThread = new Thread(writer, "CheckpointWriter");
+        writerThread.setDaemon(false); // finish the file even if the user exits right away
+        checkpointWriter = writerThread;
+        writerThread.start();
+    }
+
+    // A stopped run is saved only where checkpoints are in use: an interval or a
+    // file was configured, or the user saved one during the run
+    private static boolean checkpointOnStop() {
+        return checkpointRequested || Integer.getInteger("carwash.checkpoint.interval", 0) > 0 ||
+            System.getProperty("carwash.checkpoint.file") != null;
+    }
+
+    // System.exit does not wait for non-daemon threads, so the last checkpoint is finished first
+    private static void exitAfterCheckpoint() {
+        Thread exit = new Thread(() -> {
+            Thread writer = checkpointWriter;
+            try {
+                if (writer != null) {
+                    writer.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            System.exit(0);
+        }, "Exit");
+        exit.start();
+    }
+
+    // Periodic checkpoints so a crashed run can be resumed (-Dcarwash.checkpoint.interval=seconds)
+    private static void startAutosave() {
+        stopAutosave();
+        int intervalSeconds = Integer.getInteger("carwash.checkpoint.interval", 0);
+        if (intervalSeconds > 0) {
+            autosaveTimer = new Timer(intervalSeconds * 1000, e -> saveCheckpoint(checkpointFile()));
+            autosaveTimer.start();
+        }
+    }
+
+    private static void stopAutosave() {
+        if (autosaveTimer != null) {
+            autosaveTimer.stop();
+            autosaveTimer = null;
+        }
+    }
+
+    private static void stopSimulation() {
+        if (actorStopper != null && actorStopper.isAlive()) return; // already stopping
+        stopAutosave();
+        if (checkpointOnStop()) {
+            saveCheckpoint(checkpointFile());
+        }
+
+        boolean wasRunning = simulationRunning;
+        simulationRunning = false;
+        simulationPaused = false;
         
-        gui.logMessage("Simulation stopped");
-        
-        // Show restart dialog
-        SwingUtilities.invokeLater(() -> {
-            int choice = JOptionPane.showConfirmDialog(null,
-                "Simulation stopped.\nDo you want to restart with new configuration?",
-                "Simulation Stopped",
-                JOptionPane.YES_NO_OPTION);
-            
-            if (choice == JOptionPane.YES_OPTION) {
-                gui.dispose();
-                showConfigurationDialog();
-            } else {
-                System.exit(0);
+        log.message("Stopping simulation...");
+        // Joining the actors can take seconds; the window stays responsive meanwhile
+        actorStopper = new Thread(() -> {
+            stopActors();
+            if (wasRunning && bayScaler != null) {
+                log.message(bayScaler.report());
+                reportStages();
+                reportAppointments();
+                reportScenario();
+                log.message(throttle.report());
+                exportResults();
+                writeTrace();
             }
-        });
+            reportContention();
+
+            log.message("Simulation stopped");
+
+            // Show restart dialog
+            SwingUtilities.invokeLater(() -> {
+                int choice = JOptionPane.showConfirmDialog(null,
+                    "Simulation stopped.\nDo you want to restart with new configuration?",
+                    "Simulation Stopped",
+                    JOptionPane.YES_NO_OPTION);
+
+                if (choice == JOptionPane.YES_OPTION) {
+                    showConfigurationDialog(); // the window is kept and reconfigured by the next run
+                } else {
+                    exitAfterCheckpoint();
+                }
+            });
+        }, "ActorStopper");
+        actorStopper.start();
     }
 
+    // One write to the shared time scale; washes in progress pick it up at once
     private static void updateSimulationSpeed() {
         if (!simulationRunning) return;
         
         int speedFactor = gui.getSpeedFactor();
-        gui.logMessage("Simulation speed set to: " + speedFactor + "x");
-        
-        // Update all cars
-        for (int i = 0; i < totalCars; i++) {
-            if (cars[i] != null) {
-                cars[i].setSpeedFactor(speedFactor);
-            }
-        }
-        
-        // Update all pumps
-        for (int i = 0; i < pumpsCount; i++) {
-            if (pumps[i] != null) {
-                pumps[i].setSpeedFactor(speedFactor);
-            }
+        if (timeScale.set(speedFactor)) {
+            log.message("Simulation speed set to: " + speedFactor + "x");
         }
     }
 }
@@ -0,0 +1,259 @@
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// ----------------------------
+// Sharded Station
+// ----------------------------
+// One station split into shards for machines with many cores. Each shard has
+// its own waiting queue, empty/full/mutex semaphores, bays, producer, time
+// scale and log ring. Car n belongs to shard (n - 1) % shards. A pump waits
+// on its own shard first. Only when nothing arrives there for idleMillis does
+// it look at the other shards, starting with its neighbour, and take a
+// waiting car from the first one that has any. A shard that keeps up
+// therefore never reaches across.
+//
+// What the shards still share is the metrics: per-car slots that only the
+// car's current owner writes, LongAdder counters, the lock-free clock, and
+// the enqueue sequence that keeps FIFO order recoverable (one atomic add per
+// car). A steal also takes the victim's full and mutex semaphores.
+//
+// The JDK cannot pin threads to cores. A shard's threads only work with that
+// shard, which lets the OS keep them together; run the JVM under taskset or
+// numactl to fix the cores it uses.
+//
+// main() is the scalability report. The station stays the same size, cars,
+// waiting slots, bays and cars in flight, and for 1, 2, 4 ... producers, up to
+// one per core, it runs once with them all on one shared queue and once with
+// one shard each. Services are CPU-bound: each scaled millisecond of service
+// is workPerMilli loop iterations (see TimeScale), so the speedup shows how
+// far the cores are used rather than how many waits overlap.
+//
+//   java -Dcarwash.stages=wash:1 ShardedStation [cars] [capacity] [bays] [maxShards] [idleMillis] [workPerMilli]
+class ShardedStation {
+    private static final int SPEED_FACTOR = 2;
+    private static final int MAX_BAYS = 255;        // bays are stored as one byte per car
+
+    static final class Shard {
+        final Queue<Integer> queue = new LinkedList<>();
+        final Semaphore empty, full, mutex, pumpSem;
+        final int bays;
+        final AtomicLong steals = new AtomicLong(); // cars this shard's pumps took from others
+
+        Shard(int capacity, int bays) {
+            this.empty = new Semaphore(capacity);
+            this.full = new Semaphore(0);
+            this.mutex = new Semaphore(1);
+            this.pumpSem = new Semaphore(bays);
+            this.bays = bays;
+        }
+    }
+
+    private final Shard[] shards;
+    private final long idleMillis;
+
+    // Spreads capacity slots and bays over the shards; the first shards get the remainders
+    ShardedStation(int shardCount, int capacity, int bays, long idleMillis) {
+        if (bays < shardCount) {
+            throw new IllegalArgumentException(shardCount + " shards need at least as many bays, not " + bays);
+        }
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(Math.max(1, share(capacity, shardCount, i)), share(bays, shardCount, i));
+        }
+        this.idleMillis = Math.max(1, idleMillis);
+    }
+
+    private static int share(int total, int parts, int index) {
+        return total / parts + (index < total % parts ? 1 : 0);
+    }
+
+    Shard shard(int index) {
+        return shards[index];
+    }
+
+    int shardOf(int carId) {
+        return (carId - 1) % shards.length;
+    }
+
+    // Called by a pump instead of full.waitSem(). Returns 0 once a permit of its own
+    // shard was taken, or a car it already took out of another shard's queue and
+    // reported as picked up while that queue's mutex was held.
+    int nextCar(Pump pump, int shard, Semaphore full) throws InterruptedException {
+        while (true) {
+            if (full.waitSem(idleMillis)) {
+                return 0;
+            }
+            int carId = steal(pump, shard);
+            if (carId > 0) {
+                return carId;
+            }
+        }
+    }
+
+    private int steal(Pump pump, int thief) throws InterruptedException {
+        for (int step = 1; step < shards.length; step++) {
+            Shard victim = shards[(thief + step) % shards.length];
+            if (victim.full.permits() == 0 || !victim.full.tryWaitSem()) {
+                continue;
+            }
+            victim.mutex.waitSem();
+            Integer carId = victim.queue.poll();
+            if (carId == null) {
+                victim.mutex.signalSem();
+                continue;
+            }
+            pump.pickedUp(carId, victim.queue); // shows the victim's queue, which needs its mutex
+            victim.mutex.signalSem();
+            victim.empty.signalSem();
+            shards[thief].steals.incrementAndGet();
+            return carId;
+        }
+        return 0;
+    }
+
+    long steals() {
+        long total = 0;
+        for (Shard shard : shards) {
+            total += shard.steals.get();
+        }
+        return total;
+    }
+
+    // ---- scalability report ----
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int cars = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 16 * cores;
+        int bays = args.length > 2 ? Integer.parseInt(args[2]) : Math.min(MAX_BAYS, 2 * cores);
+        int maxShards = args.length > 3 ? Integer.parseInt(args[3]) : cores;
+        long idleMillis = args.length > 4 ? Long.parseLong(args[4]) : 2;
+        long workPerMilli = args.length > 5 ? Long.parseLong(args[5]) : 10_000;
+        if (bays > MAX_BAYS) {
+            bays = MAX_BAYS;
+            System.out.println("Capped at " + MAX_BAYS + " bays in one station");
+        }
+        if (maxShards > bays) {
+            maxShards = bays;
+            System.out.println("Capped at " + maxShards + " shards: every shard needs a bay");
+        }
+        String stageSpec = ServicePipeline.configuredSpec();
+        int inFlight = Integer.getInteger("carwash.arrivals.maxInFlight", 256);
+        System.out.println("Station: " + cars + " cars, " + capacity + " waiting slots, " + bays + " bays, " +
+            inFlight + " cars in flight; stages " + stageSpec + ", " + workPerMilli +
+            " iterations per service millisecond; " + cores + " cores");
+        System.out.printf("%6s %16s %16s %8s %8s%n", "Shards", "Shared (cars/s)", "Sharded (cars/s)",
+            "Speedup", "Steals");
+
+        double baseline = 0;
+        for (int count = 1; count <= maxShards; count = count < maxShards && count * 2 > maxShards ? maxShards : count * 2) {
+            Run shared = run(1, count, capacity, bays, cars, stageSpec, inFlight, idleMillis, workPerMilli);
+            Run sharded = run(count, count, capacity, bays, cars, stageSpec, inFlight, idleMillis, workPerMilli);
+            if (count == 1) {
+                baseline = sharded.carsPerSecond;
+            }
+            System.out.printf("%6d %16.0f %16.0f %7.2fx %8d%n", count, shared.carsPerSecond,
+                sharded.carsPerSecond, sharded.carsPerSecond / baseline, sharded.steals);
+            if (count == maxShards) break;
+        }
+    }
+
+    static final class Run {
+        final double carsPerSecond;
+        final long steals;
+
+        Run(double carsPerSecond, long steals) {
+            this.carsPerSecond = carsPerSecond;
+            this.steals = steals;
+        }
+    }
+
+    // One headless run of the whole station: shardCount queues, and `producers`
+    // generators sharing inFlight cars, one per shard or all on the one queue
+    static Run run(int shardCount, int producers, int capacity, int bays, int cars, String stageSpec,
+                   int inFlight, long idleMillis, long workPerMilli) throws InterruptedException {
+        ShardedStation station = new ShardedStation(shardCount, capacity, bays, idleMillis);
+        SimulationClock clock = new SimulationClock(0);
+        SimulationMetrics metrics = new SimulationMetrics(cars, clock);
+        SimulationView view = new HeadlessView();
+
+        SimulationLogger[] logs = new SimulationLogger[shardCount];
+        ServicePipeline[] pipelines = new ServicePipeline[shardCount];
+        Pump[] pumps = new Pump[bays];
+        int bayId = 0;
+        for (int s = 0; s < shardCount; s++) {
+            Shard shard = station.shard(s);
+            TimeScale timeScale = new TimeScale(SPEED_FACTOR, workPerMilli);
+            logs[s] = new SimulationLogger(1 << 14); // no sinks: records are dropped unformatted
+            pipelines[s] = ServicePipeline.create(stageSpec, shard.bays, null, timeScale, null, clock, view, logs[s],
+                metrics);
+            pipelines[s].start();
+            for (int b = 0; b < shard.bays; b++) {
+                bayId++;
+                Pump pump = new Pump(bayId, shard.queue, shard.empty, shard.full, shard.mutex, shard.pumpSem,
+                    timeScale, view, logs[s], metrics);
+                pump.setPipeline(pipelines[s]);
+                if (shardCount > 1) {
+                    pump.setShards(station, s);
+                }
+                pump.setName("Shard-" + s + "-Pump-" + bayId);
+                pump.setDaemon(true);
+                pumps[bayId - 1] = pump;
+            }
+        }
+        for (Pump pump : pumps) {
+            pump.start();
+        }
+
+        long startNanos = System.nanoTime();
+        Thread[] generators = new Thread[producers];
+        ExecutorService[] carThreads = new ExecutorService[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p, s = p % shardCount;
+            Shard shard = station.shard(s);
+            SimulationLogger log = logs[s];
+            int permits = Math.max(1, share(inFlight, producers, p));
+            ArrivalThrottle throttle = new ArrivalThrottle(0, 1, permits);
+            carThreads[p] = Executors.newFixedThreadPool(permits, r -> {
+                Thread thread = new Thread(r, "Shard-" + s + "-Car");
+                thread.setDaemon(true);
+                return thread;
+            });
+            generators[p] = new Thread(() -> {
+                try {
+                    for (int carId = producer + 1; carId <= cars; carId += producers) {
+                        throttle.acquire();
+                        carThreads[producer].execute(throttle.track(
+                            new Car(carId, shard.queue, shard.empty, shard.full, shard.mutex, view, log, metrics)));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "Shard-" + s + "-Generator");
+            generators[p].start();
+        }
+        while (metrics.getCarsProcessed() < cars) {
+            Thread.sleep(2);
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        for (Pump pump : pumps) {
+            pump.stopPump();
+        }
+        for (ServicePipeline pipeline : pipelines) {
+            pipeline.stop();
+        }
+        for (ExecutorService pool : carThreads) {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        for (SimulationLogger log : logs) {
+            log.close();
+        }
+        return new Run(cars / (elapsedNanos / 1e9), station.steals());
+    }
+}
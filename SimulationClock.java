@@ -0,0 +1,47 @@
+// ----------------------------
+// Simulation Clock
+// ----------------------------
+// Simulated milliseconds since the run started. Time does not advance while
+// the simulation is paused, and a restored run continues from the time stored
+// in its checkpoint. Every car and pump reads the clock on each transition,
+// so now() takes no lock: pause and resume publish the paused state as one
+// immutable value.
+class SimulationClock {
+    private final long offsetMillis;
+    private final long startNanos;
+    private volatile Paused paused = new Paused(-1, 0);
+
+    private static final class Paused {
+        final long atNanos;     // -1 while running
+        final long totalNanos;
+
+        Paused(long atNanos, long totalNanos) {
+            this.atNanos = atNanos;
+            this.totalNanos = totalNanos;
+        }
+    }
+
+    public SimulationClock(long offsetMillis) {
+        this.offsetMillis = offsetMillis;
+        this.startNanos = System.nanoTime();
+    }
+
+    public long now() {
+        Paused state = paused;
+        long current = state.atNanos >= 0 ? state.atNanos : System.nanoTime();
+        return offsetMillis + (current - startNanos - state.totalNanos) / 1_000_000L;
+    }
+
+    public synchronized void pause() {
+        if (paused.atNanos < 0) {
+            paused = new Paused(System.nanoTime(), paused.totalNanos);
+        }
+    }
+
+    public synchronized void resume() {
+        Paused state = paused;
+        if (state.atNanos >= 0) {
+            paused = new Paused(-1, state.totalNanos + System.nanoTime() - state.atNanos);
+        }
+    }
+}
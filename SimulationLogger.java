@@ -0,0 +1,197 @@
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// ----------------------------
+// Asynchronous Simulation Logger
+// ----------------------------
+// Worker threads only copy a few primitives into a pre-allocated ring buffer.
+// A single background consumer turns the records into text and hands them to
+// the sinks in batches, so Car and Pump threads never format strings or touch
+// the EDT just to log.
+class SimulationLogger {
+    private static final int MAX_BATCH = 512;
+    private static final java.time.format.DateTimeFormatter TIMESTAMP_FORMAT =
+        java.time.format.DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private final int capacity;
+    private final int mask;
+    private final long[] times;
+    private final int[] types;
+    private final int[] carIds;
+    private final int[] pumpIds;
+    private final int[] queueSizes;
+    private final String[] texts;
+    private final AtomicLongArray published; // sequence stored in a slot once its record is complete
+
+    private final AtomicLong nextSequence = new AtomicLong();
+    private volatile long consumedSequence = 0;
+    private volatile boolean running = true;
+
+    private final CopyOnWriteArrayList<LogSink> sinks = new CopyOnWriteArrayList<>();
+    private volatile FlightRecorder recorder;  // also gets every event but messages; null when tracing is off
+    private final Thread consumer;
+
+    // consumer-only formatting state
+    private final StringBuilder line = new StringBuilder(128);
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedTimestamp = "";
+
+    public SimulationLogger(int capacity) {
+        int size = Integer.highestOneBit(Math.max(64, capacity - 1) << 1);
+        this.capacity = size;
+        this.mask = size - 1;
+        this.times = new long[size];
+        this.types = new int[size];
+        this.carIds = new int[size];
+        this.pumpIds = new int[size];
+        this.queueSizes = new int[size];
+        this.texts = new String[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+
+        consumer = new Thread(this::drainLoop, "SimulationLogger");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    public void addSink(LogSink sink) {
+        sinks.add(sink);
+    }
+
+    public void removeSink(LogSink sink) {
+        sinks.remove(sink);
+    }
+
+    public void setRecorder(FlightRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public void event(LogEvent type, int carId, int pumpId, int queueSize) {
+        publish(type, carId, pumpId, queueSize, null);
+    }
+
+    public void event(LogEvent type, int carId, String text) { // text is a constant such as a stage name
+        publish(type, carId, 0, 0, text);
+    }
+
+    public void message(String text) {
+        publish(LogEvent.MESSAGE, 0, 0, 0, text);
+    }
+
+    private void publish(LogEvent type, int carId, int pumpId, int queueSize, String text) {
+        FlightRecorder trace = recorder;
+        if (trace != null && type != LogEvent.MESSAGE) {
+            trace.record(type.ordinal(), carId, pumpId, queueSize);
+        }
+        if (!running) {
+            return; // closed: nobody will drain the record, so it is dropped
+        }
+        long sequence = nextSequence.getAndIncrement();
+        while (sequence - consumedSequence >= capacity) { // ring is full: wait for the consumer instead of growing
+            if (!consumer.isAlive()) {
+                return; // closed while this record waited for room
+            }
+            LockSupport.unpark(consumer);
+            Thread.yield();
+        }
+        int slot = (int) (sequence & mask);
+        times[slot] = System.currentTimeMillis();
+        types[slot] = type.ordinal();
+        carIds[slot] = carId;
+        pumpIds[slot] = pumpId;
+        queueSizes[slot] = queueSize;
+        texts[slot] = text;
+        published.lazySet(slot, sequence);
+    }
+
+    private void drainLoop() {
+        while (running || consumedSequence < nextSequence.get()) {
+            int drained = drainBatch();
+            if (drained > 0) {
+                flushSinks();
+            } else if (running) {
+                LockSupport.parkNanos(2_000_000L);
+            } else {
+                Thread.yield(); // a producer claimed a slot but has not published it yet
+            }
+        }
+        flushSinks();
+    }
+
+    private int drainBatch() {
+        int drained = 0;
+        long sequence = consumedSequence;
+        while (drained < MAX_BATCH) {
+            int slot = (int) (sequence & mask);
+            if (published.get(slot) != sequence) {
+                break;
+            }
+            dispatch(slot);
+            texts[slot] = null;
+            sequence++;
+            drained++;
+            consumedSequence = sequence;
+        }
+        return drained;
+    }
+
+    private void dispatch(int slot) {
+        if (sinks.isEmpty()) {
+            return; // nobody listening: the record is dropped without ever being formatted
+        }
+        line.setLength(0);
+        line.append('[').append(timestamp(times[slot])).append("] ");
+        LogEvent.of(types[slot]).appendTo(line, carIds[slot], pumpIds[slot], queueSizes[slot], texts[slot]);
+        for (LogSink sink : sinks) {
+            try {
+                sink.write(line);
+            } catch (IOException e) {
+                System.err.println("Error writing log: " + e.getMessage());
+            }
+        }
+    }
+
+    private String timestamp(long millis) {
+        long second = millis / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedTimestamp = java.time.Instant.ofEpochMilli(millis)
+                .atZone(java.time.ZoneId.systemDefault())
+                .format(TIMESTAMP_FORMAT);
+        }
+        return cachedTimestamp;
+    }
+
+    private void flushSinks() {
+        for (LogSink sink : sinks) {
+            try {
+                sink.flush();
+            } catch (IOException e) {
+                System.err.println("Error flushing log: " + e.getMessage());
+            }
+        }
+    }
+
+    // Drains everything that was logged so far and closes the sinks; later records are dropped
+    public void close() {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (LogSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                System.err.println("Error closing log: " + e.getMessage());
+            }
+        }
+    }
+}
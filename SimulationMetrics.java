@@ -0,0 +1,273 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// ----------------------------
+// Simulation Metrics
+// ----------------------------
+// Per-car lifecycle timestamps (simulation clock millis, -1 = not reached yet)
+// indexed by carId - 1. Each car is only moved forward by the thread that
+// currently owns it, so the arrays need no locking; readers such as the
+// checkpoint writer may observe a car one transition behind. The counters
+// are LongAdders: every car bumps several of them, and with many cores (see
+// ShardedStation) one atomic word would be the cache line every pump and
+// car fights over. Reads add up the cells, which is fine for progress.
+class SimulationMetrics {
+    private final SimulationClock clock;
+    private final byte[] states;
+    private final long[] arrivalTimes;
+    private final long[] queueTimes;
+    private final long[] pickupTimes;
+    private final long[] serviceStartTimes;
+    private final long[] finishTimes;
+    private final int[] bays;
+    private final long[] queueOrder; // enqueue sequence, keeps FIFO order recoverable
+    private final AtomicLong queueSequence = new AtomicLong();
+    private final LongAdder carsProcessed = new LongAdder();
+    private final LongAdder carsQueued = new LongAdder();
+    private final LongAdder carsPickedUp = new LongAdder();
+    private final LongAdder carsLost = new LongAdder();
+    private final LongAdder totalWaitMillis = new LongAdder();
+    private final AtomicLong maxWaitMillis = new AtomicLong(); // only written when a wait beats it
+    private final AtomicReference<Runnable> firstArrivalListener = new AtomicReference<>(); // fired once, by the first car that arrives
+
+    public SimulationMetrics(int totalCars, SimulationClock clock) {
+        this.clock = clock;
+        this.states = new byte[totalCars];
+        this.arrivalTimes = filled(totalCars);
+        this.queueTimes = filled(totalCars);
+        this.pickupTimes = filled(totalCars);
+        this.serviceStartTimes = filled(totalCars);
+        this.finishTimes = filled(totalCars);
+        this.bays = new int[totalCars];
+        this.queueOrder = new long[totalCars];
+    }
+
+    private static long[] filled(int size) {
+        long[] values = new long[size];
+        Arrays.fill(values, -1);
+        return values;
+    }
+
+    public int getTotalCars() {
+        return states.length;
+    }
+
+    public void carArrived(int carId) {
+        int i = carId - 1;
+        if (arrivalTimes[i] < 0) {
+            arrivalTimes[i] = clock.now();
+        }
+        states[i] = (byte) CarState.ARRIVED.ordinal();
+        if (firstArrivalListener.get() != null) {
+            Runnable listener = firstArrivalListener.getAndSet(null);
+            if (listener != null) {
+                listener.run();
+            }
+        }
+    }
+
+    public void setFirstArrivalListener(Runnable listener) {
+        firstArrivalListener.set(listener);
+    }
+
+    public void carQueued(int carId) { // called while holding the queue mutex
+        int i = carId - 1;
+        queueTimes[i] = clock.now();
+        queueOrder[i] = queueSequence.incrementAndGet();
+        states[i] = (byte) CarState.IN_QUEUE.ordinal();
+        carsQueued.increment();
+    }
+
+    public void carPickedUp(int carId, int bay) {
+        int i = carId - 1;
+        pickupTimes[i] = clock.now();
+        bays[i] = bay;
+        states[i] = (byte) CarState.AT_PUMP.ordinal();
+        carsPickedUp.increment();
+
+        long wait = Math.max(0, pickupTimes[i] - queueTimes[i]);
+        totalWaitMillis.add(wait);
+        long max;
+        while (wait > (max = maxWaitMillis.get()) && !maxWaitMillis.compareAndSet(max, wait)) {
+            // retry
+        }
+    }
+
+    public void serviceStarted(int carId) {
+        int i = carId - 1;
+        if (serviceStartTimes[i] < 0) {
+            serviceStartTimes[i] = clock.now();
+        }
+        states[i] = (byte) CarState.WASHING.ordinal();
+    }
+
+    public void serviceFinished(int carId) {
+        int i = carId - 1;
+        finishTimes[i] = clock.now();
+        states[i] = (byte) CarState.FINISHED.ordinal();
+        carsProcessed.increment();
+    }
+
+    // The car found no free waiting slot and left without service
+    public void carLost(int carId) {
+        states[carId - 1] = (byte) CarState.LOST.ordinal();
+        carsLost.increment();
+    }
+
+    public CarState getState(int carId) {
+        return CarState.of(states[carId - 1]);
+    }
+
+    public int getBay(int carId) {
+        return bays[carId - 1];
+    }
+
+    // Lifecycle times in clock millis, -1 until the car gets there
+    public long getArrivalTime(int carId) {
+        return arrivalTimes[carId - 1];
+    }
+
+    public long getQueueTime(int carId) {
+        return queueTimes[carId - 1];
+    }
+
+    public long getPickupTime(int carId) {
+        return pickupTimes[carId - 1];
+    }
+
+    public long getServiceStartTime(int carId) {
+        return serviceStartTimes[carId - 1];
+    }
+
+    public long getFinishTime(int carId) {
+        return finishTimes[carId - 1];
+    }
+
+    // Lifecycle time by ResultsExport column: arrival, enqueue, pickup, service start, finish
+    long getTime(int column, int carId) {
+        switch (column) {
+            case 0: return getArrivalTime(carId);
+            case 1: return getQueueTime(carId);
+            case 2: return getPickupTime(carId);
+            case 3: return getServiceStartTime(carId);
+            case 4: return getFinishTime(carId);
+            default: throw new IllegalArgumentException("No time column " + column);
+        }
+    }
+
+    public long getQueueOrder(int carId) {
+        return queueOrder[carId - 1];
+    }
+
+    public int getCarsProcessed() {
+        return carsProcessed.intValue();
+    }
+
+    public int getQueueLength() {
+        return Math.max(0, carsQueued.intValue() - carsPickedUp.intValue()); // two sums, not one snapshot
+    }
+
+    public int getCarsPickedUp() {
+        return carsPickedUp.intValue();
+    }
+
+    public int getCarsLost() {
+        return carsLost.intValue();
+    }
+
+    // Total time cars spent in the waiting area before a pump took them
+    public long getTotalWaitMillis() {
+        return totalWaitMillis.sum();
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis.get();
+    }
+
+    // Time this car spent in the waiting area, -1 until a pump has taken it
+    public long getWaitMillis(int carId) {
+        int i = carId - 1;
+        return pickupTimes[i] < 0 ? -1 : Math.max(0, pickupTimes[i] - queueTimes[i]);
+    }
+
+    // ----- checkpoint support -----
+
+    void writeTo(java.io.DataOutputStream out) throws java.io.IOException {
+        out.writeInt(states.length);
+        out.write(states);
+        for (int i = 0; i < states.length; i++) {
+            out.writeLong(arrivalTimes[i]);
+            out.writeLong(queueTimes[i]);
+            out.writeLong(pickupTimes[i]);
+            out.writeLong(serviceStartTimes[i]);
+            out.writeLong(finishTimes[i]);
+            out.writeByte(bays[i]);
+            out.writeLong(queueOrder[i]);
+        }
+        out.writeLong(queueSequence.get());
+        out.writeInt(carsProcessed.intValue());
+        out.writeInt(carsQueued.intValue());
+        out.writeInt(carsPickedUp.intValue());
+        out.writeLong(totalWaitMillis.sum());
+        out.writeLong(maxWaitMillis.get());
+    }
+
+    static SimulationMetrics readFrom(java.io.DataInputStream in) throws java.io.IOException { // attach a clock with withClock()
+        int totalCars = in.readInt();
+        SimulationMetrics metrics = new SimulationMetrics(totalCars, null);
+        in.readFully(metrics.states);
+        for (int i = 0; i < totalCars; i++) {
+            metrics.arrivalTimes[i] = in.readLong();
+            metrics.queueTimes[i] = in.readLong();
+            metrics.pickupTimes[i] = in.readLong();
+            metrics.serviceStartTimes[i] = in.readLong();
+            metrics.finishTimes[i] = in.readLong();
+            metrics.bays[i] = in.readUnsignedByte();
+            metrics.queueOrder[i] = in.readLong();
+        }
+        metrics.queueSequence.set(in.readLong());
+        set(metrics.carsProcessed, in.readInt());
+        set(metrics.carsQueued, in.readInt());
+        set(metrics.carsPickedUp, in.readInt());
+        set(metrics.totalWaitMillis, in.readLong());
+        metrics.maxWaitMillis.set(in.readLong());
+        int lost = 0;
+        for (byte state : metrics.states) {
+            if (state == CarState.LOST.ordinal()) lost++;
+        }
+        set(metrics.carsLost, lost); // not stored: lost cars keep their state
+        return metrics;
+    }
+
+    // Copy sharing the checkpointed history but driven by the clock of the resumed run
+    SimulationMetrics withClock(SimulationClock newClock) {
+        SimulationMetrics copy = new SimulationMetrics(states.length, newClock);
+        System.arraycopy(states, 0, copy.states, 0, states.length);
+        System.arraycopy(arrivalTimes, 0, copy.arrivalTimes, 0, states.length);
+        System.arraycopy(queueTimes, 0, copy.queueTimes, 0, states.length);
+        System.arraycopy(pickupTimes, 0, copy.pickupTimes, 0, states.length);
+        System.arraycopy(serviceStartTimes, 0, copy.serviceStartTimes, 0, states.length);
+        System.arraycopy(finishTimes, 0, copy.finishTimes, 0, states.length);
+        System.arraycopy(bays, 0, copy.bays, 0, states.length);
+        System.arraycopy(queueOrder, 0, copy.queueOrder, 0, states.length);
+        copy.queueSequence.set(queueSequence.get());
+        set(copy.carsProcessed, carsProcessed.intValue());
+        set(copy.carsQueued, carsQueued.intValue());
+        set(copy.carsPickedUp, carsPickedUp.intValue());
+        set(copy.carsLost, carsLost.intValue());
+        set(copy.totalWaitMillis, totalWaitMillis.sum());
+        copy.maxWaitMillis.set(maxWaitMillis.get());
+        return copy;
+    }
+
+    private static void set(LongAdder counter, long value) { // only before the metrics are shared
+        counter.reset();
+        counter.add(value);
+    }
+
+    void setState(int carId, CarState state) { // used when a checkpoint is re-sequenced on restore
+        states[carId - 1] = (byte) state.ordinal();
+    }
+}
@@ -0,0 +1,265 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// ----------------------------
+// Simulation Checkpoint
+// ----------------------------
+// Everything needed to continue a run: configuration, clock, how many cars
+// the generator already released, per-car lifecycle metrics and what each
+// pump and later service stage was doing. Stored as a deflated binary file.
+class SimulationSnapshot {
+    private static final int MAGIC = 0x43575331; // "CWS1"
+    private static final int VERSION = 1;
+
+    final int waitingCapacity;
+    final int pumpsCount;
+    final int totalCars;
+    final long clockMillis;
+    final int generatedCars;
+    final int[] pumpCarIds;        // 0 = idle
+    final int[] pumpProgress;      // wash progress in permille
+    final boolean[] pumpOpen;      // bays closed by the autoscaler stay closed
+    final boolean autoScaling;
+    final SimulationMetrics metrics;
+    final String tracePath;        // arrival trace being replayed, null for synthetic arrivals
+    final String scenarioPath;     // scenario file of the run, null without one
+    final byte[] arrivalState;     // position of the arrival source inside the trace or scenario
+    final String stageSpec;        // service pipeline of the run, see ServicePipeline
+    final List<List<Integer>> stageCarIds; // per stage after the bays, the cars it held; they restart that stage
+
+    SimulationSnapshot(int waitingCapacity, int pumpsCount, int totalCars, long clockMillis,
+                       int generatedCars, int[] pumpCarIds, int[] pumpProgress, boolean[] pumpOpen,
+                       boolean autoScaling, SimulationMetrics metrics, String tracePath, String scenarioPath,
+                       byte[] arrivalState, String stageSpec, List<List<Integer>> stageCarIds) {
+        this.waitingCapacity = waitingCapacity;
+        this.pumpsCount = pumpsCount;
+        this.totalCars = totalCars;
+        this.clockMillis = clockMillis;
+        this.generatedCars = generatedCars;
+        this.pumpCarIds = pumpCarIds;
+        this.pumpProgress = pumpProgress;
+        this.pumpOpen = pumpOpen;
+        this.autoScaling = autoScaling;
+        this.metrics = metrics;
+        this.tracePath = tracePath;
+        this.scenarioPath = scenarioPath;
+        this.arrivalState = arrivalState;
+        this.stageSpec = stageSpec;
+        this.stageCarIds = stageCarIds;
+    }
+
+    // Take while the simulation is paused so pumps and cars stand still
+    static SimulationSnapshot capture(int waitingCapacity, int totalCars, long clockMillis,
+                                      int generatedCars, Pump[] pumps, boolean autoScaling,
+                                      SimulationMetrics metrics, ArrivalSource arrivals,
+                                      ServicePipeline pipeline) throws IOException {
+        List<List<Integer>> stageCarIds = pipeline.carIds();
+        int[] carIds = new int[pumps.length];
+        int[] progress = new int[pumps.length];
+        boolean[] open = new boolean[pumps.length];
+        for (int i = 0; i < pumps.length; i++) {
+            carIds[i] = pumps[i].getCurrentCarId();
+            if (inStage(stageCarIds, carIds[i])) {
+                carIds[i] = 0; // already handed on to the next stage
+            }
+            progress[i] = carIds[i] > 0 ? pumps[i].getWashProgress() : 0;
+            open[i] = pumps[i].isOpen();
+        }
+        String tracePath = null;
+        String scenarioPath = null;
+        byte[] arrivalState = new byte[0];
+        if (arrivals instanceof TraceArrivalSource || arrivals instanceof PlanRun) {
+            if (arrivals instanceof TraceArrivalSource) {
+                tracePath = ((TraceArrivalSource) arrivals).getFile().getAbsolutePath();
+            } else {
+                scenarioPath = ((PlanRun) arrivals).plan.path;
+            }
+            ByteArrayOutputStream state = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(state)) {
+                arrivals.writeState(out);
+            }
+            arrivalState = state.toByteArray();
+        }
+        return new SimulationSnapshot(waitingCapacity, pumps.length, totalCars, clockMillis,
+            generatedCars, carIds, progress, open, autoScaling, metrics, tracePath, scenarioPath, arrivalState,
+            pipeline.spec, stageCarIds);
+    }
+
+    private static boolean inStage(List<List<Integer>> stageCarIds, int carId) {
+        for (List<Integer> cars : stageCarIds) {
+            if (cars.contains(carId)) return true;
+        }
+        return false;
+    }
+
+    // Recreates the arrival source positioned where the checkpointed run left off
+    ArrivalSource restoreArrivals(double traceSpeedup) throws IOException {
+        ArrivalSource arrivals;
+        if (scenarioPath != null) {
+            RunPlan plan = RunPlan.compile(new File(scenarioPath));
+            arrivals = plan.start(plan.seed);
+        } else if (tracePath != null) {
+            arrivals = new TraceArrivalSource(new File(tracePath), traceSpeedup);
+        } else {
+            return new FixedIntervalArrivals();
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(arrivalState))) {
+            arrivals.readState(in);
+        }
+        return arrivals;
+    }
+
+    // Cars that were waiting in the queue, in their original FIFO order
+    List<Integer> queuedCars() {
+        List<Integer> queued = new ArrayList<>();
+        for (int carId = 1; carId <= totalCars; carId++) {
+            if (metrics.getState(carId) == CarState.IN_QUEUE && !isAtPump(carId)) {
+                queued.add(carId);
+            }
+        }
+        queued.sort(Comparator.comparingLong(metrics::getQueueOrder));
+        return queued;
+    }
+
+    // Generated cars that still have to (re-)enter the waiting area
+    List<Integer> arrivingCars() {
+        List<Integer> arriving = new ArrayList<>();
+        for (int carId = 1; carId <= generatedCars; carId++) {
+            CarState state = metrics.getState(carId);
+            boolean lostFromPump = (state == CarState.AT_PUMP || state == CarState.WASHING) &&
+                !isAtPump(carId) && !inStage(stageCarIds, carId);
+            if (state == CarState.NOT_ARRIVED || state == CarState.ARRIVED || lostFromPump) {
+                arriving.add(carId);
+            }
+        }
+        return arriving;
+    }
+
+    private boolean isAtPump(int carId) {
+        for (int pumpCarId : pumpCarIds) {
+            if (pumpCarId == carId) return true;
+        }
+        return false;
+    }
+
+    public void writeTo(File file) throws IOException {
+        File tmp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new DeflaterOutputStream(new FileOutputStream(tmp))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(waitingCapacity);
+            out.writeInt(pumpsCount);
+            out.writeInt(totalCars);
+            out.writeLong(clockMillis);
+            out.writeInt(generatedCars);
+            for (int i = 0; i < pumpsCount; i++) {
+                out.writeInt(pumpCarIds[i]);
+                out.writeShort(pumpProgress[i]);
+                out.writeBoolean(pumpOpen[i]);
+            }
+            out.writeBoolean(autoScaling);
+            metrics.writeTo(out);
+            out.writeBoolean(tracePath != null);
+            if (tracePath != null) {
+                out.writeUTF(tracePath);
+                out.writeInt(arrivalState.length);
+                out.write(arrivalState);
+            }
+            out.writeUTF(stageSpec);
+            out.writeInt(stageCarIds.size());
+            for (List<Integer> cars : stageCarIds) {
+                out.writeInt(cars.size());
+                for (int carId : cars) {
+                    out.writeInt(carId);
+                }
+            }
+            out.writeBoolean(scenarioPath != null);
+            if (scenarioPath != null) {
+                out.writeUTF(scenarioPath);
+                out.writeInt(arrivalState.length);
+                out.write(arrivalState);
+            }
+        }
+        // One rename over the old file: a crash leaves either the old or the new checkpoint
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static SimulationSnapshot readFrom(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file.getName() + " is not a simulation checkpoint");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version);
+            }
+            int waitingCapacity = in.readInt();
+            int pumpsCount = in.readInt();
+            int totalCars = in.readInt();
+            long clockMillis = in.readLong();
+            int generatedCars = in.readInt();
+            int[] carIds = new int[pumpsCount];
+            int[] progress = new int[pumpsCount];
+            boolean[] open = new boolean[pumpsCount];
+            for (int i = 0; i < pumpsCount; i++) {
+                carIds[i] = in.readInt();
+                progress[i] = in.readShort();
+                open[i] = in.readBoolean();
+            }
+            boolean autoScaling = in.readBoolean();
+            SimulationMetrics metrics = SimulationMetrics.readFrom(in);
+            if (metrics.getTotalCars() != totalCars) {
+                throw new IOException("Corrupt checkpoint: car table does not match configuration");
+            }
+            String tracePath = null;
+            byte[] arrivalState = new byte[0];
+            if (in.readBoolean()) {
+                tracePath = in.readUTF();
+                arrivalState = new byte[in.readInt()];
+                in.readFully(arrivalState);
+            }
+            String stageSpec = in.readUTF();
+            List<List<Integer>> stageCarIds = new ArrayList<>();
+            int stages = in.readInt();
+            for (int s = 0; s < stages; s++) {
+                List<Integer> cars = new ArrayList<>();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    cars.add(in.readInt());
+                }
+                stageCarIds.add(cars);
+            }
+            String scenarioPath = null;
+            if (in.readBoolean()) {
+                scenarioPath = in.readUTF();
+                arrivalState = new byte[in.readInt()];
+                in.readFully(arrivalState);
+            }
+            return new SimulationSnapshot(waitingCapacity, pumpsCount, totalCars, clockMillis,
+                generatedCars, carIds, progress, open, autoScaling, metrics, tracePath, scenarioPath, arrivalState,
+                stageSpec, stageCarIds);
+        }
+    }
+}
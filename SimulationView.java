@@ -0,0 +1,18 @@
+import java.util.Queue;
+
+// ----------------------------
+// Simulation View (GUI or headless)
+// ----------------------------
+// What Car, Pump and BayScaler report to. SimulationGUI draws it; HeadlessView
+// drops it, so the same actor code also runs without a display.
+interface SimulationView {
+    void updateQueueDisplay(Queue<Integer> queue); // called while holding the queue mutex
+
+    void updatePumpStatus(int pumpId, int carId, boolean occupied);
+
+    void updatePumpOpen(int pumpId, boolean open, boolean busy);
+
+    void updateOpenBays(int openBays, int totalBays, String staffing);
+
+    void updateCarStatus(int carId, CarState state);
+}
@@ -0,0 +1,50 @@
+// ----------------------------
+// Stage Statistics
+// ----------------------------
+// Utilization of one service stage, in simulation time. A server is busy
+// while it works on a car, and blocked while a finished car waits for room
+// in the next stage. The stage with the highest busy share is the bottleneck.
+class StageStats {
+    final String name;
+    final int servers;
+    private final SimulationClock clock;
+    private long processed;
+    private long busyMillis;
+    private long blockedMillis;
+
+    StageStats(String name, int servers, SimulationClock clock) {
+        this.name = name;
+        this.servers = servers;
+        this.clock = clock;
+    }
+
+    long now() {
+        return clock.now();
+    }
+
+    // One car: service from start to done, then blocked until it left at leftAt
+    synchronized void served(long start, long done, long leftAt) {
+        processed++;
+        busyMillis += Math.max(0, done - start);
+        blockedMillis += Math.max(0, leftAt - done);
+    }
+
+    synchronized long getProcessed() {
+        return processed;
+    }
+
+    // Share of the servers' time spent working, 0..1
+    synchronized double utilization(long elapsedMillis) {
+        return elapsedMillis <= 0 ? 0 : (double) busyMillis / (servers * (double) elapsedMillis);
+    }
+
+    synchronized double blockedShare(long elapsedMillis) {
+        return elapsedMillis <= 0 ? 0 : (double) blockedMillis / (servers * (double) elapsedMillis);
+    }
+
+    synchronized String report(long elapsedMillis) {
+        return String.format("Stage %-8s %2d server(s): %d cars, busy %.1f%%, blocked %.1f%%, mean service %.1fs",
+            name, servers, processed, utilization(elapsedMillis) * 100, blockedShare(elapsedMillis) * 100,
+            processed == 0 ? 0.0 : busyMillis / 1000.0 / processed);
+    }
+}
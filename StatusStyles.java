@@ -0,0 +1,86 @@
+import java.awt.Color;
+import java.awt.Font;
+import javax.swing.BorderFactory;
+import javax.swing.JComponent;
+import javax.swing.border.Border;
+
+// ----------------------------
+// Status Styles
+// ----------------------------
+// Every color, border and font a status update can ask for, built once.
+// Views look car styles up by CarState and use the slot and bay styles below,
+// so an update on the EDT only swaps references. apply() also skips setters
+// whose value is already shown: Swing repaints, and for borders revalidates,
+// on every set.
+final class StatusStyles {
+
+    static final class Style {
+        final Color background, foreground;
+        final Border border;               // null leaves the component's border alone
+
+        Style(Color background, Color foreground, Border border) {
+            this.background = background;
+            this.foreground = foreground;
+            this.border = border;
+        }
+
+        void apply(JComponent component) {
+            if (component.getBackground() != background) {
+                component.setBackground(background);
+            }
+            if (foreground != null && component.getForeground() != foreground) {
+                component.setForeground(foreground);
+            }
+            if (border != null && component.getBorder() != border) {
+                component.setBorder(border);
+            }
+        }
+    }
+
+    private StatusStyles() {
+    }
+
+    static final Font CAR_TILE_FONT = new Font("Segoe UI", Font.BOLD, 10);
+    static final Font SLOT_FONT = new Font("Segoe UI", Font.BOLD, 11);
+    static final Font BAY_FONT = new Font("Segoe UI", Font.BOLD, 14);
+
+    private static final Border CAR_PADDING = BorderFactory.createEmptyBorder(8, 5, 8, 5);
+    private static final Border SLOT_PADDING = BorderFactory.createEmptyBorder(8, 10, 8, 10);
+
+    private static final Style[] CARS = new Style[CarState.values().length];
+
+    static {
+        Style waiting = car(new Color(255, 193, 7), new Color(253, 126, 20));
+        CARS[CarState.NOT_ARRIVED.ordinal()] = waiting;
+        CARS[CarState.ARRIVED.ordinal()] = waiting;
+        CARS[CarState.IN_QUEUE.ordinal()] = car(new Color(255, 243, 205), new Color(255, 193, 7));
+        Style atBay = car(new Color(209, 231, 221), new Color(40, 167, 69));
+        CARS[CarState.AT_PUMP.ordinal()] = atBay;
+        CARS[CarState.WASHING.ordinal()] = atBay;
+        CARS[CarState.FINISHED.ordinal()] = car(new Color(209, 229, 240), new Color(0, 123, 255));
+        CARS[CarState.LOST.ordinal()] = car(new Color(233, 236, 239), new Color(220, 53, 69));
+    }
+
+    private static Style car(Color background, Color border) {
+        return new Style(background, Color.BLACK,
+            BorderFactory.createCompoundBorder(BorderFactory.createLineBorder(border, 1), CAR_PADDING));
+    }
+
+    static Style car(CarState state) {
+        return CARS[state.ordinal()];
+    }
+
+    static final Style SLOT_EMPTY = new Style(new Color(248, 249, 250), new Color(108, 117, 125),
+        BorderFactory.createCompoundBorder(BorderFactory.createLineBorder(new Color(222, 226, 230), 1), SLOT_PADDING));
+    static final Style SLOT_TAKEN = new Style(new Color(255, 243, 205), new Color(133, 100, 4),
+        BorderFactory.createCompoundBorder(BorderFactory.createLineBorder(new Color(255, 193, 7), 2), SLOT_PADDING));
+
+    static final Style BAY_BUSY = new Style(new Color(40, 167, 69), Color.WHITE, null);
+    static final Style BAY_CLOSED = new Style(new Color(52, 58, 64), Color.WHITE, null);
+    static final Style BAY_READY = new Style(new Color(108, 117, 125), Color.WHITE, null);
+
+    // Painted where an icon is still loading or could not be loaded
+    static final Color ICON_FALLBACK = new Color(240, 240, 240);
+    static final Color ICON_FALLBACK_EDGE = new Color(200, 200, 200);
+    static final Font ICON_FALLBACK_FONT = new Font("Arial", Font.PLAIN, 10);
+}
@@ -0,0 +1,68 @@
+// ----------------------------
+// Shared Time Scale
+// ----------------------------
+// The one speed factor every actor reads. Changing it is a single write and a
+// single notifyAll, whatever the number of cars and pumps. Washes in progress
+// wait on this object, so they wake up and recompute their remaining time
+// right away.
+//
+// A headless benchmark can make the scale CPU-bound instead: every scaled
+// millisecond of service is then a fixed number of loop iterations (see
+// work), so a run measures the cores rather than the clock.
+class TimeScale {
+    private volatile int speedFactor;
+    private final long workPerMilli;       // 0: services wait
+
+    public TimeScale(int speedFactor) {
+        this(speedFactor, 0);
+    }
+
+    public TimeScale(int speedFactor, long workPerMilli) {
+        this.speedFactor = Math.max(1, speedFactor);
+        this.workPerMilli = Math.max(0, workPerMilli);
+    }
+
+    public boolean isCpuBound() {
+        return workPerMilli > 0;
+    }
+
+    // Computes for a service of the given scaled millis instead of waiting for it.
+    // The check on the result only keeps the JIT from dropping the loop.
+    public void work(long millis) {
+        long x = millis | 1;
+        for (long i = millis * workPerMilli; i > 0; i--) {
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+        }
+        if (x == 0) {
+            throw new IllegalStateException("xorshift reached zero");
+        }
+    }
+
+    public int get() {
+        return speedFactor;
+    }
+
+    // Wall millis of a service whose base time is given: twice the base divided by the
+    // speed, never shorter than a quarter of the base (2 s for the 8 s wash)
+    public long scale(int baseMillis) {
+        return Math.max(baseMillis / 4, (baseMillis * 2L) / speedFactor);
+    }
+
+    // Returns false when the factor did not change (slider drags repeat values)
+    public synchronized boolean set(int factor) {
+        factor = Math.max(1, factor);
+        if (factor == speedFactor) {
+            return false;
+        }
+        speedFactor = factor;
+        notifyAll();
+        return true;
+    }
+
+    // Wakes the washes waiting on this scale, e.g. after a pump was paused or resumed
+    public synchronized void wakeWaiters() {
+        notifyAll();
+    }
+}
@@ -0,0 +1,270 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.function.IntConsumer;
+
+// ----------------------------
+// Trace Arrival Source
+// ----------------------------
+// Replays recorded arrival timestamps. The file is memory mapped in windows
+// and parsed byte by byte into primitives, so multi-gigabyte traces stream
+// without any per-line allocation.
+//
+// Two formats are accepted:
+//   CSV    - timestamp in the first column: integer epoch millis or decimal
+//            epoch seconds; header, comment (#) and blank lines are skipped
+//   binary - "CWTR" magic followed by big-endian int64 epoch millis
+//
+// Slightly out-of-order rows are fixed by a small reorder window (min-heap);
+// anything later than that is clamped to the previous arrival and counted.
+class TraceArrivalSource implements ArrivalSource {
+    static final int BINARY_MAGIC = 0x43575452; // "CWTR"
+    private static final long WINDOW_BYTES = 64L << 20;
+    private static final int REORDER_WINDOW = 1024;
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long size;
+    private final boolean binary;
+    private final double speedup; // trace millis per simulated millis
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position; // next unread byte
+
+    private final long[] heap = new long[REORDER_WINDOW + 1]; // + room for a restored pending arrival
+    private int heapSize;
+    private long lastTimestamp = NONE;
+    private long previousTimestamp = NONE;
+    private long pendingTimestamp = NONE; // announced but not yet released
+    private long outOfOrder;
+
+    public TraceArrivalSource(File file, double speedup) throws IOException {
+        this.file = file;
+        this.speedup = speedup > 0 ? speedup : 1;
+        this.raf = new RandomAccessFile(file, "r");
+        this.channel = raf.getChannel();
+        this.size = channel.size();
+        this.binary = size >= 4 && readMagic() == BINARY_MAGIC;
+        this.position = binary ? 4 : 0;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized long getOutOfOrderCount() {
+        return outOfOrder;
+    }
+
+    // Arrivals in the whole file, for runs that replay all of them. A binary trace
+    // knows from its size; a CSV trace is scanned once without moving the replay,
+    // reporting the percent scanned as it goes. Interrupting the caller stops the scan.
+    public synchronized long countArrivals(IntConsumer percentScanned) throws IOException {
+        if (binary) {
+            return (size - 4) / 8;
+        }
+        long saved = position;
+        long count = 0;
+        int reported = -1;
+        position = 0;
+        try {
+            while (readCsv() != NONE) {
+                count++;
+                if ((count & 0xFFFF) == 0) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("Counting arrivals in " + file + " was cancelled");
+                    }
+                    int percent = (int) (position * 100 / size);
+                    if (percent != reported) {
+                        reported = percent;
+                        percentScanned.accept(percent);
+                    }
+                }
+            }
+        } finally {
+            position = saved;
+        }
+        return count;
+    }
+
+    private int readMagic() throws IOException {
+        int magic = 0;
+        for (int i = 0; i < 4; i++) {
+            magic = (magic << 8) | byteAt(i);
+        }
+        return magic;
+    }
+
+    private int byteAt(long offset) throws IOException {
+        if (window == null || offset < windowStart || offset >= windowStart + window.limit()) {
+            windowStart = offset;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW_BYTES, size - offset));
+        }
+        return window.get((int) (offset - windowStart)) & 0xFF;
+    }
+
+    private long readTimestamp() throws IOException {
+        return binary ? readBinary() : readCsv();
+    }
+
+    private long readBinary() throws IOException {
+        if (size - position < 8) {
+            position = size;
+            return NONE;
+        }
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | byteAt(position++);
+        }
+        return value;
+    }
+
+    private long readCsv() throws IOException {
+        while (position < size) {
+            int c = byteAt(position);
+            if (c == '\n' || c == '\r' || c == ' ' || c == '\t') {
+                position++;
+                continue;
+            }
+            if (c < '0' || c > '9') { // header or comment line
+                skipLine();
+                continue;
+            }
+
+            long value = 0;
+            while (position < size && (c = byteAt(position)) >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                position++;
+            }
+            if (position < size && c == '.') { // decimal seconds
+                position++;
+                long millis = 0;
+                int digits = 0;
+                while (position < size && (c = byteAt(position)) >= '0' && c <= '9') {
+                    if (digits < 3) {
+                        millis = millis * 10 + (c - '0');
+                        digits++;
+                    }
+                    position++;
+                }
+                for (; digits < 3; digits++) {
+                    millis *= 10;
+                }
+                value = value * 1000 + millis;
+            }
+            skipLine();
+            return value;
+        }
+        return NONE;
+    }
+
+    private void skipLine() throws IOException {
+        while (position < size && byteAt(position) != '\n') {
+            position++;
+        }
+    }
+
+    private void refill() throws IOException {
+        while (heapSize < REORDER_WINDOW) {
+            long timestamp = readTimestamp();
+            if (timestamp == NONE) return;
+            push(timestamp);
+        }
+    }
+
+    private void push(long value) {
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= value) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = value;
+    }
+
+    private long pop() {
+        long min = heap[0];
+        long last = heap[--heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) child++;
+            if (heap[child] >= last) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        if (heapSize > 0) {
+            heap[i] = last;
+        }
+        return min;
+    }
+
+    @Override
+    public synchronized long nextDelayMillis(int speedFactor) throws IOException {
+        refill();
+        if (heapSize == 0) {
+            return -1;
+        }
+        long timestamp = pop();
+        if (lastTimestamp != NONE && timestamp < lastTimestamp) {
+            outOfOrder++;
+            timestamp = lastTimestamp;
+        }
+        long gap = lastTimestamp == NONE ? 0 : timestamp - lastTimestamp;
+        previousTimestamp = lastTimestamp;
+        lastTimestamp = timestamp;
+        pendingTimestamp = timestamp;
+
+        // Same scale as a wash: base simulated millis * 2 / speed
+        return (long) (gap / speedup * 2 / Math.max(1, speedFactor));
+    }
+
+    @Override
+    public synchronized void arrived() {
+        pendingTimestamp = NONE;
+    }
+
+    @Override
+    public synchronized void writeState(DataOutputStream out) throws IOException {
+        out.writeLong(position);
+        boolean hasPending = pendingTimestamp != NONE;
+        // an announced car that was not released yet becomes the next arrival again
+        out.writeLong(hasPending ? previousTimestamp : lastTimestamp);
+        out.writeInt(heapSize + (hasPending ? 1 : 0));
+        if (hasPending) {
+            out.writeLong(pendingTimestamp);
+        }
+        for (int i = 0; i < heapSize; i++) {
+            out.writeLong(heap[i]);
+        }
+        out.writeLong(outOfOrder);
+    }
+
+    @Override
+    public synchronized void readState(DataInputStream in) throws IOException {
+        position = in.readLong();
+        lastTimestamp = in.readLong();
+        heapSize = 0;
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            push(in.readLong());
+        }
+        outOfOrder = in.readLong();
+        pendingTimestamp = NONE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+}
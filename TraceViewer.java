@@ -0,0 +1,538 @@
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.imageio.ImageIO;
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
+import javax.swing.ToolTipManager;
+
+// ----------------------------
+// Trace Viewer
+// ----------------------------
+// Shows a flight recording (see FlightRecorder) as one timeline:
+//  - the queue depth, with a red tick for every car that drove on;
+//  - one Gantt row per bay. A bar runs from the pickup to the release of
+//    the bay: yellow while the car waits for a bay permit, green while it
+//    is washed, blue while it holds the bay for room in the next stage;
+//  - per traced semaphore, how many threads were blocked on it.
+// The recording only holds the newest records, so bars at the left edge
+// can start late. A thread that wakes without a block in the recording was
+// blocked before it started, and counts as blocked from the left edge.
+//
+//   java TraceViewer carwash-trace.cwt                           window; hover a bar for its car
+//   java TraceViewer carwash-trace.cwt --png trace.png [--width 1600]   image, also without a display
+//   java TraceViewer carwash-trace.cwt --summary                 per bay and per semaphore totals
+class TraceViewer {
+    private static final int LEFT = 110, RIGHT = 16, TOP = 34;
+    private static final int QUEUE_HEIGHT = 90, BAY_HEIGHT = 18, BAY_GAP = 4, SEMAPHORE_HEIGHT = 30, SECTION_GAP = 22;
+    private static final Color AXIS = new Color(108, 117, 125);
+    private static final Color GRID = new Color(233, 236, 239);
+    private static final Color LOST = new Color(220, 53, 69);
+    private static final Color BLOCKED = new Color(220, 53, 69, 150);
+    private static final Color QUEUE_LINE = new Color(253, 126, 20);
+    private static final Font LABEL_FONT = new Font("Segoe UI", Font.BOLD, 11);
+    private static final Font SMALL_FONT = new Font("Segoe UI", Font.PLAIN, 10);
+
+    // Bar colors follow the car tiles of the main window
+    private static final Color WAITING_FOR_BAY = StatusStyles.car(CarState.IN_QUEUE).background;
+    private static final Color WASHING = StatusStyles.BAY_BUSY.background;
+    private static final Color HELD = StatusStyles.car(CarState.FINISHED).background;
+
+    // ---- the recording as intervals and step functions ----
+
+    static final class Timeline {
+        long start, end;                                  // nanos
+        int records;
+        long recorded;
+        long[] queueTimes = new long[16];
+        int[] queueDepths = new int[16];
+        int queuePoints;
+        final List<Long> lostTimes = new ArrayList<>();
+        final List<List<long[]>> bays = new ArrayList<>(); // per bay: {pickup, serviceStart, finished, released, carId}
+        String[] semaphores;
+        List<long[]>[] blocked;                           // per semaphore: {time, threads blocked}
+        long[] blocks, blockedMicros, refused;
+        int[] maxBlocked;
+
+        double seconds() {
+            return (end - start) / 1e9;
+        }
+
+        List<long[]> bay(int bay) {
+            while (bays.size() < bay) {
+                bays.add(new ArrayList<>());
+            }
+            return bays.get(bay - 1);
+        }
+
+        void queue(long time, int depth) {
+            if (queuePoints == queueTimes.length) {
+                queueTimes = Arrays.copyOf(queueTimes, queuePoints * 2);
+                queueDepths = Arrays.copyOf(queueDepths, queuePoints * 2);
+            }
+            queueTimes[queuePoints] = time;
+            queueDepths[queuePoints++] = depth;
+        }
+
+        int maxQueue() {
+            int max = 0;
+            for (int i = 0; i < queuePoints; i++) {
+                max = Math.max(max, queueDepths[i]);
+            }
+            return max;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Timeline timeline(FlightRecorder.Recording recording) {
+        Timeline tl = new Timeline();
+        int n = recording.size();
+        tl.records = n;
+        tl.recorded = recording.recorded;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(recording.nanos[a], recording.nanos[b]));
+        tl.start = n > 0 ? recording.nanos[order[0]] : 0;
+        tl.end = n > 0 ? recording.nanos[order[n - 1]] : 0;
+
+        int semaphores = recording.semaphoreNames.length;
+        tl.semaphores = recording.semaphoreNames;
+        tl.blocked = new List[semaphores];
+        tl.blocks = new long[semaphores];
+        tl.blockedMicros = new long[semaphores];
+        tl.refused = new long[semaphores];
+        tl.maxBlocked = new int[semaphores];
+        int[] blockedNow = blockedAtStart(recording, order, semaphores);
+        for (int s = 0; s < semaphores; s++) {
+            tl.blocked[s] = new ArrayList<>();
+            tl.maxBlocked[s] = blockedNow[s];
+            tl.blocked[s].add(new long[] {tl.start, blockedNow[s]});
+        }
+
+        List<long[]> open = new ArrayList<>();            // per bay, the bar not released yet
+        for (int k = 0; k < n; k++) {
+            int i = order[k];
+            long t = recording.nanos[i];
+            int car = recording.carIds[i], bay = recording.bays[i], value = recording.values[i];
+            switch (recording.kind(i)) {
+                case "CAR_ENTERED_QUEUE":
+                    tl.queue(t, value);
+                    break;
+                case "CAR_LOST":
+                    tl.lostTimes.add(t);
+                    break;
+                case "PUMP_TOOK_CAR":
+                    tl.queue(t, value);
+                    closeBar(tl, open, bay, t);
+                    openBar(tl, open, bay, t, car);
+                    break;
+                case "APPOINTMENT_ADMITTED":
+                    closeBar(tl, open, bay, t);
+                    openBar(tl, open, bay, t, car);
+                    break;
+                case "BAY_ACQUIRED":
+                    barOf(tl, open, bay, t, car);
+                    break;
+                case "SERVICE_STARTED":
+                    barOf(tl, open, bay, t, car)[1] = t;
+                    break;
+                case "SERVICE_FINISHED":
+                    barOf(tl, open, bay, t, car)[2] = t;
+                    break;
+                case "BAY_RELEASED":
+                    barOf(tl, open, bay, t, car);
+                    closeBar(tl, open, bay, t);
+                    break;
+                case "SEMAPHORE_BLOCKED":
+                    if (bay < 0 || bay >= semaphores) break;
+                    blockedNow[bay]++;
+                    tl.blocks[bay]++;
+                    tl.maxBlocked[bay] = Math.max(tl.maxBlocked[bay], blockedNow[bay]);
+                    tl.blocked[bay].add(new long[] {t, blockedNow[bay]});
+                    break;
+                case "SEMAPHORE_WOKE":
+                    if (bay < 0 || bay >= semaphores) break;
+                    blockedNow[bay]--;
+                    tl.blockedMicros[bay] += Math.min(value, (t - tl.start) / 1000); // only the part recorded
+                    tl.blocked[bay].add(new long[] {t, blockedNow[bay]});
+                    break;
+                case "SEMAPHORE_REFUSED":
+                    if (bay >= 0 && bay < semaphores) tl.refused[bay]++;
+                    break;
+                default:
+                    break;
+            }
+        }
+        for (int bay = 1; bay <= open.size(); bay++) {
+            closeBar(tl, open, bay, tl.end);
+        }
+        return tl;
+    }
+
+    // Per semaphore, the threads already blocked when the recording starts: once the ring
+    // has wrapped, their BLOCKED record is gone and only the WOKE is left
+    private static int[] blockedAtStart(FlightRecorder.Recording recording, Integer[] order, int semaphores) {
+        int[] orphans = new int[semaphores];
+        List<Set<Integer>> blocked = new ArrayList<>();
+        for (int s = 0; s < semaphores; s++) {
+            blocked.add(new HashSet<>());
+        }
+        for (Integer i : order) {
+            int semaphore = recording.bays[i];
+            if (semaphore < 0 || semaphore >= semaphores) continue;
+            String kind = recording.kind(i);
+            if (kind.equals("SEMAPHORE_BLOCKED")) {
+                blocked.get(semaphore).add(recording.carIds[i]);
+            } else if (kind.equals("SEMAPHORE_WOKE") && !blocked.get(semaphore).remove(recording.carIds[i])) {
+                orphans[semaphore]++;
+            }
+        }
+        return orphans;
+    }
+
+    private static void openBar(Timeline tl, List<long[]> open, int bay, long t, int car) {
+        if (bay < 1) return;
+        tl.bay(bay);
+        while (open.size() < bay) {
+            open.add(null);
+        }
+        open.set(bay - 1, new long[] {t, -1, -1, -1, car});
+    }
+
+    // The bay's open bar; a bar whose pickup was overwritten starts at its first record
+    private static long[] barOf(Timeline tl, List<long[]> open, int bay, long t, int car) {
+        if (bay < 1) return new long[5];
+        if (bay > open.size() || open.get(bay - 1) == null) {
+            openBar(tl, open, bay, t, car);
+        }
+        return open.get(bay - 1);
+    }
+
+    private static void closeBar(Timeline tl, List<long[]> open, int bay, long t) {
+        if (bay < 1 || bay > open.size() || open.get(bay - 1) == null) return;
+        long[] bar = open.get(bay - 1);
+        bar[3] = t;
+        tl.bay(bay).add(bar);
+        open.set(bay - 1, null);
+    }
+
+    // ---- drawing; the same code paints the window and the PNG ----
+
+    static int height(Timeline tl) {
+        return TOP + QUEUE_HEIGHT + SECTION_GAP + tl.bays.size() * (BAY_HEIGHT + BAY_GAP) + SECTION_GAP +
+            tl.semaphores.length * (SEMAPHORE_HEIGHT + BAY_GAP) + 40;
+    }
+
+    static void draw(Graphics2D g, Timeline tl, int width, int height) {
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        double span = Math.max(1, tl.end - tl.start);
+        double scale = (width - LEFT - RIGHT) / span;
+        int bottom = height - 40;
+
+        // time axis and grid
+        long step = niceStep((long) (span / 1e6 / Math.max(1, (width - LEFT - RIGHT) / 120)));
+        g.setFont(SMALL_FONT);
+        for (long ms = 0; ms * 1e6 <= span; ms += step) {
+            int x = LEFT + (int) (ms * 1e6 * scale);
+            g.setColor(GRID);
+            g.drawLine(x, TOP - 4, x, bottom);
+            g.setColor(AXIS);
+            g.drawString(formatMillis(ms, step), x + 2, TOP - 8);
+        }
+
+        // queue depth
+        int y = TOP;
+        int maxQueue = Math.max(1, tl.maxQueue());
+        g.setFont(LABEL_FONT);
+        g.setColor(AXIS);
+        g.drawString("Queue (max " + tl.maxQueue() + ")", 6, y + 14);
+        int base = y + QUEUE_HEIGHT;
+        int lastX = LEFT, lastDepth = 0;
+        for (int i = 0; i <= tl.queuePoints; i++) {
+            int x = i < tl.queuePoints ? LEFT + (int) ((tl.queueTimes[i] - tl.start) * scale) : width - RIGHT;
+            int h = lastDepth * QUEUE_HEIGHT / maxQueue;
+            g.setColor(WAITING_FOR_BAY);
+            g.fillRect(lastX, base - h, Math.max(0, x - lastX), h);
+            g.setColor(QUEUE_LINE);
+            g.drawLine(lastX, base - h, x, base - h);
+            if (i < tl.queuePoints) {
+                g.drawLine(x, base - h, x, base - tl.queueDepths[i] * QUEUE_HEIGHT / maxQueue);
+                lastX = x;
+                lastDepth = tl.queueDepths[i];
+            }
+        }
+        g.setColor(LOST);
+        for (long t : tl.lostTimes) {
+            int x = LEFT + (int) ((t - tl.start) * scale);
+            g.drawLine(x, base - 8, x, base + 4);
+        }
+        g.setColor(AXIS);
+        g.drawLine(LEFT, base, width - RIGHT, base);
+
+        // one row per bay
+        y = base + SECTION_GAP;
+        for (int bay = 1; bay <= tl.bays.size(); bay++) {
+            g.setFont(LABEL_FONT);
+            g.setColor(AXIS);
+            g.drawString("Bay " + bay, 6, y + BAY_HEIGHT - 5);
+            g.setColor(GRID);
+            g.fillRect(LEFT, y, width - LEFT - RIGHT, BAY_HEIGHT);
+            g.setFont(SMALL_FONT);
+            FontMetrics metrics = g.getFontMetrics();
+            for (long[] bar : tl.bays.get(bay - 1)) {
+                int x0 = LEFT + (int) ((bar[0] - tl.start) * scale);
+                int xStart = bar[1] >= 0 ? LEFT + (int) ((bar[1] - tl.start) * scale) : x0;
+                int xFinish = bar[2] >= 0 ? LEFT + (int) ((bar[2] - tl.start) * scale) : -1;
+                int x1 = LEFT + (int) ((bar[3] - tl.start) * scale);
+                g.setColor(WAITING_FOR_BAY);
+                g.fillRect(x0, y, Math.max(0, xStart - x0), BAY_HEIGHT);
+                g.setColor(WASHING);
+                g.fillRect(xStart, y, Math.max(1, (xFinish >= 0 ? xFinish : x1) - xStart), BAY_HEIGHT);
+                if (xFinish >= 0) {
+                    g.setColor(HELD);
+                    g.fillRect(xFinish, y, Math.max(0, x1 - xFinish), BAY_HEIGHT);
+                }
+                String label = String.valueOf(bar[4]);
+                if (x1 - x0 > metrics.stringWidth(label) + 4) {
+                    g.setColor(Color.WHITE);
+                    g.drawString(label, x0 + 2, y + BAY_HEIGHT - 5);
+                }
+            }
+            y += BAY_HEIGHT + BAY_GAP;
+        }
+
+        // threads blocked per semaphore
+        y += SECTION_GAP - BAY_GAP;
+        for (int s = 0; s < tl.semaphores.length; s++) {
+            g.setFont(LABEL_FONT);
+            g.setColor(AXIS);
+            g.drawString(tl.semaphores[s] + " (" + tl.maxBlocked[s] + ")", 6, y + SEMAPHORE_HEIGHT - 10);
+            g.setColor(GRID);
+            g.fillRect(LEFT, y, width - LEFT - RIGHT, SEMAPHORE_HEIGHT);
+            int max = Math.max(1, tl.maxBlocked[s]);
+            int sx = LEFT;
+            long count = 0;
+            g.setColor(BLOCKED);
+            for (long[] point : tl.blocked[s]) {
+                int x = LEFT + (int) ((point[0] - tl.start) * scale);
+                int h = (int) (count * SEMAPHORE_HEIGHT / max);
+                g.fillRect(sx, y + SEMAPHORE_HEIGHT - h, Math.max(0, x - sx), h);
+                sx = x;
+                count = point[1];
+            }
+            y += SEMAPHORE_HEIGHT + BAY_GAP;
+        }
+
+        // legend
+        y = height - 20;
+        g.setFont(SMALL_FONT);
+        int x = LEFT;
+        x = legend(g, x, y, WAITING_FOR_BAY, "queued / waiting for a bay");
+        x = legend(g, x, y, WASHING, "washing");
+        x = legend(g, x, y, HELD, "holding the bay for the next stage");
+        x = legend(g, x, y, LOST, "car lost");
+        legend(g, x, y, BLOCKED, "threads blocked");
+        g.setColor(AXIS);
+        g.drawString(tl.records + " records" + (tl.recorded > tl.records ? ", the oldest " +
+            (tl.recorded - tl.records) + " overwritten" : ""), 6, TOP - 20);
+    }
+
+    private static int legend(Graphics2D g, int x, int y, Color color, String text) {
+        g.setColor(color);
+        g.fillRect(x, y - 9, 12, 10);
+        g.setColor(AXIS);
+        g.drawString(text, x + 16, y);
+        return x + 28 + g.getFontMetrics().stringWidth(text);
+    }
+
+    // 1, 2 or 5 times a power of ten, in millis
+    private static long niceStep(long millis) {
+        long step = 1;
+        while (true) {
+            for (long m : new long[] {1, 2, 5}) {
+                if (step * m >= millis) return step * m;
+            }
+            step *= 10;
+        }
+    }
+
+    private static String formatMillis(long ms, long step) {
+        return step >= 1000 ? (ms / 1000) + " s" : String.format("%.3f s", ms / 1000.0);
+    }
+
+    // Car on the bay row under the mouse, for the tool tip; null if none
+    static String describe(Timeline tl, int width, int mx, int my) {
+        int row = (my - (TOP + QUEUE_HEIGHT + SECTION_GAP)) / (BAY_HEIGHT + BAY_GAP);
+        if (my < TOP + QUEUE_HEIGHT + SECTION_GAP || row >= tl.bays.size()) return null;
+        double scale = (width - LEFT - RIGHT) / (double) Math.max(1, tl.end - tl.start);
+        long t = tl.start + (long) ((mx - LEFT) / scale);
+        for (long[] bar : tl.bays.get(row)) {
+            if (bar[0] <= t && t <= bar[3]) {
+                return "Bay " + (row + 1) + ": Car " + bar[4] + ", held " + millis(bar[3] - bar[0]) +
+                    (bar[1] >= 0 && bar[2] >= 0 ? ", washed " + millis(bar[2] - bar[1]) : "");
+            }
+        }
+        return null;
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1f ms", nanos / 1e6);
+    }
+
+    // ---- text summary ----
+
+    static List<String> summary(Timeline tl) {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%d records over %.3f s%s", tl.records, tl.seconds(), tl.recorded > tl.records
+            ? " (" + tl.recorded + " made, the oldest " + (tl.recorded - tl.records) + " overwritten)" : ""));
+        double area = 0;
+        for (int i = 0; i + 1 < tl.queuePoints; i++) {
+            area += (double) tl.queueDepths[i] * (tl.queueTimes[i + 1] - tl.queueTimes[i]);
+        }
+        lines.add(String.format("Queue: max %d, mean %.2f, %d cars lost", tl.maxQueue(),
+            tl.end > tl.start ? area / (tl.end - tl.start) : 0, tl.lostTimes.size()));
+        lines.add(String.format("%-10s %8s %9s %10s %9s", "Bay", "Cars", "Held %", "Washing %", "Mean ms"));
+        for (int bay = 1; bay <= tl.bays.size(); bay++) {
+            long held = 0, washing = 0;
+            List<long[]> bars = tl.bays.get(bay - 1);
+            for (long[] bar : bars) {
+                held += bar[3] - bar[0];
+                if (bar[1] >= 0 && bar[2] >= 0) washing += bar[2] - bar[1];
+            }
+            double span = Math.max(1, tl.end - tl.start);
+            lines.add(String.format("%-10s %8d %9.1f %10.1f %9.2f", "Bay " + bay, bars.size(), held * 100 / span,
+                washing * 100 / span, bars.isEmpty() ? 0.0 : held / 1e6 / bars.size()));
+        }
+        lines.add(String.format("%-10s %8s %12s %11s %8s", "Semaphore", "Blocks", "Blocked ms", "Max at once",
+            "Refused"));
+        for (int s = 0; s < tl.semaphores.length; s++) {
+            lines.add(String.format("%-10s %8d %12.1f %11d %8d", tl.semaphores[s], tl.blocks[s],
+                tl.blockedMicros[s] / 1000.0, tl.maxBlocked[s], tl.refused[s]));
+        }
+        return lines;
+    }
+
+    // ---- window ----
+
+    private static final class TimelinePanel extends JPanel {
+        private static final long serialVersionUID = 1L;
+        private final Timeline tl;
+        private int zoom = 1;
+
+        TimelinePanel(Timeline tl) {
+            this.tl = tl;
+            setBackground(Color.WHITE);
+            ToolTipManager.sharedInstance().registerComponent(this);
+        }
+
+        void zoom(boolean in) {
+            zoom = in ? Math.min(1 << 12, zoom * 2) : Math.max(1, zoom / 2);
+            revalidate();
+            repaint();
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            int visible = getParent() != null ? getParent().getWidth() : 1400;
+            return new Dimension(Math.max(600, visible) * zoom, height(tl));
+        }
+
+        @Override
+        public String getToolTipText(MouseEvent e) {
+            return describe(tl, getWidth(), e.getX(), e.getY());
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            draw((Graphics2D) g, tl, getWidth(), getHeight());
+        }
+    }
+
+    private static void show(Timeline tl, String title) {
+        JFrame frame = new JFrame("Flight Recording - " + title);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        TimelinePanel panel = new TimelinePanel(tl);
+        JScrollPane scroll = new JScrollPane(panel);
+        scroll.getHorizontalScrollBar().setUnitIncrement(32);
+        JPanel tools = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JButton zoomIn = new JButton("Zoom in");
+        JButton zoomOut = new JButton("Zoom out");
+        zoomIn.addActionListener(e -> panel.zoom(true));
+        zoomOut.addActionListener(e -> panel.zoom(false));
+        tools.add(zoomIn);
+        tools.add(zoomOut);
+        frame.add(tools, BorderLayout.NORTH);
+        frame.add(scroll, BorderLayout.CENTER);
+        frame.setSize(1400, Math.min(900, height(tl) + 110));
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java TraceViewer carwash-trace.cwt [--png out.png [--width 1600]] [--summary]");
+            System.exit(2);
+        }
+        File file = new File(args[0]);
+        File png = null;
+        int width = 1600;
+        boolean summary = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--png":
+                    png = new File(args[++i]);
+                    break;
+                case "--width":
+                    width = Integer.parseInt(args[++i]);
+                    break;
+                case "--summary":
+                    summary = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        Timeline tl = timeline(FlightRecorder.read(file));
+        if (summary) {
+            for (String line : summary(tl)) {
+                System.out.println(line);
+            }
+        }
+        if (png != null) {
+            int height = height(tl);
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            draw(g, tl, width, height);
+            g.dispose();
+            ImageIO.write(image, "png", png);
+            System.out.println("Timeline written to " + png.getAbsolutePath());
+        }
+        if (!summary && png == null) {
+            SwingUtilities.invokeLater(() -> show(tl, file.getName()));
+        }
+    }
+}
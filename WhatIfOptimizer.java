@@ -0,0 +1,395 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+
+// ----------------------------
+// What-if Optimizer
+// ----------------------------
+// Finds the cheapest station that keeps the 95th percentile wait under a
+// target, without sweeping the whole grid at full precision. Every
+// combination of bays, waiting slots and lane layout is a candidate. Its
+// objective comes from headless replications, the same ones Replications
+// runs (see Replications.ReplicationTask).
+//
+// The search is successive halving. Every candidate starts with a few
+// replications. After each round, candidates are ranked: those that meet the
+// target come first, cheapest first; the rest follow by how far they miss it.
+// The better half survives and gets twice the replications, until one is
+// left or the replication limit is reached. Two rules drop candidates early:
+//  - the 95% CI of its p95 time to a bay lies above the target;
+//  - it costs more than a candidate whose CI lies below the target.
+//
+// Replication i of every candidate uses seed (seed + i). Candidates are thus
+// compared on the same arrivals, and more replications for a candidate only
+// add runs. With --cache, the runs of each candidate are kept in a file, and
+// a later search on the same arrivals (another target or cost, a wider
+// range) only runs the replications it does not have yet.
+//
+//   java WhatIfOptimizer [--scenario site.scn] [--cars 200] [--bays 1-6] [--capacity 2-16:2]
+//                        [--layout spec ...] [--target 300] [--max-lost 0.01]
+//                        [--bay-cost 40] [--slot-cost 2] [--worker-cost 25]
+//                        [--runs 4] [--max-runs 64] [--seed 1] [--cache file]
+//
+// The target is the p95 time from arrival to a bay in seconds, the mean over
+// the replications of each run's p95. It includes waiting for a free slot,
+// unlike the mean queue wait shown next to it. A layout is a stage spec as in -Dcarwash.stages. Its cost
+// is its later stages' workers at the worker cost and their buffers at the
+// slot cost. Without a scenario, arrivals are Poisson at
+// -Dcarwash.replications.meanGap.
+class WhatIfOptimizer {
+
+    static final class Candidate {
+        final int bays, capacity;
+        final String stageSpec;
+        final double cost;
+        final String key;
+        Replications.Summary summary = new Replications.Summary();
+        int runs;                            // replications in summary, seeds seed .. seed + runs - 1
+
+        Candidate(int bays, int capacity, String stageSpec, double cost) {
+            this.bays = bays;
+            this.capacity = capacity;
+            this.stageSpec = stageSpec;
+            this.cost = cost;
+            this.key = capacity + "/" + bays + "/" + stageSpec;
+        }
+
+        double p95() {
+            return summary.p95Wait.count > 0 ? summary.p95Wait.mean : Double.POSITIVE_INFINITY;
+        }
+
+        double p95HalfWidth() {
+            return summary.p95Wait.halfWidth();
+        }
+
+        double lostShare() {
+            return summary.lostShare.count > 0 ? summary.lostShare.mean : 0;
+        }
+
+        boolean meets(double targetMillis, double maxLost) {
+            return p95() <= targetMillis && lostShare() <= maxLost;
+        }
+
+        String describe() {
+            return bays + " bays, " + capacity + " slots, lanes " + stageSpec;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        File scenario = null;
+        int cars = 200;
+        int[] bayRange = {1, 6, 1}, capacityRange = {2, 16, 2};
+        List<String> layouts = new ArrayList<>();
+        double target = 300, maxLost = 0.01;
+        double bayCost = 40, slotCost = 2, workerCost = 25;
+        int runs = 4, maxRuns = 64;
+        long seed = 1;
+        File cacheFile = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--scenario":
+                    scenario = new File(args[++i]);
+                    break;
+                case "--cars":
+                    cars = Integer.parseInt(args[++i]);
+                    break;
+                case "--bays":
+                    bayRange = range(args[++i], "--bays");
+                    break;
+                case "--capacity":
+                    capacityRange = range(args[++i], "--capacity");
+                    break;
+                case "--layout":
+                    layouts.add(args[++i]);
+                    break;
+                case "--target":
+                    target = Double.parseDouble(args[++i]);
+                    break;
+                case "--max-lost":
+                    maxLost = Double.parseDouble(args[++i]);
+                    break;
+                case "--bay-cost":
+                    bayCost = Double.parseDouble(args[++i]);
+                    break;
+                case "--slot-cost":
+                    slotCost = Double.parseDouble(args[++i]);
+                    break;
+                case "--worker-cost":
+                    workerCost = Double.parseDouble(args[++i]);
+                    break;
+                case "--runs":
+                    runs = Math.max(2, Integer.parseInt(args[++i]));
+                    break;
+                case "--max-runs":
+                    maxRuns = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--cache":
+                    cacheFile = new File(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        maxRuns = Math.max(runs, maxRuns);
+
+        RunPlan plan = null;
+        String arrivals;
+        if (scenario != null) {
+            plan = RunPlan.compile(scenario);
+            cars = plan.cars;
+            CRC32 crc = new CRC32();
+            crc.update(Files.readAllBytes(scenario.toPath()));
+            arrivals = "scenario " + scenario.getName() + " crc " + Long.toHexString(crc.getValue());
+            System.out.println("Scenario " + plan.describe());
+        } else {
+            arrivals = "poisson gap " + (long) Replications.meanArrivalGap() + " cars " + cars;
+        }
+        if (layouts.isEmpty()) {
+            layouts.add(plan != null ? plan.stageSpec : ServicePipeline.configuredSpec());
+        }
+
+        List<Candidate> candidates = new ArrayList<>();
+        for (String layout : layouts) {
+            double layoutCost = layoutCost(layout, workerCost, slotCost);
+            for (int bays = bayRange[0]; bays <= bayRange[1]; bays += bayRange[2]) {
+                for (int capacity = capacityRange[0]; capacity <= capacityRange[1]; capacity += capacityRange[2]) {
+                    candidates.add(new Candidate(bays, capacity, layout,
+                        bays * bayCost + capacity * slotCost + layoutCost));
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new IllegalArgumentException("The bay and capacity ranges leave no configuration to try");
+        }
+
+        Properties cache = new Properties();
+        if (cacheFile != null && cacheFile.isFile()) {
+            try (InputStream in = new FileInputStream(cacheFile)) {
+                cache.load(in);
+            }
+            if (!arrivals.equals(cache.getProperty("arrivals")) ||
+                !String.valueOf(seed).equals(cache.getProperty("seed"))) {
+                System.out.println("Cache " + cacheFile + " was written for other arrivals or another seed; starting afresh");
+                cache.clear();
+            }
+        }
+        int reused = 0;
+        for (Candidate candidate : candidates) {
+            if (load(cache, candidate)) reused++;
+        }
+
+        double targetMillis = target * 1000;
+        System.out.println(candidates.size() + " configurations (" + arrivals + "), p95 arrival-to-bay target " + target +
+            " s, at most " + Math.round(maxLost * 100) + "% lost; " + runs + " to " + maxRuns +
+            " replications each" + (reused > 0 ? ", " + reused + " with cached runs" : ""));
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        SimulationLogger log = new SimulationLogger(16384); // no sinks: records are dropped unformatted
+        long startNanos = System.nanoTime();
+        long replications = 0;
+        List<Candidate> alive = new ArrayList<>(candidates);
+        int budget = runs;
+        Candidate closest = null;                    // best ranked before pruning, reported if nothing is left
+        for (int round = 1; ; round++) {
+            replications += topUp(pool, alive, budget, seed, cars, plan, log);
+            int before = alive.size();
+            alive.sort(ranking(targetMillis, maxLost));
+            closest = alive.get(0);
+            alive = prune(alive, targetMillis, maxLost);
+            alive.sort(ranking(targetMillis, maxLost));
+            Candidate best = alive.isEmpty() ? null : alive.get(0);
+            System.out.printf("Round %d: %d configurations x %d runs, %d dropped on their CI; best %s%n", round,
+                before, budget, before - alive.size(), best == null ? "none"
+                    : best.describe() + ", cost " + format(best.cost) + ", p95 to bay " + format(best.p95() / 1000) + " s");
+            if (alive.size() <= 1 || budget >= maxRuns) break;
+            alive = new ArrayList<>(alive.subList(0, (alive.size() + 1) / 2));
+            budget = Math.min(maxRuns, budget * 2);
+        }
+        pool.shutdown();
+        log.close();
+
+        if (cacheFile != null) {
+            cache.setProperty("arrivals", arrivals);
+            cache.setProperty("seed", String.valueOf(seed));
+            for (Candidate candidate : candidates) {
+                store(cache, candidate);
+            }
+            try (OutputStream out = new FileOutputStream(cacheFile)) {
+                cache.store(out, "Car wash what-if replications, written by WhatIfOptimizer");
+            }
+        }
+
+        long elapsed = (System.nanoTime() - startNanos) / 1_000_000L;
+        System.out.println();
+        System.out.println(replications + " replications run in " + elapsed + " ms; a full grid at " + maxRuns +
+            " runs would be " + (long) candidates.size() * maxRuns);
+        System.out.printf("%8s %5s %6s %-24s %5s %16s %14s %7s %12s%n", "Cost", "Bays", "Slots", "Lanes", "Runs",
+            "p95 to bay (s)", "Queue wait (s)", "Lost %", "Cars/h");
+        for (Candidate candidate : alive) {
+            Replications.Summary s = candidate.summary;
+            System.out.printf("%8s %5d %6d %-24s %5d %9.1f +-%5.1f %14.1f %7.1f %12.1f%n", format(candidate.cost),
+                candidate.bays, candidate.capacity, candidate.stageSpec, candidate.runs, candidate.p95() / 1000,
+                candidate.p95HalfWidth() / 1000, s.meanWait.mean / 1000, candidate.lostShare() * 100,
+                s.throughput.mean);
+        }
+        Candidate best = alive.isEmpty() ? null : alive.get(0);
+        System.out.println();
+        if (best != null && best.meets(targetMillis, maxLost)) {
+            System.out.println("Cheapest configuration meeting the target: " + best.describe() + ", cost " +
+                format(best.cost));
+            if (best.summary.failed > 0) {
+                System.out.println("WARNING: " + best.summary.failed + " of its runs broke an invariant" +
+                    " (reproduce with ScheduleExplorer)");
+            }
+        } else {
+            System.out.println("No configuration in range meets a p95 arrival-to-bay time of " + target + " s" +
+                (maxLost < 1 ? " with at most " + Math.round(maxLost * 100) + "% lost" : "") +
+                "; widen --bays or --capacity");
+            System.out.println("Closest: " + closest.describe() + ", p95 to bay " + format(closest.p95() / 1000) +
+                " s, " + format(closest.lostShare() * 100) + "% lost");
+        }
+    }
+
+    // Brings every candidate to the given number of replications, all on one pool
+    private static long topUp(ForkJoinPool pool, List<Candidate> candidates, int runs, long seed, int cars,
+                              RunPlan plan, SimulationLogger log) {
+        Map<Candidate, ForkJoinTask<Replications.Summary>> pending = new LinkedHashMap<>();
+        long started = 0;
+        for (Candidate c : candidates) {
+            if (c.runs >= runs) continue;
+            pending.put(c, pool.submit(new Replications.ReplicationTask(seed + c.runs, seed + runs, c.capacity,
+                c.bays, cars, c.stageSpec, plan, log)));
+            started += runs - c.runs;
+        }
+        for (Map.Entry<Candidate, ForkJoinTask<Replications.Summary>> entry : pending.entrySet()) {
+            entry.getKey().summary.merge(entry.getValue().join());
+            entry.getKey().runs = runs;
+        }
+        return started;
+    }
+
+    // Drops what the confidence intervals already rule out
+    private static List<Candidate> prune(List<Candidate> candidates, double targetMillis, double maxLost) {
+        double surelyMeets = Double.POSITIVE_INFINITY; // cost of the cheapest candidate whose whole CI is in target
+        for (Candidate c : candidates) {
+            if (c.p95() + c.p95HalfWidth() <= targetMillis && c.lostShare() <= maxLost) {
+                surelyMeets = Math.min(surelyMeets, c.cost);
+            }
+        }
+        List<Candidate> kept = new ArrayList<>();
+        for (Candidate c : candidates) {
+            boolean surelyMisses = c.p95() - c.p95HalfWidth() > targetMillis;
+            if (!surelyMisses && c.cost <= surelyMeets) {
+                kept.add(c);
+            }
+        }
+        return kept;
+    }
+
+    // Candidates meeting the target first, cheapest first; then the others, closest to it first
+    private static Comparator<Candidate> ranking(double targetMillis, double maxLost) {
+        return (a, b) -> {
+            boolean aMeets = a.meets(targetMillis, maxLost), bMeets = b.meets(targetMillis, maxLost);
+            if (aMeets != bMeets) return aMeets ? -1 : 1;
+            if (aMeets) {
+                int byCost = Double.compare(a.cost, b.cost);
+                return byCost != 0 ? byCost : Double.compare(a.p95(), b.p95());
+            }
+            int byMiss = Double.compare(miss(a, targetMillis, maxLost), miss(b, targetMillis, maxLost));
+            return byMiss != 0 ? byMiss : Double.compare(a.cost, b.cost);
+        };
+    }
+
+    // How far a candidate is from the target, as a ratio; 1 or less on each count meets it
+    private static double miss(Candidate c, double targetMillis, double maxLost) {
+        double lost = maxLost > 0 ? c.lostShare() / maxLost : (c.lostShare() > 0 ? Double.POSITIVE_INFINITY : 0);
+        return Math.max(c.p95() / targetMillis, lost);
+    }
+
+    // Workers of the later stages at the worker cost, their buffers at the slot cost
+    private static double layoutCost(String spec, double workerCost, double slotCost) {
+        ServicePipeline.validate(spec);
+        String[] entries = spec.split(",");
+        double cost = 0;
+        for (int i = 1; i < entries.length; i++) {
+            String[] fields = entries[i].trim().split(":");
+            cost += Integer.parseInt(fields[2].trim()) * workerCost + Integer.parseInt(fields[3].trim()) * slotCost;
+        }
+        return cost;
+    }
+
+    // "lo-hi" or "lo-hi:step", or a single number
+    private static int[] range(String text, String option) {
+        try {
+            String[] stepParts = text.split(":");
+            String[] bounds = stepParts[0].split("-");
+            int lo = Integer.parseInt(bounds[0].trim());
+            int hi = bounds.length > 1 ? Integer.parseInt(bounds[1].trim()) : lo;
+            int step = stepParts.length > 1 ? Integer.parseInt(stepParts[1].trim()) : 1;
+            if (lo < 1 || hi < lo || step < 1 || bounds.length > 2 || stepParts.length > 2) {
+                throw new IllegalArgumentException(option + " " + text + ": expected lo-hi[:step] with 1 <= lo <= hi");
+            }
+            return new int[] {lo, hi, step};
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " " + text + ": expected lo-hi[:step]");
+        }
+    }
+
+    // ---- cache: per candidate the replication count and the running stats ----
+
+    private static final String[] STATS = {"throughput", "meanWait", "maxWait", "p95Wait", "lostShare"};
+
+    private static Replications.Stats[] stats(Replications.Summary summary) {
+        return new Replications.Stats[] {summary.throughput, summary.meanWait, summary.maxWait, summary.p95Wait,
+            summary.lostShare};
+    }
+
+    private static boolean load(Properties cache, Candidate candidate) {
+        String runs = cache.getProperty(candidate.key + ".runs");
+        if (runs == null) return false;
+        Replications.Stats[] stats = stats(candidate.summary);
+        for (int i = 0; i < STATS.length; i++) {
+            String[] f = cache.getProperty(candidate.key + "." + STATS[i], "0 0 0 0 0").split(" ");
+            stats[i].count = Long.parseLong(f[0]);
+            stats[i].mean = Double.parseDouble(f[1]);
+            stats[i].m2 = Double.parseDouble(f[2]);
+            stats[i].min = stats[i].count > 0 ? Double.parseDouble(f[3]) : Double.POSITIVE_INFINITY;
+            stats[i].max = stats[i].count > 0 ? Double.parseDouble(f[4]) : Double.NEGATIVE_INFINITY;
+        }
+        candidate.summary.failed = Long.parseLong(cache.getProperty(candidate.key + ".failed", "0"));
+        candidate.runs = Integer.parseInt(runs);
+        return true;
+    }
+
+    private static void store(Properties cache, Candidate candidate) {
+        if (candidate.runs == 0) return;
+        cache.setProperty(candidate.key + ".runs", String.valueOf(candidate.runs));
+        cache.setProperty(candidate.key + ".failed", String.valueOf(candidate.summary.failed));
+        Replications.Stats[] stats = stats(candidate.summary);
+        for (int i = 0; i < STATS.length; i++) {
+            Replications.Stats s = stats[i];
+            cache.setProperty(candidate.key + "." + STATS[i],
+                s.count + " " + s.mean + " " + s.m2 + " " + s.min + " " + s.max);
+        }
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.format("%.1f", value);
+    }
+}